@@ -0,0 +1,133 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids.simd;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import org.reprap.geometry.grids.BitmapKernels;
+
+/**
+ * The bitmap kernels on the Vector API: the widest vectors of longs the CPU
+ * has, with the words that do not fill a vector done one at a time.
+ */
+public final class VectorBitmapKernels extends BitmapKernels {
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+    /**
+     * Vectors of a single long are no better than plain Java.
+     */
+    @Override
+    protected boolean isAvailable() {
+        return SPECIES.length() > 1;
+    }
+
+    @Override
+    public String getName() {
+        return "vector (" + SPECIES.vectorBitSize() + " bits)";
+    }
+
+    @Override
+    public void or(final long[] target, final int targetOffset, final long[] source, final int sourceOffset,
+            final int length) {
+        final int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            final LongVector t = LongVector.fromArray(SPECIES, target, targetOffset + i);
+            t.or(LongVector.fromArray(SPECIES, source, sourceOffset + i)).intoArray(target, targetOffset + i);
+        }
+        for (; i < length; i++) {
+            target[targetOffset + i] |= source[sourceOffset + i];
+        }
+    }
+
+    @Override
+    public void and(final long[] target, final int targetOffset, final long[] source, final int sourceOffset,
+            final int length) {
+        final int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            final LongVector t = LongVector.fromArray(SPECIES, target, targetOffset + i);
+            t.and(LongVector.fromArray(SPECIES, source, sourceOffset + i)).intoArray(target, targetOffset + i);
+        }
+        for (; i < length; i++) {
+            target[targetOffset + i] &= source[sourceOffset + i];
+        }
+    }
+
+    @Override
+    public void andNot(final long[] target, final int targetOffset, final long[] source, final int sourceOffset,
+            final int length) {
+        final int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            final LongVector t = LongVector.fromArray(SPECIES, target, targetOffset + i);
+            t.lanewise(VectorOperators.AND_NOT, LongVector.fromArray(SPECIES, source, sourceOffset + i)).intoArray(
+                    target, targetOffset + i);
+        }
+        for (; i < length; i++) {
+            target[targetOffset + i] &= ~source[sourceOffset + i];
+        }
+    }
+
+    /**
+     * The words with a neighbour on both sides are done a vector at a time,
+     * loading the vectors one word below and above as well.
+     */
+    @Override
+    public void spread(final long[] words, final int from, final int to, final int length, final long lastValid,
+            final boolean grow) {
+        if (length == 0) {
+            return;
+        }
+        spreadWord(words, from, to, length, 0, grow);
+        int w = 1;
+        for (; w + SPECIES.length() < length; w += SPECIES.length()) {
+            final LongVector word = LongVector.fromArray(SPECIES, words, from + w);
+            final LongVector below = LongVector.fromArray(SPECIES, words, from + w - 1);
+            final LongVector above = LongVector.fromArray(SPECIES, words, from + w + 1);
+            final LongVector up = word.lanewise(VectorOperators.LSHL, 1).or(
+                    below.lanewise(VectorOperators.LSHR, Long.SIZE - 1));
+            final LongVector down = word.lanewise(VectorOperators.LSHR, 1).or(
+                    above.lanewise(VectorOperators.LSHL, Long.SIZE - 1));
+            if (grow) {
+                word.or(up).or(down).intoArray(words, to + w);
+            } else {
+                word.and(up).and(down).intoArray(words, to + w);
+            }
+        }
+        for (; w < length; w++) {
+            spreadWord(words, from, to, length, w, grow);
+        }
+        if (grow) {
+            words[to + length - 1] &= lastValid;
+        }
+    }
+
+    private static void spreadWord(final long[] words, final int from, final int to, final int length, final int w,
+            final boolean grow) {
+        final long word = words[from + w];
+        final long below = w > 0 ? words[from + w - 1] : 0;
+        final long above = w < length - 1 ? words[from + w + 1] : 0;
+        final long up = word << 1 | below >>> (Long.SIZE - 1);
+        final long down = word >>> 1 | above << (Long.SIZE - 1);
+        words[to + w] = grow ? word | up | down : word & up & down;
+    }
+}
@@ -0,0 +1,118 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids.simd;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.reprap.geometry.grids.BitmapKernels;
+
+public class VectorBitmapKernelsTest {
+    private static final int[] LENGTHS = { 0, 1, 2, 3, 7, 8, 9, 31, 64, 100 };
+
+    private final BitmapKernels scalar = BitmapKernels.scalar();
+    private final BitmapKernels vector = new VectorBitmapKernels();
+    private final Random random = new Random(4711);
+
+    private long[] randomWords(final int length) {
+        final long[] result = new long[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = random.nextLong();
+        }
+        return result;
+    }
+
+    @Test
+    public void testIsPickedUpAsService() {
+        assertTrue(BitmapKernels.get() instanceof VectorBitmapKernels);
+    }
+
+    @Test
+    public void testBooleanKernelsMatchScalar() {
+        for (final int length : LENGTHS) {
+            final long[] target = randomWords(length + 5);
+            final long[] source = randomWords(length + 3);
+            for (int kernel = 0; kernel < 3; kernel++) {
+                final long[] expected = target.clone();
+                final long[] actual = target.clone();
+                apply(scalar, kernel, expected, source, length);
+                apply(vector, kernel, actual, source, length);
+                assertArrayEquals(expected, actual);
+            }
+        }
+    }
+
+    private static void apply(final BitmapKernels kernels, final int kernel, final long[] target, final long[] source,
+            final int length) {
+        switch (kernel) {
+        case 0:
+            kernels.or(target, 5, source, 3, length);
+            break;
+        case 1:
+            kernels.and(target, 5, source, 3, length);
+            break;
+        default:
+            kernels.andNot(target, 5, source, 3, length);
+            break;
+        }
+    }
+
+    @Test
+    public void testSpreadMatchesScalar() {
+        for (final int length : LENGTHS) {
+            for (final boolean grow : new boolean[] { true, false }) {
+                final long[] expected = randomWords(2 * length + 1);
+                final long[] actual = expected.clone();
+                scalar.spread(expected, 1, length + 1, length, 0x7fffL, grow);
+                vector.spread(actual, 1, length + 1, length, 0x7fffL, grow);
+                assertArrayEquals(expected, actual);
+            }
+        }
+    }
+
+    private static long time(final BitmapKernels kernels, final long[] target, final long[] source, final int rounds) {
+        final long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            kernels.or(target, 0, source, 0, source.length);
+            kernels.andNot(target, 0, source, 0, source.length / 2);
+            kernels.spread(target, 0, source.length / 2, source.length / 2, -1L, (i & 1) == 0);
+        }
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    /**
+     * The words of the morphology windows and of rows of blocks of a layer at
+     * 0.03 mm pixels over 200 mm.
+     */
+    @Test
+    public void testBenchmarkAgainstScalar() {
+        final long[] source = randomWords(64 * 105);
+        final long[] target = randomWords(source.length);
+        final int rounds = 20000;
+        time(scalar, target, source, rounds);
+        time(vector, target, source, rounds);
+        final long scalarMillis = time(scalar, target, source, rounds);
+        final long vectorMillis = time(vector, target, source, rounds);
+        System.out.println(rounds + " rounds of the kernels took " + scalarMillis + " ms with the " + scalar.getName()
+                + " kernels, " + vectorMillis + " ms with the " + vector.getName() + " kernels.");
+    }
+}
@@ -0,0 +1,29 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.configuration;
+
+/**
+ * How the hatch lines of infill and support find the solid parts of a layer.
+ * TRAVERSAL steps along every line pixel by pixel, CONTOUR_CELLS looks at the
+ * lines only where the contours of the layer run, PATTERN_MASKS ANDs the layer
+ * word by word with the lines rasterized once per job.
+ */
+public enum HatchMethod {
+    TRAVERSAL, CONTOUR_CELLS, PATTERN_MASKS
+}
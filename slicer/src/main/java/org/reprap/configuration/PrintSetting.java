@@ -54,6 +54,8 @@ public class PrintSetting implements NamedSetting {
     private FillPattern pattern; // rectilinear
     @XmlElement
     private double infillOverlap; // mm 0.2
+    @XmlElement
+    private int infillEveryLayers = 1; // # 1
     // speeds
     @XmlElement
     private double perimeterSpeed; // fraction 0.9
@@ -91,6 +93,14 @@ public class PrintSetting implements NamedSetting {
     private boolean verboseGCode; // boolean false
     @XmlElement
     private boolean pathOptimize; // boolean true
+    @XmlElement
+    private BitmapStorage bitmapStorage = BitmapStorage.DENSE; // dense
+    @XmlElement
+    private boolean subPixelContours; // boolean false
+    @XmlElement
+    private HatchMethod hatchMethod = HatchMethod.TRAVERSAL; // traversal
+    @XmlElement
+    private boolean volumetricSkins; // boolean false
 
     public PrintSetting() {
     }
@@ -110,6 +120,7 @@ public class PrintSetting implements NamedSetting {
         fillDensity = other.fillDensity;
         pattern = other.pattern;
         infillOverlap = other.infillOverlap;
+        infillEveryLayers = other.infillEveryLayers;
         perimeterSpeed = other.perimeterSpeed;
         infillSpeed = other.infillSpeed;
         skirt = other.skirt;
@@ -125,6 +136,10 @@ public class PrintSetting implements NamedSetting {
         raftLayers = other.raftLayers;
         verboseGCode = other.verboseGCode;
         pathOptimize = other.pathOptimize;
+        bitmapStorage = other.bitmapStorage;
+        subPixelContours = other.subPixelContours;
+        hatchMethod = other.hatchMethod;
+        volumetricSkins = other.volumetricSkins;
     }
 
     @XmlTransient
@@ -331,6 +346,51 @@ public class PrintSetting implements NamedSetting {
         this.infillOverlap = infillOverlap;
     }
 
+    @XmlTransient
+    public int getInfillEveryLayers() {
+        return infillEveryLayers;
+    }
+
+    public void setInfillEveryLayers(final int infillEveryLayers) {
+        this.infillEveryLayers = infillEveryLayers;
+    }
+
+    @XmlTransient
+    public BitmapStorage getBitmapStorage() {
+        return bitmapStorage;
+    }
+
+    public void setBitmapStorage(final BitmapStorage bitmapStorage) {
+        this.bitmapStorage = bitmapStorage;
+    }
+
+    @XmlTransient
+    public boolean isSubPixelContours() {
+        return subPixelContours;
+    }
+
+    public void setSubPixelContours(final boolean subPixelContours) {
+        this.subPixelContours = subPixelContours;
+    }
+
+    @XmlTransient
+    public HatchMethod getHatchMethod() {
+        return hatchMethod;
+    }
+
+    public void setHatchMethod(final HatchMethod hatchMethod) {
+        this.hatchMethod = hatchMethod;
+    }
+
+    @XmlTransient
+    public boolean isVolumetricSkins() {
+        return volumetricSkins;
+    }
+
+    public void setVolumetricSkins(final boolean volumetricSkins) {
+        this.volumetricSkins = volumetricSkins;
+    }
+
     public File getShieldStlFile() {
         return new File(Configuration.REPRAP_DIRECTORY, shieldStlFile);
     }
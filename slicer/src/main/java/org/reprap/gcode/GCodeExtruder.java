@@ -47,6 +47,10 @@ public class GCodeExtruder {
     private final double extraExtrusionForLayer;
     private final double extraExtrusionForPolygon;
     private final double layerHeight;
+    /**
+     * How many layers high the current extrusion is
+     */
+    private int extrusionLayers = 1;
     private final MaterialSetting materialSettings;
 
     GCodeExtruder(final GCodeWriter writer, final int extruderId, final CurrentConfiguration currentConfiguration) {
@@ -137,7 +141,15 @@ public class GCodeExtruder {
             return extrudeRatio * distance;
         }
 
-        return extrudeRatio * distance * layerHeight * extrusionSize / circleAreaForDiameter(feedDiameter);
+        return extrudeRatio * distance * layerHeight * extrusionLayers * extrusionSize
+                / circleAreaForDiameter(feedDiameter);
+    }
+
+    /**
+     * Extrude for a track that many layers high from now on.
+     */
+    void setExtrusionLayers(final int layers) {
+        extrusionLayers = layers;
     }
 
     /**
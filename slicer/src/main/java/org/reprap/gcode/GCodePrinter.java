@@ -362,6 +362,14 @@ public class GCodePrinter {
         LOGGER.error("selectExtruder() - extruder not found for: " + material);
     }
 
+    /**
+     * Extrude the following tracks of the current extruder that many layers
+     * high, down into the layers below, until set back to 1.
+     */
+    public void setExtrusionLayers(final int layers) {
+        extruders[currentExtruder].setExtrusionLayers(layers);
+    }
+
     public double getX() {
         return currentX;
     }
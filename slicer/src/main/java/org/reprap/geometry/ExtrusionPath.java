@@ -102,4 +102,8 @@ class ExtrusionPath {
     boolean isClosed() {
         return path.isClosed();
     }
+
+    int getLayers() {
+        return path.getLayers();
+    }
 }
@@ -1,5 +1,10 @@
 package org.reprap.geometry;
 
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.reprap.configuration.CurrentConfiguration;
@@ -8,8 +13,9 @@ import org.reprap.configuration.PrintSetting;
 import org.reprap.geometry.grids.BooleanGrid;
 import org.reprap.geometry.grids.BooleanGridList;
 import org.reprap.geometry.grids.BooleanGridMath;
-import org.reprap.geometry.grids.FloodFiller;
+import org.reprap.geometry.grids.ConnectedComponents;
 import org.reprap.geometry.grids.Hatcher;
+import org.reprap.geometry.grids.SkinStack;
 import org.reprap.geometry.polygons.HalfPlane;
 import org.reprap.geometry.polygons.Point2D;
 import org.reprap.geometry.polygons.Polygon;
@@ -30,6 +36,26 @@ public final class InFillPatterns {
     private BooleanGridList insides = new BooleanGridList();
     private BooleanGridList surfaces = new BooleanGridList();
     private PolygonList hatchedPolygons = new PolygonList();
+    private final Map<String, NeighbourLayers> neighbourLayers = new HashMap<String, NeighbourLayers>();
+    private final Map<String, InfillColumns> infillColumns = new HashMap<String, InfillColumns>();
+    private SkinStage skins;
+    /**
+     * How many slices had their surfaces looked for, and how many of them
+     * turned out to be all interior
+     */
+    private int classifiedSlices;
+    private int interiorSlices;
+    /**
+     * What combining the interior infill over several layers cost and saved:
+     * the time spent finding the columns and hatching them, the layers they
+     * were laid on, the length of the infill left out on the layers below and
+     * the printing time saved at the feedrates of LayerProducer.
+     */
+    private long columnNanos;
+    private long combinedHatchNanos;
+    private int combinedLayers;
+    private double savedInfillLength;
+    private double savedPrintMinutes;
 
     public InFillPatterns(final LayerRules layerRules, final CurrentConfiguration currentConfiguration) {
         this.layerRules = layerRules;
@@ -54,34 +80,66 @@ public final class InFillPatterns {
 
         // If we are solid but the slices above or below us weren't, we need some fine infill as
         // we are (at least partly) surface.
-        // The intersection of the slices above does not need surface ..
-        // How many do we need to consider?
-        BooleanGridList above = slicer.slice(stl, layer + 1).getBitmaps(material);
-        for (int i = 2; i <= surfaceLayers; i++) {
-            above = BooleanGridList.intersections(slicer.slice(stl, layer + i).getBitmaps(material), above);
+        // Only slices with material in them count for the interior statistics.
+        final boolean counted = sliceBitmap.size() > 0;
+        if (counted) {
+            classifiedSlices++;
         }
+        final SkinStack stack = skins == null ? null : skins.get(stl, material);
+        final BooleanGridList nothingbelow;
+        // The grids taken from the stack, released once the layer is hatched
+        final BooleanGridList stackGrids = new BooleanGridList();
+        if (stack != null && layer < stack.getLayers()) {
+            // The skins of all layers were found beforehand, see SkinStage.
+            surfaces = new BooleanGridList();
+            surfaces.add(stack.skin(layer));
+            if (surfaces.size() == 0) {
+                stack.release(layer);
+                if (counted) {
+                    interiorSlices++;
+                }
+                return hatchInterior(stl, slicer, material, sliceBitmap, sliceWithoutBorder);
+            }
+            nothingbelow = new BooleanGridList();
+            nothingbelow.add(stack.unsupported(layer));
+            stack.release(layer);
+            stackGrids.add(surfaces.get(0));
+            if (nothingbelow.size() > 0) {
+                stackGrids.add(nothingbelow.get(0));
+            }
+            insides = BooleanGridList.differences(sliceBitmap, surfaces);
+        } else {
+            // The intersection of the slices above does not need surface ..
+            // ...nor does the intersection of those below.
+            final NeighbourLayers neighbours = neighbourLayers(stl, material, Math.max(1, surfaceLayers));
+            neighbours.moveTo(layer, slicer);
 
-        // ...nor does the intersection of those below.
-        BooleanGridList below = slicer.slice(stl, layer - 1).getBitmaps(material);
-        for (int i = 2; i <= surfaceLayers; i++) {
-            below = BooleanGridList.intersections(slicer.slice(stl, layer - i).getBitmaps(material), below);
-        }
+            // Inside a solid part the layers above and below cover all of this one:
+            // no surface, no bridges, just the interior infill.
+            if (sliceBitmap.isCoveredBy(neighbours.above()) && sliceBitmap.isCoveredBy(neighbours.below())) {
+                if (counted) {
+                    interiorSlices++;
+                }
+                return hatchInterior(stl, slicer, material, sliceBitmap, sliceWithoutBorder);
+            }
 
-        // The bit of the slice with nothing above it needs fine ..
-        final BooleanGridList nothingabove = BooleanGridList.differences(sliceBitmap, above);
+            // The bit of the slice with nothing above it needs fine ..
+            final BooleanGridList nothingabove = BooleanGridList.differences(sliceBitmap, neighbours.above());
 
-        // ...as does the bit with nothing below.
-        final BooleanGridList nothingbelow = BooleanGridList.differences(sliceBitmap, below);
+            // ...as does the bit with nothing below.
+            nothingbelow = BooleanGridList.differences(sliceBitmap, neighbours.below());
 
-        // Find the region that is not surface.
-        insides = BooleanGridList.differences(sliceBitmap, nothingbelow);
-        insides = BooleanGridList.differences(insides, nothingabove);
-        bridges = computeBridges(nothingbelow);
+            // Find the region that is not surface.
+            insides = BooleanGridList.differences(sliceBitmap, nothingbelow);
+            insides = BooleanGridList.differences(insides, nothingabove);
+
+            // All the parts of this slice that need surface infill
+            surfaces = BooleanGridList.unions(nothingbelow, nothingabove);
+        }
 
         // The remainder with nothing under them will be supported by support material
         // and so needs no special treatment.
-        // All the parts of this slice that need surface infill
-        surfaces = BooleanGridList.unions(nothingbelow, nothingabove);
+        bridges = computeBridges(nothingbelow);
 
         // Make the bridges fatter, then crop them to the slice.
         // This will make them interpenetrate at their ends/sides to give
@@ -100,12 +158,160 @@ public final class InFillPatterns {
         // Generate the infill patterns.  We do the bridges first, as each bridge subtracts its
         // lands from the other two sets of shapes.  We want that, so they don't get infilled twice.
         bridgeHatch(lands, material);
-        hatchedPolygons.add(ProducerStlList.hatch(insides, layerRules, false, currentConfiguration));
+        hatchInsides(stl, slicer, material);
         hatchedPolygons.add(ProducerStlList.hatch(surfaces, layerRules, true, currentConfiguration));
+        stackGrids.release();
+
+        return hatchedPolygons;
+    }
 
+    /**
+     * Hatch a slice without surface or bridges as interior infill.
+     */
+    private PolygonList hatchInterior(final int stl, final ProducerStlList slicer, final String material,
+            final BooleanGridList sliceBitmap, final BooleanGridList sliceWithoutBorder) {
+        bridges = new BooleanGridList();
+        surfaces = new BooleanGridList();
+        insides = BooleanGridList.intersections(sliceBitmap, sliceWithoutBorder);
+        hatchInsides(stl, slicer, material);
         return hatchedPolygons;
     }
 
+    /**
+     * Hatch the interior infill. If the print setting combines it over
+     * several layers, the part in the column of the layer's group is left out
+     * and the whole column is hatched on the top layer of the group, as one
+     * extrusion as high as the group. The column is interior on all layers
+     * of the group and clear of their bridges, so the top layer hatches just
+     * what the layers below left out.
+     */
+    private void hatchInsides(final int stl, final ProducerStlList slicer, final String material) {
+        final InfillColumns columns = infillColumns(stl, material);
+        if (columns == null) {
+            hatchedPolygons.add(ProducerStlList.hatch(insides, layerRules, false, currentConfiguration));
+            return;
+        }
+        final int layer = layerRules.getModelLayer();
+        final long start = System.nanoTime();
+        final BooleanGridList column = columns.column(layer, slicer);
+        columnNanos += System.nanoTime() - start;
+        final BooleanGridList rest = BooleanGridList.differences(insides, column);
+        hatchedPolygons.add(ProducerStlList.hatch(rest, layerRules, false, currentConfiguration));
+        if (!columns.isTop(layer)) {
+            return;
+        }
+        final long hatchStart = System.nanoTime();
+        final PolygonList hatches = ProducerStlList.hatch(column, layerRules, false, currentConfiguration);
+        combinedHatchNanos += System.nanoTime() - hatchStart;
+        combinedLayers++;
+        double length = 0;
+        for (int i = 0; i < hatches.size(); i++) {
+            final Polygon polygon = hatches.polygon(i);
+            polygon.setLayers(columns.getEvery());
+            for (int j = 1; j < polygon.size(); j++) {
+                length += Point2D.d(polygon.point(j - 1), polygon.point(j));
+            }
+        }
+        // The combined infill may have to go slower than the infill it replaces, see LayerProducer.
+        final PrintSetting printSetting = currentConfiguration.getPrintSetting();
+        final double extrusionRate = currentConfiguration.getExtruderSetting(material).getPrintExtrusionRate();
+        final int every = columns.getEvery();
+        savedInfillLength += length * (every - 1);
+        savedPrintMinutes += length * every / LayerProducer.infillFeedrate(printSetting, extrusionRate, 1) - length
+                / LayerProducer.infillFeedrate(printSetting, extrusionRate, every);
+        hatchedPolygons.add(hatches);
+    }
+
+    /**
+     * Find the skins of all layers of all objects before the layers are
+     * produced, if the print setting asks for it.
+     */
+    void classifySkins(final ProducerStlList stlList) {
+        final PrintSetting printSetting = currentConfiguration.getPrintSetting();
+        if (printSetting.isVolumetricSkins()) {
+            skins = new SkinStage(printSetting.getHorizontalShells(), !printSetting.printSupport());
+            skins.classify(layerRules, stlList);
+        }
+    }
+
+    /**
+     * The neighbouring layers of the object in the material, kept while the
+     * layers go up one by one.
+     */
+    private NeighbourLayers neighbourLayers(final int stl, final String material, final int shells) {
+        final String key = stl + "/" + material;
+        NeighbourLayers result = neighbourLayers.get(key);
+        if (result == null || result.getShells() != shells) {
+            if (result != null) {
+                result.release();
+            }
+            result = new NeighbourLayers(stl, material, shells);
+            neighbourLayers.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * The columns of the object in the material, null unless the interior
+     * infill is combined over several layers.
+     */
+    private InfillColumns infillColumns(final int stl, final String material) {
+        final PrintSetting printSetting = currentConfiguration.getPrintSetting();
+        final int every = printSetting.getInfillEveryLayers();
+        if (every <= 1) {
+            return null;
+        }
+        final int surfaceLayers = printSetting.getHorizontalShells();
+        final int shells = Math.max(1, surfaceLayers);
+        final String key = stl + "/" + material;
+        InfillColumns result = infillColumns.get(key);
+        if (result == null || result.getEvery() != every || result.getShells() != shells) {
+            if (result != null) {
+                result.release();
+            }
+            final double bridgeReach = printSetting.printSupport() ? 0 : offsetSize(material, 2);
+            result = new InfillColumns(stl, material, every, shells, surfaceLayers, offsetSize(material, -1),
+                    bridgeReach);
+            infillColumns.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Drop the skins, release the bitmaps of the neighbouring layers and the
+     * infill columns, and log how many slices were all interior and what
+     * combining the infill saved, when the job is done.
+     */
+    void release() {
+        skins = null;
+        if (classifiedSlices > 0) {
+            LOGGER.info("Infill: " + interiorSlices + " of " + classifiedSlices + " slices all interior ("
+                    + 100 * interiorSlices / classifiedSlices + "%)");
+        }
+        if (combinedLayers > 0) {
+            final int every = currentConfiguration.getPrintSetting().getInfillEveryLayers();
+            LOGGER.info("Infill combined every " + every + " layers on " + combinedLayers + " layers: about "
+                    + combinedHatchNanos * (every - 1) / 1000000 + " ms of hatching saved for " + columnNanos / 1000000
+                    + " ms finding the columns, " + Math.round(savedInfillLength) + " mm less infill, about "
+                    + Math.round(savedPrintMinutes) + " min less printing");
+        }
+        classifiedSlices = 0;
+        interiorSlices = 0;
+        columnNanos = 0;
+        combinedHatchNanos = 0;
+        combinedLayers = 0;
+        savedInfillLength = 0;
+        savedPrintMinutes = 0;
+        for (final NeighbourLayers neighbours : neighbourLayers.values()) {
+            neighbours.release();
+        }
+        neighbourLayers.clear();
+        for (final InfillColumns columns : infillColumns.values()) {
+            columns.release();
+        }
+        infillColumns.clear();
+    }
+
     // Parts with nothing under them that have no support material
     // need to have bridges constructed to do the best for in-air 
     private BooleanGridList computeBridges(final BooleanGridList nothingbelow) {
@@ -139,19 +345,11 @@ public final class InFillPatterns {
      */
     private void bridgeHatch(final BooleanGridList lands, final String material) {
         for (int i = 0; i < lands.size(); i++) {
-            BooleanGrid landPattern = lands.get(i);
-            do {
-                final BooleanGrid land1 = new FloodFiller(landPattern).findLand();
-                if (land1 == BooleanGrid.NOTHING_THERE) {
-                    break;
-                }
-                landPattern = BooleanGridMath.difference(landPattern, land1);
-
-                final Point2D center1 = land1.findCentroid();
-                if (center1 == null) {
-                    LOGGER.error("First land found with no centroid!");
-                    continue;
-                }
+            final ConnectedComponents landComponents = new ConnectedComponents(lands.get(i));
+            final BitSet done = new BitSet(landComponents.size());
+            for (int land1 = done.nextClearBit(0); land1 < landComponents.size(); land1 = done.nextClearBit(land1 + 1)) {
+                done.set(land1);
+                final Point2D center1 = landComponents.getCentroid(land1);
 
                 // Find the bridge that goes with the land
                 final int bridgesIndex = findBridge(bridges, center1);
@@ -160,24 +358,27 @@ public final class InFillPatterns {
                     continue;
                 }
                 // The bridge must cover the land too
-                final BooleanGrid bridge = new FloodFiller(bridges.get(bridgesIndex)).createFilledCopy(center1);
-                // Find the other land (the first has been wiped)
-                final BooleanGrid land2 = BooleanGridMath.intersection(bridge, landPattern);
-                // Find the middle of this land
-                final Point2D center2 = land2.findCentroid();
+                final ConnectedComponents bridgeComponents = new ConnectedComponents(bridges.get(bridgesIndex));
+                final int bridgeComponent = bridgeComponents.componentAt(center1);
+                final BooleanGrid bridge = bridgeComponents.getComponent(bridgeComponent);
+                // Find the other lands under the bridge (the first one is done)
+                final BitSet land2 = bridgeComponents.touching(bridgeComponent, landComponents);
+                land2.andNot(done);
+                // Find the middle of these lands
+                final Point2D center2 = landComponents.getCentroid(land2);
                 final ExtruderSetting extruder = currentConfiguration.getExtruderSetting(material);
                 final double extrusionWidth = extruder.getExtrusionSize();
                 if (center2 == null) {
                     LOGGER.debug("Second land found with no centroid.");
                     fillRingOfSupport(bridge, extrusionWidth);
                 } else {
-                    landPattern = BooleanGridMath.difference(landPattern, land2);
+                    done.or(land2);
                     fillBridge(bridge, center1, center2, extrusionWidth);
                 }
                 insides = substract(insides, bridge);
                 surfaces = substract(surfaces, bridge);
                 bridges = substract(bridges, bridge);
-            } while (true);
+            }
         }
     }
 
@@ -206,13 +407,14 @@ public final class InFillPatterns {
         }
 
         // Build the bridge
-        final PolygonList hatches = new Hatcher(bridge).hatch(new HalfPlane(new Point2D(0, 0), bridgeDirection),
-                extrusionWidth, currentConfiguration.getPrintSetting().isPathOptimize());
+        final PrintSetting printSetting = currentConfiguration.getPrintSetting();
+        final PolygonList hatches = new Hatcher(bridge, printSetting.getHatchMethod()).hatch(new HalfPlane(
+                new Point2D(0, 0), bridgeDirection), extrusionWidth, printSetting.isPathOptimize());
         hatchedPolygons.add(hatches);
     }
 
     private void fillRingOfSupport(final BooleanGrid bridge, final double extrusionWidth) {
-        final Hatcher hatcher = new Hatcher(bridge);
+        final Hatcher hatcher = new Hatcher(bridge, currentConfiguration.getPrintSetting().getHatchMethod());
         final PolygonList hatches = hatcher.hatch(layerRules.getFillHatchLine(extrusionWidth), extrusionWidth,
                 currentConfiguration.getPrintSetting().isPathOptimize());
         hatchedPolygons.add(hatches);
@@ -235,19 +437,21 @@ public final class InFillPatterns {
         final BooleanGridList result = new BooleanGridList();
         for (int i = 0; i < gridList.size(); i++) {
             final BooleanGrid grid = gridList.get(i);
-            final ExtruderSetting extruder = currentConfiguration.getExtruderSetting(grid.getMaterial());
-            final double extrusionSize = extruder.getExtrusionSize();
-            final PrintSetting printSetting = currentConfiguration.getPrintSetting();
-            final int shells = printSetting.getVerticalShells();
-            // Must be a hatch.  Only do it if the gap is +ve or we're building the foundation
-            final double offSize;
-            if (multiplier < 0) {
-                offSize = multiplier * (shells + 0.5) * extrusionSize + printSetting.getInfillOverlap();
-            } else {
-                offSize = multiplier * (shells + 0.5) * extrusionSize;
-            }
-            result.add(grid.createOffsetGrid(offSize));
+            result.add(grid.createOffsetGrid(offsetSize(grid.getMaterial(), multiplier)));
         }
         return result;
     }
+
+    private double offsetSize(final String material, final double multiplier) {
+        final ExtruderSetting extruder = currentConfiguration.getExtruderSetting(material);
+        final double extrusionSize = extruder.getExtrusionSize();
+        final PrintSetting printSetting = currentConfiguration.getPrintSetting();
+        final int shells = printSetting.getVerticalShells();
+        // Must be a hatch.  Only do it if the gap is +ve or we're building the foundation
+        if (multiplier < 0) {
+            return multiplier * (shells + 0.5) * extrusionSize + printSetting.getInfillOverlap();
+        } else {
+            return multiplier * (shells + 0.5) * extrusionSize;
+        }
+    }
 }
\ No newline at end of file
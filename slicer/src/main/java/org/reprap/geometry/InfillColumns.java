@@ -0,0 +1,188 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.reprap.geometry.grids.BooleanGrid;
+import org.reprap.geometry.grids.BooleanGridList;
+
+/**
+ * The interior infill of one material of one object that can be laid once
+ * for a group of layers instead of on every layer. The layers from
+ * firstLayer up are grouped in runs of every layers; a group's column is the
+ * part of the object that is interior, shells away from any surface, in all
+ * of its layers, less the room for the perimeters. That is the intersection
+ * of the bitmaps from shells below the group to shells above it, shrunk by
+ * the inset. The bridges of the group's layers, their parts with nothing
+ * below grown by the bridge reach, are cut out of it too: they take infill
+ * away from their layer, so the column has to be left to the layers there.
+ * The bitmaps are kept in an IntersectionWindow, so going up one group
+ * slices only the layers coming into the window.
+ */
+final class InfillColumns {
+    private final int stl;
+    private final String material;
+    private final int every;
+    private final int shells;
+    private final int firstLayer;
+    private final double inset;
+    /**
+     * How far bridges reach from the parts with nothing below, 0 if there
+     * are no bridges
+     */
+    private final double bridgeReach;
+    /**
+     * The bitmaps of the layers in the window of the group, bottom up
+     */
+    private final List<BooleanGridList> layers = new ArrayList<BooleanGridList>();
+    private final IntersectionWindow window = new IntersectionWindow();
+    private int group = Integer.MIN_VALUE;
+    private BooleanGridList column = new BooleanGridList();
+
+    InfillColumns(final int stl, final String material, final int every, final int shells, final int firstLayer,
+            final double inset, final double bridgeReach) {
+        this.stl = stl;
+        this.material = material;
+        this.every = every;
+        this.shells = shells;
+        this.firstLayer = firstLayer;
+        this.inset = inset;
+        this.bridgeReach = bridgeReach;
+    }
+
+    int getEvery() {
+        return every;
+    }
+
+    int getShells() {
+        return shells;
+    }
+
+    /**
+     * Whether the layer is the top one of its group, the one the column of
+     * the group is laid on.
+     */
+    boolean isTop(final int layer) {
+        return (layer - firstLayer) % every == every - 1;
+    }
+
+    /**
+     * The column of the group of the layer, released with the next group
+     */
+    BooleanGridList column(final int layer, final ProducerStlList slicer) {
+        final int newGroup = (layer - firstLayer) / every;
+        if (newGroup != group) {
+            moveTo(newGroup, slicer);
+        }
+        return column;
+    }
+
+    private void moveTo(final int newGroup, final ProducerStlList slicer) {
+        column.release();
+        final int bottom = firstLayer + newGroup * every - shells;
+        final int top = bottom + every - 1 + 2 * shells;
+        if (newGroup == group + 1) {
+            for (int i = 0; i < every; i++) {
+                window.remove();
+                layers.remove(0).release();
+            }
+            for (int layer = top - every + 1; layer <= top; layer++) {
+                add(layer, slicer);
+            }
+        } else {
+            release();
+            for (int layer = bottom; layer <= top; layer++) {
+                add(layer, slicer);
+            }
+        }
+        group = newGroup;
+        final BooleanGridList shrunk = new BooleanGridList();
+        for (final BooleanGrid grid : window.intersection()) {
+            shrunk.add(grid.createOffsetGrid(inset));
+        }
+        column = shrunk.size() > 0 && bridgeReach > 0 ? withoutBridges(shrunk) : shrunk;
+    }
+
+    /**
+     * The column less the reach of the bridges of the group's layers, each
+     * layer's parts with nothing in the shells below it. The grids of shrunk
+     * and of the steps on the way are released, unless they are carried over.
+     */
+    private BooleanGridList withoutBridges(final BooleanGridList shrunk) {
+        BooleanGridList result = shrunk;
+        final IntersectionWindow below = new IntersectionWindow();
+        for (int i = 0; i < shells; i++) {
+            below.add(layers.get(i));
+        }
+        for (int i = 0; i < every; i++) {
+            final BooleanGridList layer = layers.get(shells + i);
+            final BooleanGridList unsupported = BooleanGridList.differences(layer, below.intersection());
+            for (final BooleanGrid grid : unsupported) {
+                if (!grid.isEmpty()) {
+                    final BooleanGridList bridge = new BooleanGridList();
+                    bridge.add(grid.createOffsetGrid(bridgeReach));
+                    final BooleanGridList next = BooleanGridList.differences(result, bridge);
+                    releaseAllBut(result, next);
+                    bridge.release();
+                    result = next;
+                }
+            }
+            releaseAllBut(unsupported, layer);
+            below.remove();
+            below.add(layer);
+        }
+        below.clear();
+        return result;
+    }
+
+    /**
+     * The differences may return their operands or grids of them, so only
+     * the grids of list that are not in kept are released.
+     */
+    private static void releaseAllBut(final BooleanGridList list, final BooleanGridList kept) {
+        for (final BooleanGrid grid : list) {
+            boolean isKept = false;
+            for (final BooleanGrid other : kept) {
+                isKept |= grid == other;
+            }
+            if (!isKept) {
+                grid.release();
+            }
+        }
+    }
+
+    private void add(final int layer, final ProducerStlList slicer) {
+        final BooleanGridList grids = slicer.slice(stl, layer).takeBitmaps(material);
+        layers.add(grids);
+        window.add(grids);
+    }
+
+    void release() {
+        column.release();
+        column = new BooleanGridList();
+        window.clear();
+        for (final BooleanGridList grids : layers) {
+            grids.release();
+        }
+        layers.clear();
+        group = Integer.MIN_VALUE;
+    }
+}
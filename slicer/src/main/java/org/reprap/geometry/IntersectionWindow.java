@@ -0,0 +1,130 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.reprap.geometry.grids.BooleanGridList;
+
+/**
+ * The intersection of the grid lists in a window that slides along the
+ * layers: lists are added at one end and removed at the other in the order
+ * they were added. The window is a queue made of two stacks, every entry
+ * keeping the intersection of its list with those below it on its stack.
+ * Lists are pushed onto the back stack; when the front stack runs empty the
+ * back stack is turned over onto it. So every list is intersected about
+ * three times over its stay in the window, whatever its width.
+ * 
+ * The window does not own the lists added to it, but the intersections it
+ * makes, including the one it returns, which are released when no longer
+ * needed.
+ */
+final class IntersectionWindow {
+    private static final class Entry {
+        private final BooleanGridList grids;
+        /**
+         * The intersection of grids and the lists below it on its stack
+         */
+        private final BooleanGridList intersection;
+
+        Entry(final BooleanGridList grids, final Entry below) {
+            this.grids = grids;
+            intersection = below == null ? grids : BooleanGridList.intersections(grids, below.intersection);
+        }
+
+        void release() {
+            if (intersection != grids) {
+                intersection.release();
+            }
+        }
+    }
+
+    private final Deque<Entry> front = new ArrayDeque<Entry>();
+    private final Deque<Entry> back = new ArrayDeque<Entry>();
+    private BooleanGridList intersection;
+
+    int size() {
+        return front.size() + back.size();
+    }
+
+    /**
+     * Add a list at the back.
+     */
+    void add(final BooleanGridList grids) {
+        forgetIntersection();
+        back.push(new Entry(grids, back.peek()));
+    }
+
+    /**
+     * Remove the list added first.
+     */
+    void remove() {
+        forgetIntersection();
+        if (front.isEmpty()) {
+            while (!back.isEmpty()) {
+                final Entry entry = back.pop();
+                entry.release();
+                front.push(new Entry(entry.grids, front.peek()));
+            }
+        }
+        front.pop().release();
+    }
+
+    /**
+     * The intersection of all lists in the window, an empty list if there are
+     * none. It is released with the next change of the window.
+     */
+    BooleanGridList intersection() {
+        if (intersection == null) {
+            if (front.isEmpty() && back.isEmpty()) {
+                intersection = new BooleanGridList();
+            } else if (front.isEmpty()) {
+                intersection = back.peek().intersection;
+            } else if (back.isEmpty()) {
+                intersection = front.peek().intersection;
+            } else {
+                intersection = BooleanGridList.intersections(front.peek().intersection, back.peek().intersection);
+            }
+        }
+        return intersection;
+    }
+
+    private void forgetIntersection() {
+        if (intersection != null && !front.isEmpty() && !back.isEmpty()) {
+            intersection.release();
+        }
+        intersection = null;
+    }
+
+    /**
+     * Release the intersections and empty the window.
+     */
+    void clear() {
+        forgetIntersection();
+        for (final Entry entry : front) {
+            entry.release();
+        }
+        for (final Entry entry : back) {
+            entry.release();
+        }
+        front.clear();
+        back.clear();
+    }
+}
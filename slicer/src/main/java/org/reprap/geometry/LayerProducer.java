@@ -4,6 +4,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.reprap.configuration.CurrentConfiguration;
 import org.reprap.configuration.ExtruderSetting;
+import org.reprap.configuration.PrintSetting;
 import org.reprap.gcode.GCodePrinter;
 import org.reprap.geometry.grids.BooleanGrid;
 import org.reprap.geometry.grids.Hatcher;
@@ -86,10 +87,23 @@ class LayerProducer {
         if (path.isClosed()) {
             return currentConfiguration.getPrintSetting().getPerimeterSpeed() * extrusionRate;
         } else {
-            return currentConfiguration.getPrintSetting().getInfillSpeed() * extrusionRate;
+            return infillFeedrate(currentConfiguration.getPrintSetting(), extrusionRate, path.getLayers());
         }
     }
 
+    /**
+     * The feedrate of infill extruded that many layers high: the infill
+     * speed, but no faster than the extruder feeds a single layer at its
+     * print extrusion rate.
+     */
+    static double infillFeedrate(final PrintSetting printSetting, final double extrusionRate, final int layers) {
+        final double feedrate = printSetting.getInfillSpeed() * extrusionRate;
+        if (layers <= 1) {
+            return feedrate;
+        }
+        return Math.min(feedrate, extrusionRate / layers);
+    }
+
     private void plotExtrusionPath(final ExtrusionPath extrusionPath, final ExtruderSetting extruder) {
         final double extrudeBackLength = extruder.getExtrusionOverrun();
         extrusionPath.backStepExtrude(extrudeBackLength);
@@ -111,6 +125,7 @@ class LayerProducer {
         if (extrudeBackLength > 0) {
             extruderOffIndex = extrusionPath.extrudeEnd() + 1;
         }
+        printer.setExtrusionLayers(extrusionPath.getLayers());
         for (int i = 0; i < pathLength; i++) {
             final Point2D point = extrusionPath.point(i % extrusionPath.size());
             printer.moveTo(point.x(), point.y(), layerRules.getMachineZ(), feedrate);
@@ -118,6 +133,7 @@ class LayerProducer {
                 printer.retract();
             }
         }
+        printer.setExtrusionLayers(1);
     }
 
     void plot(final PolygonList pl) {
@@ -148,7 +164,8 @@ class LayerProducer {
         final Rectangle box = layerRules.getBox();
         final Hatcher hatcher = new Hatcher(new BooleanGrid(
                 currentConfiguration.getPrinterSetting().getMachineResolution() * 0.6, supportMaterial, box.scale(1.1),
-                CSG2D.RrCSGFromBox(box)));
+                CSG2D.RrCSGFromBox(box), currentConfiguration.getPrintSetting().getBitmapStorage()),
+                currentConfiguration.getPrintSetting().getHatchMethod());
         final PolygonList foundationPolygon = hatcher.hatch(layerRules.getFillHatchLine(extrusionSize), extrusionSize,
                 currentConfiguration.getPrintSetting().isPathOptimize());
         plot(foundationPolygon);
@@ -76,6 +76,10 @@ public class LayerRules {
         return modelLayer;
     }
 
+    int getModelLayerMax() {
+        return modelLayerMax;
+    }
+
     int getMachineLayerMax() {
         return machineLayerMax;
     }
@@ -0,0 +1,112 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.reprap.geometry.grids.BooleanGridList;
+
+/**
+ * The bitmaps of one material of one object in the layers above and below
+ * the current one, intersected. They are kept from layer to layer while the
+ * layers are done bottom up: moving up a layer slices one new layer and drops
+ * the lowest, and the intersections slide along in IntersectionWindows.
+ * Other moves start afresh.
+ */
+final class NeighbourLayers {
+    private final int stl;
+    private final String material;
+    private final int shells;
+    /**
+     * The bitmaps of the layers from layer - shells to layer + shells
+     */
+    private final List<BooleanGridList> layers = new ArrayList<BooleanGridList>();
+    private final IntersectionWindow below = new IntersectionWindow();
+    private final IntersectionWindow above = new IntersectionWindow();
+    private int layer = Integer.MIN_VALUE;
+
+    NeighbourLayers(final int stl, final String material, final int shells) {
+        this.stl = stl;
+        this.material = material;
+        this.shells = shells;
+    }
+
+    int getShells() {
+        return shells;
+    }
+
+    /**
+     * Make the windows those of the layer.
+     */
+    void moveTo(final int layer, final ProducerStlList slicer) {
+        if (layer == this.layer) {
+            return;
+        }
+        if (layer == this.layer + 1) {
+            below.remove();
+            layers.remove(0).release();
+            below.add(layers.get(shells - 1));
+            above.remove();
+            final BooleanGridList top = bitmaps(layer + shells, slicer);
+            layers.add(top);
+            above.add(top);
+        } else {
+            release();
+            for (int i = -shells; i <= shells; i++) {
+                final BooleanGridList grids = bitmaps(layer + i, slicer);
+                layers.add(grids);
+                if (i < 0) {
+                    below.add(grids);
+                } else if (i > 0) {
+                    above.add(grids);
+                }
+            }
+        }
+        this.layer = layer;
+    }
+
+    private BooleanGridList bitmaps(final int layer, final ProducerStlList slicer) {
+        return slicer.slice(stl, layer).takeBitmaps(material);
+    }
+
+    /**
+     * The intersection of the layers below, released with the next move
+     */
+    BooleanGridList below() {
+        return below.intersection();
+    }
+
+    /**
+     * The intersection of the layers above, released with the next move
+     */
+    BooleanGridList above() {
+        return above.intersection();
+    }
+
+    void release() {
+        below.clear();
+        above.clear();
+        for (final BooleanGridList grids : layers) {
+            grids.release();
+        }
+        layers.clear();
+        layer = Integer.MIN_VALUE;
+    }
+}
@@ -10,6 +10,10 @@ import org.reprap.configuration.ExtruderSetting;
 import org.reprap.configuration.PrintSetting;
 import org.reprap.gcode.GCodePrinter;
 import org.reprap.gcode.Purge;
+import org.reprap.geometry.grids.AllocationMeter;
+import org.reprap.geometry.grids.GridBufferArena;
+import org.reprap.geometry.grids.HatchCache;
+import org.reprap.geometry.grids.PatternMasks;
 import org.reprap.geometry.polygons.AirMoveOptimizer;
 import org.reprap.geometry.polygons.Point2D;
 import org.reprap.geometry.polygons.PolygonList;
@@ -62,17 +66,32 @@ public class Producer {
         supportCalculator = new SupportCalculator(currentConfiguration, stlList.size(), layerRules.getMachineLayerMax() + 1);
     }
 
+    /**
+     * Produce all layers. The skins are found first if asked for. The pattern
+     * masks, the cached hatches, the free scratch buffers and the skins and
+     * neighbouring layers of the infill are kept for the whole job and
+     * dropped at its end, after logging how often the cache was hit.
+     */
     public void produce() {
-        if (currentConfiguration.getPrintSetting().printSupport()) {
-            supportCalculator.calculateSupportPolygons(layerRules, stlList);
-        }
-        startPrint();
-        new LayerProducer(layerRules, simulationPlot, currentConfiguration, printer).layFoundationBottomUp();
-        while (layerRules.getMachineLayer() < layerRules.getMachineLayerMax()) {
-            produceLayer();
-            layerRules.step();
+        try {
+            if (currentConfiguration.getPrintSetting().printSupport()) {
+                supportCalculator.calculateSupportPolygons(layerRules, stlList);
+            }
+            inFillPatterns.classifySkins(stlList);
+            startPrint();
+            new LayerProducer(layerRules, simulationPlot, currentConfiguration, printer).layFoundationBottomUp();
+            while (layerRules.getMachineLayer() < layerRules.getMachineLayerMax()) {
+                produceLayer();
+                layerRules.step();
+            }
+            printer.terminate();
+        } finally {
+            LOGGER.info("Hatch cache: " + HatchCache.getHits() + " hits, " + HatchCache.getMisses() + " misses");
+            PatternMasks.clear();
+            HatchCache.clear();
+            GridBufferArena.clear();
+            inFillPatterns.release();
         }
-        printer.terminate();
     }
 
     void startPrint() {
@@ -80,7 +99,28 @@ public class Producer {
         printer.startRun(layerRules.getBox(), layerRules.getZStep(), layerRules.getMachineLayerMax() * layerRules.getZStep());
     }
 
+    /**
+     * Produce the current layer. The scratch buffers of the grid operations
+     * go back to the arena at its end. The heap the layer allocated on this
+     * thread and the grid workers, and the memory held off the heap are
+     * logged.
+     */
     private void produceLayer() {
+        final long allocatedBefore = AllocationMeter.allocatedBytes();
+        try {
+            produceLayerPolygons();
+        } finally {
+            GridBufferArena.releaseLayer();
+        }
+        if (allocatedBefore >= 0 && LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Layer " + layerRules.getMachineLayer() + " allocated "
+                    + (AllocationMeter.allocatedBytes() - allocatedBefore) / 1024
+                    + " kB of heap on the producer and grid worker threads, "
+                    + AllocationMeter.offHeapBytes() / 1024 + " kB off heap in use");
+        }
+    }
+
+    private void produceLayerPolygons() {
         progressListener.productionProgress(layerRules.getMachineLayer(), layerRules.getMachineLayerMax());
 
         final PolygonList allPolygons[] = new PolygonList[totalExtruders];
@@ -142,6 +182,7 @@ public class Producer {
             simplifyAndAdd(borders, linkUp, result);
             simplifyAndAdd(fills, linkUp, result);
         }
+        slice.release();
     }
 
     private void simplifyAndAdd(final PolygonList list, final double linkUp, final PolygonList result) {
@@ -55,6 +55,11 @@ import org.reprap.geometry.polyhedra.STLObject;
 class ProducerStlList {
     static final Logger LOGGER = LogManager.getLogger(Producer.class);
     private static final double GRID_RESOLUTION = 0.01;
+    /**
+     * Sub-pixel contours on a grid this much coarser are still more accurate
+     * than pixel contours, see SubPixelContourTest.
+     */
+    private static final double SUB_PIXEL_COARSENING = 2;
     private static final Slice EMPTY_SLICE = new Slice(new BooleanGridList());
 
     private final CurrentConfiguration currentConfiguration;
@@ -132,6 +137,11 @@ class ProducerStlList {
         final double currentZ = layerRules.getModelZ(layer);
         final Map<String, EdgeCollector> collectorMap = collectEdgeLinesAndCsgs(stlIndex, currentZ);
 
+        final PrintSetting printSetting = currentConfiguration.getPrintSetting();
+        double pixelSize = currentConfiguration.getPrinterSetting().getMachineResolution() * 0.6;
+        if (printSetting.isSubPixelContours()) {
+            pixelSize *= SUB_PIXEL_COARSENING;
+        }
         final BooleanGridList result = new BooleanGridList();
         // Turn them into lists of polygons, one for each material, then turn those into pixelmaps.
         for (final String material : collectorMap.keySet()) {
@@ -143,8 +153,8 @@ class ProducerStlList {
                 pgl = arcCompensate(pgl);
 
                 final CSG2D csgp = pgl.toCSG();
-                result.add(new BooleanGrid(currentConfiguration.getPrinterSetting().getMachineResolution() * 0.6, material,
-                        rectangles.get(stlIndex), csgp));
+                result.add(new BooleanGrid(pixelSize, material, rectangles.get(stlIndex), csgp, printSetting.getBitmapStorage(),
+                        printSetting.isSubPixelContours()));
             }
         }
 
@@ -292,6 +302,7 @@ class ProducerStlList {
             infillWidth = extrusionSize / printSetting.getFillDensity();
         }
         final HalfPlane hatchLine = layerConditions.getFillHatchLine(infillWidth);
-        return new Hatcher(grid).hatch(hatchLine, infillWidth, printSetting.isPathOptimize());
+        return new Hatcher(grid, printSetting.getHatchMethod()).hatch(hatchLine, infillWidth,
+                printSetting.isPathOptimize());
     }
 }
@@ -0,0 +1,84 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.reprap.geometry.grids.BooleanGrid;
+import org.reprap.geometry.grids.GridBufferArena;
+import org.reprap.geometry.grids.SkinStack;
+
+/**
+ * Finds the top and bottom skins of all objects before the layers are
+ * produced: every layer of every object is sliced once and its bitmaps put
+ * onto a SkinStack per object and material, which classifies all layers at
+ * once. The infill of a layer then takes its skins from the stacks instead
+ * of intersecting the layers around it, and releases them when it is done
+ * with them.
+ */
+final class SkinStage {
+    private final Map<String, SkinStack> stacks = new HashMap<String, SkinStack>();
+    private final int shells;
+    private final boolean keepUnsupported;
+
+    /**
+     * With keepUnsupported the pixels with nothing below are found as well,
+     * for the bridges.
+     */
+    SkinStage(final int shells, final boolean keepUnsupported) {
+        this.shells = shells;
+        this.keepUnsupported = keepUnsupported;
+    }
+
+    void classify(final LayerRules layerRules, final ProducerStlList stlList) {
+        final int layers = layerRules.getModelLayerMax() + 1;
+        for (int layer = 0; layer < layers; layer++) {
+            for (int stl = 0; stl < stlList.size(); stl++) {
+                final Slice slice = stlList.slice(stl, layer);
+                for (final BooleanGrid grid : slice.getBitmaps()) {
+                    final String key = key(stl, grid.getMaterial());
+                    SkinStack stack = stacks.get(key);
+                    if (stack == null) {
+                        stack = new SkinStack(grid.getMaterial(), layers, shells, keepUnsupported);
+                        stacks.put(key, stack);
+                    }
+                    stack.add(layer, grid);
+                }
+                slice.release();
+            }
+            GridBufferArena.releaseLayer();
+        }
+        for (final SkinStack stack : stacks.values()) {
+            stack.classify();
+        }
+    }
+
+    private static String key(final int stl, final String material) {
+        return stl + "/" + material;
+    }
+
+    /**
+     * The stack of the object and material, null if it has no layer in that
+     * material.
+     */
+    SkinStack get(final int stl, final String material) {
+        return stacks.get(key(stl, material));
+    }
+}
@@ -18,13 +18,74 @@
  */
 package org.reprap.geometry;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.reprap.geometry.grids.BooleanGrid;
 import org.reprap.geometry.grids.BooleanGridList;
 import org.reprap.geometry.grids.BooleanGridMath;
 import org.reprap.geometry.polygons.PolygonList;
 
 class Slice {
+    /**
+     * How far from the middle of a border line the infill region starts, in
+     * extrusion widths: half a width to the edge of the line and a little
+     * clearance.
+     */
+    private static final double INFILL_INSET = 0.7;
+
     private final BooleanGridList bitmaps;
+    /**
+     * The shell grids of each bitmap of a material, kept by getOutlineGrids
+     * for subtractBorder.
+     */
+    private final Map<String, List<Outline>> outlines = new HashMap<String, List<Outline>>();
+
+    /**
+     * The shell grids of one bitmap, the innermost last, and for each but the
+     * innermost the part deep enough for infill before the next shell.
+     */
+    private static final class Outline {
+        private final List<BooleanGrid> shells = new ArrayList<BooleanGrid>();
+        private final List<BooleanGrid> cores = new ArrayList<BooleanGrid>();
+
+        /**
+         * Does the innermost shell reach all the infill region? It does not
+         * where a shell breaks, in necks and arms too thin for it, and a core
+         * is left that is not within the infill inset of the next shell.
+         */
+        boolean innermostReachesAll(final double inset) {
+            for (int k = 0; k < cores.size(); k++) {
+                if (cores.get(k) == BooleanGrid.NOTHING_THERE) {
+                    continue;
+                }
+                final BooleanGrid reach = shells.get(k + 1).createOffsetGrid(inset);
+                final boolean covered = cores.get(k).isCoveredBy(reach);
+                release(reach);
+                if (!covered) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void release() {
+            for (final BooleanGrid grid : shells) {
+                release(grid);
+            }
+            for (final BooleanGrid grid : cores) {
+                release(grid);
+            }
+        }
+
+        private static void release(final BooleanGrid grid) {
+            if (grid != BooleanGrid.NOTHING_THERE) {
+                grid.release();
+            }
+        }
+    }
 
     Slice(final BooleanGridList bitmaps) {
         if (bitmaps == null) {
@@ -47,18 +108,61 @@ class Slice {
         return bitmaps;
     }
 
+    /**
+     * The bitmaps of the material, releasing those of the other materials.
+     * Only for the owner of the slice, which is done with it afterwards.
+     */
+    BooleanGridList takeBitmaps(final String material) {
+        final BooleanGridList result = new BooleanGridList();
+        for (final BooleanGrid grid : bitmaps) {
+            if (grid.getMaterial().equals(material)) {
+                result.add(grid);
+            } else {
+                grid.release();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Free the bitmaps kept off the heap. Only for the owner of the slice,
+     * once nothing derived from it shares its grids any more.
+     */
+    void release() {
+        bitmaps.release();
+        for (final List<Outline> list : outlines.values()) {
+            releaseOutlines(list);
+        }
+        outlines.clear();
+    }
+
+    private static void releaseOutlines(final List<Outline> list) {
+        for (final Outline outline : list) {
+            outline.release();
+        }
+    }
+
     PolygonList computeBrim(final int brimLines, final double extrusionSize, final String material) {
-        BooleanGridList brimOutline = getBitmaps(material);
+        final BooleanGridList brimOutline = getBitmaps(material);
         final PolygonList result = new PolygonList();
         result.add(brimOutline.borders());
+        if (brimLines <= 1) {
+            return result;
+        }
+        final double[] distances = new double[brimLines - 1];
+        for (int line = 1; line < brimLines; line++) {
+            distances[line - 1] = line * extrusionSize;
+        }
+        final List<List<BooleanGrid>> rings = new ArrayList<>();
+        for (final BooleanGrid grid : brimOutline) {
+            rings.add(grid.createOffsetGrids(distances));
+        }
         for (int line = 1; line < brimLines; line++) {
             final BooleanGridList nextOutline = new BooleanGridList();
-            for (int i = 0; i < brimOutline.size(); i++) {
-                final BooleanGrid grid = brimOutline.get(i);
-                nextOutline.add(grid.createOffsetGrid(extrusionSize));
+            for (final List<BooleanGrid> ring : rings) {
+                nextOutline.add(ring.get(line - 1));
             }
-            brimOutline = nextOutline;
-            result.add(brimOutline.borders());
+            result.add(nextOutline.borders());
         }
         return result;
     }
@@ -74,28 +178,76 @@ class Slice {
         return union;
     }
 
+    /**
+     * The region of the material the borders leave, grown by half the infill
+     * overlap. If getOutlineGrids made the borders, the region is an offset
+     * of the innermost shell of each bitmap. Only the bitmaps with necks or
+     * arms too thin for the innermost shell have the borders drawn into them
+     * and subtracted, and the parts outside of the innermost shell added.
+     */
     BooleanGridList subtractBorder(final String material, final double extrusionSize, final double infillOverlap,
             final PolygonList borders) {
         final BooleanGridList gridList = getBitmaps(material);
         if (gridList.size() <= 0) {
             return new BooleanGridList();
         }
-        final BooleanGridList remaining = gridList.subtractPolygons(borders, extrusionSize * 0.7);
+        final double inset = extrusionSize * INFILL_INSET;
         final BooleanGridList result = new BooleanGridList();
-        for (final BooleanGrid grid : remaining) {
-            result.add(grid.createOffsetGrid(infillOverlap * 0.5));
+        final List<Outline> list = outlines.get(material);
+        if (list == null) {
+            final BooleanGridList remaining = gridList.subtractPolygons(borders, inset);
+            for (final BooleanGrid grid : remaining) {
+                result.add(grid.createOffsetGrid(infillOverlap * 0.5));
+            }
+            remaining.release();
+            return result;
+        }
+        for (int i = 0; i < gridList.size(); i++) {
+            final Outline outline = list.get(i);
+            if (outline.shells.isEmpty()) {
+                result.add(gridList.get(i).createOffsetGrid(infillOverlap * 0.5));
+                continue;
+            }
+            final BooleanGrid innermost = outline.shells.get(outline.shells.size() - 1);
+            final BooleanGrid region = innermost.createOffsetGrid(infillOverlap * 0.5 - inset);
+            if (outline.innermostReachesAll(inset)) {
+                result.add(region);
+                continue;
+            }
+            final BooleanGrid remaining = gridList.get(i).subtractPolygons(borders, inset);
+            final BooleanGrid thin = BooleanGridMath.difference(remaining, innermost);
+            final BooleanGrid grown = thin.createOffsetGrid(infillOverlap * 0.5);
+            result.add(BooleanGridMath.union(region, grown));
+            if (thin != remaining && thin != BooleanGrid.NOTHING_THERE) {
+                thin.release();
+            }
+            remaining.release();
+            if (region != BooleanGrid.NOTHING_THERE && grown != BooleanGrid.NOTHING_THERE) {
+                region.release();
+                grown.release();
+            }
         }
         return result;
     }
 
+    /**
+     * The borders of the shells of the material. The shell grids are kept for
+     * subtractBorder until the slice is released.
+     */
     PolygonList getOutlineGrids(final String material, final int shells, final double extrusionSize, final boolean insideOut) {
         final BooleanGridList gridList = getBitmaps(material);
         if (gridList.size() <= 0) {
             return new PolygonList();
         }
         final BooleanGridList result = new BooleanGridList();
+        final List<Outline> list = new ArrayList<Outline>(gridList.size());
         for (int i = 0; i < gridList.size(); i++) {
-            final BooleanGridList offset = offsetOutline(gridList.get(i), shells, extrusionSize);
+            final Outline outline = offsetOutline(gridList.get(i), shells, extrusionSize);
+            list.add(outline);
+            final BooleanGridList offset = new BooleanGridList();
+            for (final BooleanGrid grid : outline.shells) {
+                offset.add(grid);
+            }
             if (insideOut) {
                 offset.reverse();
             }
@@ -103,21 +255,44 @@ class Slice {
                 result.add(grid);
             }
         }
+        final List<Outline> previous = outlines.put(material, list);
+        if (previous != null) {
+            releaseOutlines(previous);
+        }
         return result.borders();
     }
 
-    private static BooleanGridList offsetOutline(final BooleanGrid grid, final int shells, final double extrusionSize) {
-        final BooleanGridList result = new BooleanGridList();
+    /**
+     * The shells of the grid, the middle of their lines half an extrusion
+     * width apart, up to the first that is empty. The cores between them are
+     * found from the same distance transform.
+     */
+    private static Outline offsetOutline(final BooleanGrid grid, final int shells, final double extrusionSize) {
+        final double[] distances = new double[Math.max(0, 2 * shells - 1)];
+        for (int shell = 0; shell < shells; shell++) {
+            distances[shell] = -(shell + 0.5) * extrusionSize;
+        }
+        for (int shell = 1; shell < shells; shell++) {
+            distances[shells + shell - 1] = -(shell - 0.5 + INFILL_INSET) * extrusionSize;
+        }
+        final List<BooleanGrid> offsets = grid.createOffsetGrids(distances);
+        final Outline result = new Outline();
         for (int shell = 0; shell < shells; shell++) {
-            final double offset = -(shell + 0.5) * extrusionSize;
-            final BooleanGrid thisOne = grid.createOffsetGrid(offset);
-            if (thisOne.isEmpty()) {
-                break;
+            final BooleanGrid thisOne = offsets.get(shell);
+            if (thisOne.isEmpty() || result.shells.size() < shell) {
+                Outline.release(thisOne);
+            } else {
+                result.shells.add(thisOne);
+            }
+        }
+        for (int shell = 1; shell < shells; shell++) {
+            final BooleanGrid core = offsets.get(shells + shell - 1);
+            if (shell < result.shells.size()) {
+                result.cores.add(core);
             } else {
-                result.add(thisOne);
+                Outline.release(core);
             }
         }
         return result;
     }
-
 }
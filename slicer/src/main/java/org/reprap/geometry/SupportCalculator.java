@@ -20,10 +20,12 @@ package org.reprap.geometry;
 
 import org.reprap.configuration.CurrentConfiguration;
 import org.reprap.configuration.FillPattern;
+import org.reprap.configuration.HatchMethod;
 import org.reprap.configuration.MaterialSetting;
 import org.reprap.configuration.PrintSetting;
 import org.reprap.geometry.grids.BooleanGrid;
 import org.reprap.geometry.grids.BooleanGridMath;
+import org.reprap.geometry.grids.GridBufferArena;
 import org.reprap.geometry.grids.Hatcher;
 import org.reprap.geometry.polygons.HalfPlane;
 import org.reprap.geometry.polygons.PolygonList;
@@ -33,6 +35,7 @@ public class SupportCalculator {
     private final BooleanGrid[] previousLayers;
     private final double infillWidth;
     private final boolean pathOptimize;
+    private final HatchMethod hatchMethod;
     private final FillPattern supportPattern;
     private final String supportMaterial;
 
@@ -41,6 +44,7 @@ public class SupportCalculator {
         final PrintSetting printSetting = currentConfiguration.getPrintSetting();
         infillWidth = printSetting.getSupportSpacing();
         pathOptimize = printSetting.isPathOptimize();
+        hatchMethod = printSetting.getHatchMethod();
         supportPattern = printSetting.getSupportPattern();
         final int supportExtruderNo = printSetting.getSupportExtruder();
         final MaterialSetting supportMaterialSetting = currentConfiguration.getMaterials().get(supportExtruderNo);
@@ -53,6 +57,14 @@ public class SupportCalculator {
             for (int stl = 0; stl < stlList.size(); stl++) {
                 final Slice slice = stlList.slice(stl, layer);
                 supportPolygons[layer] = computeSupport(stl, slice, layer);
+                slice.release();
+            }
+            GridBufferArena.releaseLayer();
+        }
+        for (int stl = 0; stl < previousLayers.length; stl++) {
+            if (previousLayers[stl] != null) {
+                previousLayers[stl].release();
+                previousLayers[stl] = null;
             }
         }
     }
@@ -62,7 +74,7 @@ public class SupportCalculator {
      */
     private PolygonList computeSupport(final int stl, final Slice slice, final int layer) {
         // Union of everything in this layer because that is everywhere that support _isn't_ needed.
-        BooleanGrid unionOfThisLayer = slice.unionMaterials(supportMaterial);
+        final BooleanGrid unionOfThisLayer = slice.unionMaterials(supportMaterial);
 
         // Get the layer above and union it with this layer.  That's what needs
         // support on the next layer down.
@@ -73,19 +85,36 @@ public class SupportCalculator {
         }
 
         previousLayers[stl] = BooleanGridMath.union(previousSupport, unionOfThisLayer);
+        BooleanGrid clearance = unionOfThisLayer;
         if (!unionOfThisLayer.isEmpty()) {
             // Expand the union of this layer a bit, so that any support is a little clear of this layer's boundaries.
-            unionOfThisLayer = unionOfThisLayer.createOffsetGrid(0.5);
+            clearance = unionOfThisLayer.createOffsetGrid(0.5);
         }
 
         // Now we subtract the union of this layer from all the stuff requiring support in the layer above.
-        final BooleanGrid support = BooleanGridMath.difference(previousSupport, unionOfThisLayer);
-        return hatchSupport(support, layer);
+        final BooleanGrid support = BooleanGridMath.difference(previousSupport, clearance);
+        try {
+            return hatchSupport(support, layer);
+        } finally {
+            releaseAllBut(previousLayers[stl], unionOfThisLayer, clearance, previousSupport, support);
+        }
+    }
+
+    /**
+     * The union and the difference may return one of their operands, so
+     * everything but the grid kept for the next layer down is released.
+     */
+    private static void releaseAllBut(final BooleanGrid kept, final BooleanGrid... grids) {
+        for (final BooleanGrid grid : grids) {
+            if (grid != kept) {
+                grid.release();
+            }
+        }
     }
 
     private PolygonList hatchSupport(final BooleanGrid grid, final int layer) {
         final HalfPlane hatchLine = LayerRules.getHatchLine(layer, supportPattern);
-        return new Hatcher(grid).hatch(hatchLine, infillWidth, pathOptimize);
+        return new Hatcher(grid, hatchMethod).hatch(hatchLine, infillWidth, pathOptimize);
     }
 
     PolygonList getSupport(final int modelLayer) {
@@ -0,0 +1,106 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The heap allocated by the current thread and the workers of GridBands,
+ * where the JVM can tell, and the memory held in direct buffers off the heap.
+ */
+public final class AllocationMeter {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final Set<Thread> WORKERS = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+    /**
+     * The bytes allocated by the workers that have terminated
+     */
+    private static final AtomicLong RETIRED_BYTES = new AtomicLong();
+
+    private AllocationMeter() {
+    }
+
+    /**
+     * The bytes allocated so far by the current thread and by the workers of
+     * GridBands, those that have terminated included, or -1 if the JVM does
+     * not count them. The work on big grids runs on the workers, the calling
+     * thread alone would miss most of it.
+     */
+    public static long allocatedBytes() {
+        final com.sun.management.ThreadMXBean threads = countingThreads();
+        if (threads == null) {
+            return -1;
+        }
+        final Thread current = Thread.currentThread();
+        long result = RETIRED_BYTES.get() + Math.max(0, threads.getThreadAllocatedBytes(current.getId()));
+        for (final Thread worker : WORKERS) {
+            if (worker != current) {
+                result += Math.max(0, threads.getThreadAllocatedBytes(worker.getId()));
+            }
+        }
+        return result;
+    }
+
+    private static com.sun.management.ThreadMXBean countingThreads() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Count what the worker allocates, called by the worker when it starts.
+     */
+    static void workerStarted(final Thread worker) {
+        WORKERS.add(worker);
+    }
+
+    /**
+     * Keep what the worker allocated, called by the worker when it
+     * terminates. A sum taken meanwhile may count it twice.
+     */
+    static void workerTerminated(final Thread worker) {
+        final com.sun.management.ThreadMXBean threads = countingThreads();
+        if (threads != null) {
+            RETIRED_BYTES.addAndGet(Math.max(0, threads.getThreadAllocatedBytes(worker.getId())));
+        }
+        WORKERS.remove(worker);
+    }
+
+    /**
+     * The bytes held in direct buffers by all threads, or -1 if the JVM does
+     * not tell.
+     */
+    public static long offHeapBytes() {
+        for (final BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,105 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The word loops the grid operations spend their time in, over runs of words
+ * that lie one after the other in an array. The plain Java implementation
+ * works everywhere; an implementation on the Vector API of a newer JDK can be
+ * put on the class path as a service provider and is picked up at start-up if
+ * it runs on this JVM.
+ */
+public abstract class BitmapKernels {
+    private static final Logger LOGGER = LogManager.getLogger(BitmapKernels.class);
+    private static final BitmapKernels SCALAR = new ScalarBitmapKernels();
+    private static final BitmapKernels INSTANCE = load();
+
+    /**
+     * The kernels used by the grids: the first available service provider,
+     * or the plain Java ones.
+     */
+    public static BitmapKernels get() {
+        return INSTANCE;
+    }
+
+    /**
+     * The plain Java kernels, for comparing with a provider.
+     */
+    public static BitmapKernels scalar() {
+        return SCALAR;
+    }
+
+    private static BitmapKernels load() {
+        try {
+            final Iterator<BitmapKernels> providers = ServiceLoader.load(BitmapKernels.class).iterator();
+            while (providers.hasNext()) {
+                final BitmapKernels kernels = providers.next();
+                if (kernels.isAvailable()) {
+                    LOGGER.info("using the " + kernels.getName() + " bitmap kernels");
+                    return kernels;
+                }
+            }
+        } catch (final ServiceConfigurationError | LinkageError e) {
+            // a provider built for a newer JVM, or without its incubator module
+            LOGGER.catching(Level.DEBUG, e);
+        }
+        return SCALAR;
+    }
+
+    /**
+     * Whether the kernels work (and pay) on this JVM and hardware.
+     */
+    protected boolean isAvailable() {
+        return true;
+    }
+
+    public abstract String getName();
+
+    /**
+     * target[targetOffset + i] |= source[sourceOffset + i] for i below length
+     */
+    public abstract void or(long[] target, int targetOffset, long[] source, int sourceOffset, int length);
+
+    /**
+     * target[targetOffset + i] &= source[sourceOffset + i] for i below length
+     */
+    public abstract void and(long[] target, int targetOffset, long[] source, int sourceOffset, int length);
+
+    /**
+     * target[targetOffset + i] &= ~source[sourceOffset + i] for i below length
+     */
+    public abstract void andNot(long[] target, int targetOffset, long[] source, int sourceOffset, int length);
+
+    /**
+     * One step of the vertical spread of a column of length words, bit 0 of
+     * the first word at the bottom: writes the words from "from" grown (or
+     * shrunk) by one pixel up and down to the words from "to". Bits shifted in
+     * from below the first or above the last word are air, when growing the
+     * last word is masked with lastValid.
+     */
+    public abstract void spread(long[] words, int from, int to, int length, long lastValid, boolean grow);
+}
@@ -1,10 +1,12 @@
 package org.reprap.geometry.grids;
 
-import java.util.BitSet;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.reprap.configuration.BitmapStorage;
 import org.reprap.geometry.polygons.CSG2D;
 import org.reprap.geometry.polygons.HalfPlane;
 import org.reprap.geometry.polygons.Interval;
@@ -17,10 +19,15 @@ import org.reprap.geometry.polygons.Rectangle;
 
 /**
  * This class stores a rectangular grid at the same grid resolution as the
- * RepRap machine's finest resolution using the Java BitSet class.
+ * RepRap machine's finest resolution as columns of 64-bit words.
  * 
  * There are two types of pixel: solid (or true), and air (or false).
  * 
+ * The pixels are kept in a PixelStore: each column of pixels (fixed x) starts
+ * on a word boundary and holds its y values in ascending bit order. So a
+ * column can be shifted, copied and combined a word at a time, even between
+ * grids whose origins differ.
+ * 
  * There are Boolean operators implemented to allow unions, intersections, and
  * differences of two bitmaps, and complements of one.
  * 
@@ -34,63 +41,131 @@ import org.reprap.geometry.polygons.Rectangle;
  */
 public class BooleanGrid {
     private static final Logger LOGGER = LogManager.getLogger(BooleanGrid.class);
-    public static final BooleanGrid NOTHING_THERE = new BooleanGrid(0.0, null, new Integer2DRectangle(), new BitSet(1));
+    /**
+     * Sub-pixel contours have no steps, so they can be simplified with a
+     * smaller tolerance than the 1.5 pixels used for the pixel contours.
+     */
+    private static final double SUB_PIXEL_SIMPLIFICATION = 0.5;
+    public static final BooleanGrid NOTHING_THERE = new BooleanGrid(0.0, null, new Integer2DRectangle());
 
     private final double pixelSize;
     private final String material;
     private final Integer2DRectangle rectangle;
-    private final BitSet bits;
+    private final PixelStore pixels;
+    /**
+     * Signed distances to the boundary at the pixels next to it, or null if
+     * they are not known. They are kept by copies and offsets, any other
+     * change of the pixels drops them.
+     */
+    private BoundaryValues boundaryValues;
 
-    private BooleanGrid(final double pixelSize, final String material, final Integer2DRectangle rectangle, final BitSet bits) {
+    private BooleanGrid(final double pixelSize, final String material, final Integer2DRectangle rectangle,
+            final PixelStore pixels) {
+        this(pixelSize, material, rectangle, pixels, null);
+    }
+
+    private BooleanGrid(final double pixelSize, final String material, final Integer2DRectangle rectangle,
+            final PixelStore pixels, final BoundaryValues boundaryValues) {
         this.pixelSize = pixelSize;
         this.material = material;
         this.rectangle = rectangle;
-        this.bits = bits;
+        this.pixels = pixels;
+        this.boundaryValues = boundaryValues;
     }
 
     BooleanGrid(final double pixelSize, final String material, final Integer2DRectangle rectangle) {
-        this(pixelSize, material, rectangle, new BitSet(rectangle.getSizeX() * rectangle.getSizeY()));
+        this(pixelSize, material, rectangle, BitmapStorage.DENSE);
+    }
+
+    /**
+     * An empty grid keeping its pixels in the given kind of storage
+     */
+    BooleanGrid(final double pixelSize, final String material, final Integer2DRectangle rectangle,
+            final BitmapStorage storage) {
+        this(pixelSize, material, rectangle, createStore(storage, rectangle));
     }
 
     /**
      * Copy constructor
      */
     BooleanGrid(final BooleanGrid bg) {
-        this(bg.pixelSize, bg.material, new Integer2DRectangle(bg.rectangle), (BitSet) bg.bits.clone());
+        this(bg.pixelSize, bg.material, new Integer2DRectangle(bg.rectangle), bg.pixels.copy(),
+                copyOf(bg.boundaryValues));
     }
 
     /**
      * Copy constructor with new material
      */
     public BooleanGrid(final BooleanGrid bg, final String material) {
-        this(bg.pixelSize, material, new Integer2DRectangle(bg.rectangle), (BitSet) bg.bits.clone());
+        this(bg.pixelSize, material, new Integer2DRectangle(bg.rectangle), bg.pixels.copy(),
+                copyOf(bg.boundaryValues));
     }
 
     /**
      * Build the grid from a CSG expression
      */
     public BooleanGrid(final double pixelSize, final String material, final Rectangle realRectangle, final CSG2D csgExp) {
-        this(pixelSize, material, new Integer2DRectangle(realRectangle.offset(0.5), pixelSize));
-        new Csg2dGridPainter(pixelSize, rectangle, bits).paint(csgExp);
+        this(pixelSize, material, realRectangle, csgExp, BitmapStorage.DENSE);
+    }
+
+    /**
+     * Build the grid from a CSG expression, keeping the pixels in the given
+     * kind of storage. All grids derived from this one use the same storage.
+     */
+    public BooleanGrid(final double pixelSize, final String material, final Rectangle realRectangle, final CSG2D csgExp,
+            final BitmapStorage storage) {
+        this(pixelSize, material, realRectangle, csgExp, storage, false);
+    }
+
+    /**
+     * Build the grid from a CSG expression. With subPixelContours the grid
+     * also keeps the values of the expression at its boundary pixels, so its
+     * outlines and those of its offsets can be placed between the pixels.
+     */
+    public BooleanGrid(final double pixelSize, final String material, final Rectangle realRectangle, final CSG2D csgExp,
+            final BitmapStorage storage, final boolean subPixelContours) {
+        this(pixelSize, material, new Integer2DRectangle(realRectangle.offset(0.5), pixelSize), storage);
+        if (subPixelContours) {
+            boundaryValues = new BoundaryValues();
+        }
+        new Csg2dGridPainter(this).paint(csgExp);
+        pixels.compact();
     }
 
     /**
      * Copy constructor with new rectangle
      */
     BooleanGrid(final BooleanGrid bg, final Integer2DRectangle newRec) {
-        this(bg.pixelSize, bg.material, new Integer2DRectangle(newRec));
-        final Integer2DRectangle recScan = rectangle.intersection(bg.rectangle);
-        final int offxOut = recScan.getSwCorner().getX() - rectangle.getSwCorner().getX();
-        final int offyOut = recScan.getSwCorner().getY() - rectangle.getSwCorner().getY();
-        final int offxIn = recScan.getSwCorner().getX() - bg.rectangle.getSwCorner().getX();
-        final int offyIn = recScan.getSwCorner().getY() - bg.rectangle.getSwCorner().getY();
-        for (int x = 0; x < recScan.getSizeX(); x++) {
-            for (int y = 0; y < recScan.getSizeY(); y++) {
-                bits.set(pixI(x + offxOut, y + offyOut), bg.bits.get(bg.pixI(x + offxIn, y + offyIn)));
-            }
+        this(bg.pixelSize, bg.material, new Integer2DRectangle(newRec), bg.pixels.create(newRec.getSizeX(), newRec
+                .getSizeY()));
+        combine(bg, PixelStore.Operation.COPY);
+    }
+
+    private static PixelStore createStore(final BitmapStorage storage, final Integer2DRectangle rectangle) {
+        switch (storage) {
+        case DENSE:
+            return new DensePixelStore(rectangle.getSizeX(), rectangle.getSizeY());
+        case TILED:
+            return new TiledPixelStore(rectangle.getSizeX(), rectangle.getSizeY());
+        case OFF_HEAP:
+            return new OffHeapPixelStore(rectangle.getSizeX(), rectangle.getSizeY());
+        default:
+            throw new IllegalArgumentException("unknown bitmap storage " + storage);
         }
     }
 
+    private static BoundaryValues copyOf(final BoundaryValues values) {
+        return values == null ? null : values.copy();
+    }
+
+    /**
+     * An empty grid with the same rectangle, material and storage as this one.
+     */
+    BooleanGrid emptyCopy() {
+        return new BooleanGrid(pixelSize, material, new Integer2DRectangle(rectangle), pixels.create(rectangle.getSizeX(),
+                rectangle.getSizeY()));
+    }
+
     /**
      * The index of a pixel in the 1D bit array.
      */
@@ -113,7 +188,16 @@ public class BooleanGrid {
      * Any pixels set?
      */
     public boolean isEmpty() {
-        return bits.isEmpty();
+        return pixels.isEmpty();
+    }
+
+    /**
+     * Free the pixels kept off the heap now instead of when the grid is
+     * garbage collected. The grid must not be used afterwards; grids in other
+     * storages ignore this.
+     */
+    public void release() {
+        pixels.release();
     }
 
     /**
@@ -123,7 +207,7 @@ public class BooleanGrid {
         return inside(p.getX(), p.getY());
     }
 
-    private boolean inside(final int x, final int y) {
+    boolean inside(final int x, final int y) {
         if (x < 0) {
             return false;
         }
@@ -139,6 +223,20 @@ public class BooleanGrid {
         return true;
     }
 
+    boolean keepsBoundaryValues() {
+        return boundaryValues != null;
+    }
+
+    /**
+     * Remember the signed distance, in pixels, from the centre of pixel x, y
+     * to the boundary, if the grid keeps such values.
+     */
+    void setBoundaryValue(final int x, final int y, final double value) {
+        if (boundaryValues != null) {
+            boundaryValues.put(pixI(x, y), (float) value);
+        }
+    }
+
     /**
      * Set pixel p to value v
      */
@@ -147,26 +245,14 @@ public class BooleanGrid {
             LOGGER.error("BoolenGrid.set(): attempt to set pixel beyond boundary!");
             return;
         }
-        bits.set(pixI(p), v);
+        setColumn(p.getX(), p.getY(), p.getY(), v);
     }
 
     /**
-     * Fill a disc centre c radius r with v
+     * Set the pixels from y0 to y1 (both inclusive) in column x to v
      */
-    private void disc(final Integer2DPoint c, final int r, final boolean v) {
-        for (int x = -r; x <= r; x++) {
-            final int xp = c.getX() + x;
-            if (xp > 0 && xp < rectangle.getSizeX()) {
-                final int y = (int) Math.round(Math.sqrt((r * r - x * x)));
-                int yp0 = c.getY() - y;
-                int yp1 = c.getY() + y;
-                yp0 = Math.max(yp0, 0);
-                yp1 = Math.min(yp1, rectangle.getSizeY() - 1);
-                if (yp0 <= yp1) {
-                    bits.set(pixI(xp, yp0), pixI(xp, yp1) + 1, v);
-                }
-            }
-        }
+    void setColumn(final int x, final int y0, final int y1, final boolean v) {
+        pixels.setColumn(x, y0, y1, v);
     }
 
     /**
@@ -209,7 +295,7 @@ public class BooleanGrid {
                 yLow = Math.max(yLow, 0);
                 yHigh = Math.min(yHigh, rectangle.getSizeY() - 1);
                 if (yLow <= yHigh) {
-                    bits.set(pixI(x, yLow), pixI(x, yHigh) + 1, v);
+                    setColumn(x, yLow, yHigh, v);
                 }
             }
         }
@@ -229,7 +315,7 @@ public class BooleanGrid {
         if (!inside(x, y)) {
             return false;
         }
-        return bits.get(pixI(x, y));
+        return pixels.get(x, y);
     }
 
     /**
@@ -241,35 +327,17 @@ public class BooleanGrid {
     }
 
     /**
-     * Find the centroid of the shape(s)
+     * Area, moments and bounds of the shape(s)
      */
-    private Integer2DPoint findCentroid_i() {
-        Integer2DPoint sum = new Integer2DPoint(0, 0);
-        int points = 0;
-        for (int x = 0; x < rectangle.getSizeX(); x++) {
-            for (int y = 0; y < rectangle.getSizeY(); y++) {
-                if (get(x, y)) {
-                    sum = sum.add(new Integer2DPoint(x, y));
-                    points++;
-                }
-            }
-        }
-        if (points == 0) {
-            return null;
-        }
-        return new Integer2DPoint(sum.getX() / points, sum.getY() / points);
+    public GridMoments moments() {
+        return new GridMoments(this);
     }
 
     /**
      * Find the centroid of the shape(s)
      */
     public Point2D findCentroid() {
-        final Integer2DPoint p = findCentroid_i();
-        if (p == null) {
-            return null;
-        } else {
-            return rectangle.realPoint(p, pixelSize);
-        }
+        return moments().getCentroid();
     }
 
     /**
@@ -278,51 +346,116 @@ public class BooleanGrid {
      */
     private Integer2DPolygonList iAllPerimiters() {
         final BooleanGridWalker gridWalker = new BooleanGridWalker(this);
-        final Integer2DPolygonList polygons = gridWalker.marchAll();
-        return polygons.simplify();
+        return gridWalker.marchAllSimplified();
     }
 
     /**
      * Return all the outlines of all the solid areas as real-world polygons.
      */
     public PolygonList allPerimiters() {
+        if (boundaryValues != null) {
+            final List<double[]> contours = SubPixelContours.interpolate(this, boundaryValues, new BooleanGridWalker(this)
+                    .marchAll());
+            return realPolygons(contours).simplify(SUB_PIXEL_SIMPLIFICATION * pixelSize);
+        }
         final PolygonList r = iAllPerimiters().realPolygons(getMaterial(), rectangle, pixelSize);
         return r.simplify(1.5 * pixelSize);
     }
 
+    private PolygonList realPolygons(final List<double[]> contours) {
+        final PolygonList result = new PolygonList();
+        for (final double[] contour : contours) {
+            final Polygon polygon = new Polygon(material, true);
+            for (int i = 0; i < contour.length; i += 2) {
+                polygon.add(rectangle.realPoint(contour[i], contour[i + 1], pixelSize));
+            }
+            result.add(polygon);
+        }
+        return result;
+    }
+
     /**
      * Offset the pattern by a given real-world distance. If the distance is
-     * negative the pattern is shrunk; if it is positive it is grown;
+     * negative the pattern is shrunk; if it is positive it is grown. Growing
+     * sets every pixel within the distance of a solid pixel, shrinking clears
+     * every pixel within the distance of air, both taken from an exact
+     * Euclidean distance transform.
      */
     public BooleanGrid createOffsetGrid(final double dist) {
-        final int r = (int) Math.round(dist / pixelSize);
-        if (r == 0) {
-            return new BooleanGrid(this);
-        }
-        final BooleanGrid result;
-        if (r > 0) {
-            result = new BooleanGrid(this, rectangle.offset(r));
-        } else {
-            result = new BooleanGrid(this);
-        }
-        result.offsetOutlines(r);
-        if (result.isEmpty()) {
-            return NOTHING_THERE;
-        }
-        return result;
+        return createOffsetGrids(dist).get(0);
     }
 
-    private void offsetOutlines(final int r) {
-        final Integer2DPolygonList polygons = iAllPerimiters();
-        for (int p = 0; p < polygons.size(); p++) {
-            final Integer2DPolygon ip = polygons.polygon(p);
-            for (int e = 0; e < ip.size(); e++) {
-                final Integer2DPoint p0 = ip.point(e);
-                final Integer2DPoint p1 = ip.point((e + 1) % ip.size());
-                rectangle(p0, p1, Math.abs(r), r > 0);
-                disc(p1, Math.abs(r), r > 0);
+    /**
+     * Offset the pattern by several distances at once, like createOffsetGrid.
+     * Small distances are handled by word wise morphology, for the others the
+     * distance transforms are computed only once, each further offset costs
+     * just a threshold sweep. The grown grids all cover the rectangle
+     * grown by the largest distance.
+     * 
+     * @return the offset grids in the order of the distances, NOTHING_THERE
+     *         for those that are empty.
+     */
+    public List<BooleanGrid> createOffsetGrids(final double... distances) {
+        int margin = 0;
+        for (final double dist : distances) {
+            margin = Math.max(margin, (int) Math.round(dist / pixelSize));
+        }
+        final Integer2DRectangle grown = rectangle.offset(margin);
+        List<double[]> contours = null;
+        if (boundaryValues != null) {
+            final BooleanGrid walked = new BooleanGrid(this);
+            contours = SubPixelContours.interpolate(this, boundaryValues, new BooleanGridWalker(walked).marchAll());
+        }
+        DistanceTransform toSolid = null;
+        DistanceTransform toAir = null;
+        final List<BooleanGrid> result = new ArrayList<>(distances.length);
+        for (final double dist : distances) {
+            final int r = (int) Math.round(dist / pixelSize);
+            if (r == 0) {
+                result.add(new BooleanGrid(this));
+                continue;
+            }
+            final long limit = (long) r * r;
+            final BooleanGrid offset;
+            if (r > 0) {
+                if (r <= Morphology.MAX_RADIUS) {
+                    offset = new BooleanGrid(this, grown);
+                    Morphology.dilate(offset, r);
+                } else {
+                    if (toSolid == null) {
+                        toSolid = DistanceTransform.toSolid(this, margin);
+                    }
+                    offset = new BooleanGrid(pixelSize, material, grown, pixels.create(grown.getSizeX(), grown.getSizeY()));
+                    toSolid.mark(offset, limit, true);
+                }
+            } else {
+                offset = new BooleanGrid(this);
+                if (-r <= Morphology.MAX_RADIUS) {
+                    Morphology.erode(offset, -r);
+                } else {
+                    if (toAir == null) {
+                        toAir = DistanceTransform.toAir(this);
+                    }
+                    toAir.mark(offset, limit, false);
+                }
+            }
+            offset.pixels.compact();
+            if (contours != null) {
+                offset.boundaryValues = SubPixelContours.offsetValues(this, contours, offset, dist / pixelSize);
             }
+            if (offset.isEmpty()) {
+                result.add(NOTHING_THERE);
+            } else {
+                result.add(offset);
+            }
+        }
+        if (toSolid != null) {
+            toSolid.release();
         }
+        if (toAir != null) {
+            toAir.release();
+        }
+        return result;
     }
 
     public BooleanGrid subtractPolygons(final PolygonList polygons, final double width) {
@@ -335,6 +468,7 @@ public class BooleanGrid {
     }
 
     private void subtract(final Polygon polygon, final double width) {
+        boundaryValues = null;
         final int pixelWidth = (int) Math.round(width / pixelSize);
         for (int i = 0; i < polygon.size(); i++) {
             final Integer2DPoint start = rectangle.convertToInteger2DPoint(polygon.point(i), pixelSize);
@@ -345,16 +479,211 @@ public class BooleanGrid {
         }
     }
 
+    /**
+     * Set all pixels that are set in other. Pixels outside of the rectangle of
+     * other are left alone.
+     */
     void unionWith(final BooleanGrid other) {
-        bits.or(other.bits);
+        combine(other, PixelStore.Operation.OR);
     }
 
+    /**
+     * Clear all pixels that are set in other.
+     */
     void substract(final BooleanGrid other) {
-        bits.andNot(other.bits);
+        combine(other, PixelStore.Operation.AND_NOT);
     }
 
+    /**
+     * Clear all pixels that are not set in other. Pixels outside of the
+     * rectangle of other are cleared.
+     */
     public void intersectWith(final BooleanGrid other) {
-        bits.and(other.bits);
+        combine(other, PixelStore.Operation.AND);
+    }
+
+    /**
+     * Do this grid and other have a solid pixel in common? Blocks of 64
+     * columns that are air in either grid according to their occupancy
+     * summaries are skipped without reading their pixels.
+     */
+    public boolean overlaps(final BooleanGrid other) {
+        if (this == NOTHING_THERE || other == NOTHING_THERE) {
+            return false;
+        }
+        final Integer2DRectangle common = rectangle.intersection(other.rectangle);
+        if (common.isEmpty() || common.getSizeX() == 0 || common.getSizeY() == 0) {
+            return false;
+        }
+        final int x0 = common.getSwCorner().getX() - rectangle.getSwCorner().getX();
+        final int y0 = common.getSwCorner().getY() - rectangle.getSwCorner().getY();
+        final int dx = rectangle.getSwCorner().getX() - other.rectangle.getSwCorner().getX();
+        final int dy = rectangle.getSwCorner().getY() - other.rectangle.getSwCorner().getY();
+        final int y1 = y0 + common.getSizeY() - 1;
+        for (int x = x0; x < x0 + common.getSizeX(); x++) {
+            for (int w = y0 / Long.SIZE; w <= y1 / Long.SIZE; w++) {
+                if (!pixels.mayBeSet(x, w)) {
+                    continue;
+                }
+                final int start = Math.max(y0, w * Long.SIZE);
+                final int n = Math.min(y1, w * Long.SIZE + Long.SIZE - 1) - start + 1;
+                final int otherY = start + dy;
+                if (!other.pixels.mayBeSet(x + dx, otherY / Long.SIZE)
+                        && !other.pixels.mayBeSet(x + dx, (otherY + n - 1) / Long.SIZE)) {
+                    continue;
+                }
+                final long mask = n == Long.SIZE ? -1L : (1L << n) - 1;
+                final long here = pixels.getWord(x, w) >>> start % Long.SIZE;
+                if ((here & other.pixels.readBits(x + dx, otherY, n) & mask) != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Is every solid pixel of this grid solid in other too? Pixels outside of
+     * the rectangle of other count as air. Words of this grid that are air
+     * according to its occupancy summary are skipped, the others are compared
+     * with the bits of other in one go.
+     */
+    public boolean isCoveredBy(final BooleanGrid other) {
+        if (this == NOTHING_THERE || this == other) {
+            return true;
+        }
+        if (other == NOTHING_THERE) {
+            return isEmpty();
+        }
+        final int dx = rectangle.getSwCorner().getX() - other.rectangle.getSwCorner().getX();
+        final int dy = rectangle.getSwCorner().getY() - other.rectangle.getSwCorner().getY();
+        final int yStart = Math.max(0, -dy);
+        final int yEnd = Math.min(rectangle.getSizeY(), other.rectangle.getSizeY() - dy);
+        final int sizeY = rectangle.getSizeY();
+        final int stride = getStride();
+        for (int x = 0; x < rectangle.getSizeX(); x++) {
+            final int otherX = x + dx;
+            final boolean inside = otherX >= 0 && otherX < other.rectangle.getSizeX();
+            for (int w = 0; w < stride; w++) {
+                if (!pixels.mayBeSet(x, w)) {
+                    continue;
+                }
+                final int start = w * Long.SIZE;
+                final int n = Math.min(sizeY - start, Long.SIZE);
+                final long here = pixels.getWord(x, w) & (n == Long.SIZE ? -1L : (1L << n) - 1);
+                if (here == 0) {
+                    continue;
+                }
+                final int low = Math.max(start, yStart);
+                final int high = Math.min(start + n, yEnd);
+                if (!inside || low >= high) {
+                    return false;
+                }
+                final int m = high - low;
+                final long mask = (m == Long.SIZE ? -1L : (1L << m) - 1) << low - start;
+                final long there = other.pixels.readBits(otherX, low + dy, m) << low - start & mask;
+                if ((here & ~there) != 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Combine the pixels of other into this grid, column by column. The
+     * rectangles may differ: other is aligned to this grid by shifting its
+     * words, pixels outside of its rectangle count as air. Big grids are
+     * combined in bands of columns in parallel.
+     */
+    private void combine(final BooleanGrid other, final PixelStore.Operation operation) {
+        boundaryValues = null;
+        final int[] bands = GridBands.split(rectangle.getSizeX(), rectangle.getSizeY(), getColumnAlignment());
+        if (rectangle.coincidesWith(other.rectangle)) {
+            if (bands.length <= 2 || operation == PixelStore.Operation.COPY) {
+                pixels.combine(other.pixels, operation);
+                return;
+            }
+            GridBands.run(bands, new GridBands.Action() {
+                @Override
+                public void run(final int band, final int start, final int end) {
+                    pixels.combine(other.pixels, operation, start, end);
+                }
+            });
+            pixels.compact();
+            return;
+        }
+        GridBands.run(bands, new GridBands.Action() {
+            @Override
+            public void run(final int band, final int start, final int end) {
+                combineColumns(other, operation, start, end);
+            }
+        });
+        pixels.compact();
+    }
+
+    private void combineColumns(final BooleanGrid other, final PixelStore.Operation operation, final int x0, final int x1) {
+        final int dx = rectangle.getSwCorner().getX() - other.rectangle.getSwCorner().getX();
+        final int dy = rectangle.getSwCorner().getY() - other.rectangle.getSwCorner().getY();
+        final int yStart = Math.max(0, -dy);
+        final int yEnd = Math.min(rectangle.getSizeY(), other.rectangle.getSizeY() - dy);
+        for (int x = x0; x < x1; x++) {
+            final int otherX = x + dx;
+            if (otherX < 0 || otherX >= other.rectangle.getSizeX() || yStart >= yEnd) {
+                if (operation == PixelStore.Operation.AND) {
+                    setColumn(x, 0, rectangle.getSizeY() - 1, false);
+                }
+                continue;
+            }
+            if (operation == PixelStore.Operation.AND) {
+                if (yStart > 0) {
+                    setColumn(x, 0, yStart - 1, false);
+                }
+                if (yEnd < rectangle.getSizeY()) {
+                    setColumn(x, yEnd, rectangle.getSizeY() - 1, false);
+                }
+            }
+            pixels.combineBits(x, yStart, other.pixels, otherX, yStart + dy, yEnd - yStart, operation);
+        }
+    }
+
+    /**
+     * Word w of column x, see PixelStore
+     */
+    long getWord(final int x, final int w) {
+        return pixels.getWord(x, w);
+    }
+
+    /**
+     * Replace word w of column x, see PixelStore
+     */
+    void setWord(final int x, final int w, final long value) {
+        pixels.setWord(x, w, value);
+    }
+
+    /**
+     * The kind of storage of the pixels
+     */
+    BitmapStorage getStorage() {
+        return pixels.getStorage();
+    }
+
+    /**
+     * The number of words in each column
+     */
+    int getStride() {
+        return pixels.getStride();
+    }
+
+    /**
+     * The bits of word w that lie inside the grid
+     */
+    long getValidBits(final int w) {
+        return pixels.validBits(w);
+    }
+
+    int getColumnAlignment() {
+        return pixels.getColumnAlignment();
     }
 
     double getPixelSize() {
@@ -58,6 +58,15 @@ public class BooleanGridList implements Iterable<BooleanGrid> {
         }
     }
 
+    /**
+     * Release all grids of this list, see BooleanGrid.release().
+     */
+    public void release() {
+        for (final BooleanGrid grid : shapes) {
+            grid.release();
+        }
+    }
+
     /**
      * Reverse the order of this list
      */
@@ -77,6 +86,24 @@ public class BooleanGridList implements Iterable<BooleanGrid> {
         return result;
     }
 
+    /**
+     * Is every grid of this list covered by a grid of the same material in
+     * other? See BooleanGrid.isCoveredBy(BooleanGrid).
+     */
+    public boolean isCoveredBy(final BooleanGridList other) {
+        for (final BooleanGrid grid : shapes) {
+            boolean covered = false;
+            for (int j = 0; j < other.size() && !covered; j++) {
+                final BooleanGrid otherGrid = other.get(j);
+                covered = grid.getMaterial().equals(otherGrid.getMaterial()) && grid.isCoveredBy(otherGrid);
+            }
+            if (!covered) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Run through the list, unioning entries in it that share the same material
      * so that the result has just one entry per material.
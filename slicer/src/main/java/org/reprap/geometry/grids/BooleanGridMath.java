@@ -47,7 +47,7 @@ public class BooleanGridMath {
         } else {
             final Integer2DRectangle u = lh.getRectangle().union(rh.getRectangle());
             result = new BooleanGrid(lh, u);
-            result.unionWith(new BooleanGrid(rh, u));
+            result.unionWith(rh);
         }
         if (lh.getMaterial() != rh.getMaterial()) {
             LOGGER.error("attempt to union two bitmaps of different materials: " + lh.getMaterial() + " and "
@@ -64,6 +64,9 @@ public class BooleanGridMath {
             return BooleanGrid.NOTHING_THERE;
         }
 
+        if (!d.overlaps(e)) {
+            return BooleanGrid.NOTHING_THERE;
+        }
         BooleanGrid result;
         if (d.getRectangle().coincidesWith(e.getRectangle())) {
             result = new BooleanGrid(d);
@@ -74,8 +77,7 @@ public class BooleanGridMath {
                 return BooleanGrid.NOTHING_THERE;
             }
             result = new BooleanGrid(d, u);
-            final BooleanGrid temp = new BooleanGrid(e, u);
-            result.intersectWith(temp);
+            result.intersectWith(e);
         }
         if (result.isEmpty()) {
             return BooleanGrid.NOTHING_THERE;
@@ -101,14 +103,11 @@ public class BooleanGridMath {
             return lh;
         }
 
-        final BooleanGrid result = new BooleanGrid(lh);
-        BooleanGrid temp;
-        if (lh.getRectangle().coincidesWith(rh.getRectangle())) {
-            temp = rh;
-        } else {
-            temp = new BooleanGrid(rh, result.getRectangle());
+        if (!lh.overlaps(rh)) {
+            return lh;
         }
-        result.substract(temp);
+        final BooleanGrid result = new BooleanGrid(lh);
+        result.substract(rh);
         if (result.isEmpty()) {
             return BooleanGrid.NOTHING_THERE;
         }
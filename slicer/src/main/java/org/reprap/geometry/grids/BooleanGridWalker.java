@@ -18,7 +18,9 @@
  * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
  */package org.reprap.geometry.grids;
 
-import java.util.BitSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -26,58 +28,6 @@ import org.apache.logging.log4j.Logger;
 public class BooleanGridWalker {
     private static final Logger LOGGER = LogManager.getLogger(BooleanGridWalker.class);
 
-    private final class DebugPrinter {
-        @Override
-        public String toString() {
-            return printNearby(here, 4);
-        }
-
-        private String printNearby(final Integer2DPoint point, final int delta) {
-            final StringBuilder output = new StringBuilder();
-            for (int y = Math.min(point.getY() + delta, sizeY - 1); y >= Math.max(0, point.getY() - delta); y--) {
-                for (int x = Math.max(0, point.getX() - delta); x <= Math.min(point.getX() + delta, sizeX - 1); x++) {
-                    output.append(" ");
-                    final Integer2DPoint printPoint = new Integer2DPoint(x, y);
-                    if (printPoint.coincidesWith(point)) {
-                        if (grid.get(point)) {
-                            output.append("+");
-                        } else {
-                            output.append("o");
-                        }
-                    } else if (printPoint.coincidesWith(start)) {
-                        if (grid.get(start)) {
-                            output.append("S");
-                        } else {
-                            output.append("s");
-                        }
-                    } else if (last != null && printPoint.coincidesWith(last)) {
-                        if (grid.get(last)) {
-                            output.append("L");
-                        } else {
-                            output.append("l");
-                        }
-                    } else if (grid.get(printPoint)) {
-                        if (isVisited(printPoint.getX(), printPoint.getY())) {
-                            output.append("V");
-                        } else {
-                            output.append("*");
-                        }
-                    } else {
-                        if (isVisited(printPoint.getX(), printPoint.getY())) {
-                            output.append("v");
-                        } else {
-                            output.append(".");
-                        }
-                    }
-                }
-                output.append("\n");
-            }
-            return output.toString();
-        }
-    }
-
-    private final DebugPrinter debugPrinter = new DebugPrinter();
-
     /**
      * Run round the eight neighbours of a pixel anti clockwise from bottom left
      * 
@@ -99,10 +49,6 @@ public class BooleanGridWalker {
             this.dy = dy;
         }
 
-        Integer2DPoint from(final Integer2DPoint from) {
-            return new Integer2DPoint(fromX(from.getX()), fromY(from.getY()));
-        }
-
         int fromX(final int x) {
             return x + dx;
         }
@@ -138,16 +84,17 @@ public class BooleanGridWalker {
     private final BooleanGrid grid;
     private final int sizeX;
     private final int sizeY;
-    private final BitSet visited;
-    private Integer2DPoint start;
-    private Integer2DPoint here;
-    private Integer2DPoint last;
+    /**
+     * Words per column of the visited bits. Every column starts on a word
+     * boundary, so walks in different bands never mark the same word.
+     */
+    private final int stride;
 
     BooleanGridWalker(final BooleanGrid booleanGrid) {
         grid = booleanGrid;
         sizeX = grid.getRectangle().getSizeX();
         sizeY = grid.getRectangle().getSizeY();
-        visited = new BitSet(sizeX * sizeY);
+        stride = grid.getStride();
     }
 
     /**
@@ -155,152 +102,537 @@ public class BooleanGridWalker {
      * of them all
      */
     Integer2DPolygonList marchAll() {
+        return marchAll(false);
+    }
+
+    /**
+     * Like marchAll(), but every polygon is simplified straight from the
+     * walk, so only the simplified polygons are ever stored.
+     */
+    Integer2DPolygonList marchAllSimplified() {
+        return marchAll(true);
+    }
+
+    private Integer2DPolygonList marchAll(final boolean simplify) {
         final Integer2DPolygonList result = new Integer2DPolygonList();
         if (grid.isEmpty()) {
             return result;
         }
-
-        for (int x = 0; x < sizeX - 1; x++) {
-            for (int y = 0; y < sizeY - 1; y++) {
-                final int m = marchPattern(x, y);
-                if (m != 0 && m != 15) {
-                    if (canMarch(x, y)) {
-                        start = new Integer2DPoint(x, y);
-                        final Integer2DPolygon p = marchRound();
-                        if (p.size() > 2) {
-                            result.add(p);
-                        }
-                    }
-                }
+        final GridBufferArena arena = GridBufferArena.get();
+        final long[] visited = arena.borrowLongs(sizeX * stride);
+        try {
+            final int[] bands = GridBands.split(sizeX - 1, sizeY, 1);
+            if (bands.length <= 2) {
+                new Walk(visited, simplify, false, 0, sizeX - 2).scan(0, sizeX - 1, result);
+            } else {
+                marchBands(bands, simplify, visited, result);
             }
+        } finally {
+            arena.giveBack(visited);
         }
         return result;
     }
 
-    private boolean canMarch(final int x, final int y) {
-        return !isVisited(x, y) && !isVisited(Neighbour.S.fromX(x), Neighbour.S.fromY(y))
-                && !isVisited(Neighbour.SE.fromX(x), Neighbour.SE.fromY(y))
-                && !isVisited(Neighbour.E.fromX(x), Neighbour.E.fromY(y));
+    /**
+     * Walk big grids in bands of columns. First every band walks the contours
+     * that start in it on its own, with visited bits of its own, giving up on
+     * those that leave its columns or would change the grid. Then the whole
+     * grid is scanned in order like the single threaded walk does, but where
+     * a band has walked a contour from the same start it is taken over, as
+     * long as none of the pixels that walk looked at has been changed by a
+     * walk that was not taken over. The others, among them all contours that
+     * cross the seams between bands, are walked again. So the result is the
+     * same polygon for polygon and point for point.
+     */
+    private void marchBands(final int[] bands, final boolean simplify, final long[] visited,
+            final Integer2DPolygonList result) {
+        final int count = bands.length - 1;
+        final Walk[] walks = new Walk[count];
+        final GridBufferArena arena = GridBufferArena.get();
+        final long[] speculative = arena.borrowLongs(visited.length);
+        final long[] abandoned = arena.borrowLongs(visited.length);
+        final long[] dirty = arena.borrowLongs(visited.length);
+        try {
+            GridBands.run(bands, new GridBands.Action() {
+                @Override
+                public void run(final int band, final int start, final int end) {
+                    final int maxX = band == count - 1 ? end - 1 : end - 2;
+                    final Walk walk = new Walk(speculative, simplify, true, start, maxX);
+                    walk.abandoned = abandoned;
+                    walk.scan(start, end, null);
+                    walks[band] = walk;
+                }
+            });
+            final Walk whole = new Walk(visited, simplify, false, 0, sizeX - 2);
+            whole.replayFrom(bands, walks, dirty);
+            whole.scan(0, sizeX - 1, result);
+        } finally {
+            arena.giveBack(speculative);
+            arena.giveBack(abandoned);
+            arena.giveBack(dirty);
+        }
+    }
+
+    /**
+     * A contour walked by a band: its start, whether the band walked it all
+     * the way round, its polygon (null if it has too few points), the pixel
+     * indices of its march patterns and of its points.
+     */
+    private static final class Contour {
+        private final int start;
+        private final boolean complete;
+        private final Integer2DPolygon polygon;
+        private final int[] patterns;
+        private final int[] points;
+
+        Contour(final int start, final boolean complete, final Integer2DPolygon polygon, final int[] patterns,
+                final int[] points) {
+            this.start = start;
+            this.complete = complete;
+            this.polygon = polygon;
+            this.patterns = patterns;
+            this.points = points;
+        }
     }
 
     /**
-     * Run marching squares round the polygon starting with the 2x2 march
-     * pattern at start
+     * The state of walking the contours of the grid, either all of them or
+     * speculatively those of one band.
      */
-    private Integer2DPolygon marchRound() {
-        final Integer2DPolygon result = new Integer2DPolygon(true);
-        here = new Integer2DPoint(start);
-        last = null;
-
-        do {
-            final int m = marchPattern(here.getX(), here.getY());
-            LOGGER.trace("walking ({})\n{}", here, debugPrinter);
-            switch (m) {
-            case 1:
-                addToResult(result, here);
-                break;
-            case 2:
-                addToResult(result, Neighbour.E.fromX(here.getX()), Neighbour.E.fromY(here.getY()));
-                break;
-            case 3:
-                addToResult(result, here);
-                addToResult(result, Neighbour.E.fromX(here.getX()), Neighbour.E.fromY(here.getY()));
-                break;
-            case 4:
-                addToResult(result, Neighbour.S.fromX(here.getX()), Neighbour.S.fromY(here.getY()));
-                break;
-            case 5:
-                addToResult(result, here);
-                addToResult(result, Neighbour.S.fromX(here.getX()), Neighbour.S.fromY(here.getY()));
-                break;
-            case 6:
-                if (last == null) {
-                    LOGGER.error("dud 2x2 grid: {} at {}\n{}", m, here, debugPrinter);
-                    return result;
+    private final class Walk {
+        private final class DebugPrinter {
+            @Override
+            public String toString() {
+                return printNearby(hereX, hereY, 4);
+            }
+
+            private String printNearby(final int pointX, final int pointY, final int delta) {
+                final StringBuilder output = new StringBuilder();
+                for (int y = Math.min(pointY + delta, sizeY - 1); y >= Math.max(0, pointY - delta); y--) {
+                    for (int x = Math.max(0, pointX - delta); x <= Math.min(pointX + delta, sizeX - 1); x++) {
+                        output.append(" ");
+                        if (x == pointX && y == pointY) {
+                            if (grid.get(x, y)) {
+                                output.append("+");
+                            } else {
+                                output.append("o");
+                            }
+                        } else if (x == startX && y == startY) {
+                            if (grid.get(x, y)) {
+                                output.append("S");
+                            } else {
+                                output.append("s");
+                            }
+                        } else if (hasLast && x == lastX && y == lastY) {
+                            if (grid.get(x, y)) {
+                                output.append("L");
+                            } else {
+                                output.append("l");
+                            }
+                        } else if (grid.get(x, y)) {
+                            if (isVisited(x, y)) {
+                                output.append("V");
+                            } else {
+                                output.append("*");
+                            }
+                        } else {
+                            if (isVisited(x, y)) {
+                                output.append("v");
+                            } else {
+                                output.append(".");
+                            }
+                        }
+                    }
+                    output.append("\n");
                 }
-                LOGGER.debug("dud 2x2 grid: {} at {}\n{}", m, here, debugPrinter);
-                setVisited(here.getX(), here.getY(), false);
-                if (last.getX() + last.getY() > here.getX() + here.getY()) {
-                    delete(Neighbour.S.from(here));
-                } else {
-                    delete(Neighbour.E.from(here));
+                return output.toString();
+            }
+        }
+
+        private final DebugPrinter debugPrinter = new DebugPrinter();
+        private final long[] visited;
+        private final boolean simplify;
+        /**
+         * Speculative walks give up instead of leaving the pattern columns
+         * from minX to maxX or changing the grid.
+         */
+        private final boolean speculative;
+        private final int minX;
+        private final int maxX;
+        /**
+         * The points of the contour being walked, reused for every contour
+         */
+        private final Integer2DPolygon trace = new Integer2DPolygon(true);
+        private int startX;
+        private int startY;
+        private int hereX;
+        private int hereY;
+        private int lastX;
+        private int lastY;
+        private boolean hasLast;
+        /**
+         * The contours of a speculative walk, and the march patterns of the
+         * one being walked.
+         */
+        private final List<Contour> contours = new ArrayList<>();
+        private int[] patterns = new int[64];
+        private int patternCount;
+        /**
+         * The march patterns of the speculative walks given up on. The path
+         * from a pattern on is always the same, so a walk that reaches one of
+         * them would be given up as well.
+         */
+        private long[] abandoned;
+        /**
+         * The contours of a speculative walk taken over so far
+         */
+        private int replayed;
+        /**
+         * The speculative walks of the bands to take contours over from, and
+         * the pixels that walks which were not taken over have changed or
+         * looked at, see marchBands.
+         */
+        private Walk[] bandWalks;
+        private int[] bandBounds;
+        private int band;
+        private long[] dirty;
+
+        Walk(final long[] visited, final boolean simplify, final boolean speculative, final int minX, final int maxX) {
+            this.visited = visited;
+            this.simplify = simplify;
+            this.speculative = speculative;
+            this.minX = minX;
+            this.maxX = maxX;
+        }
+
+        void replayFrom(final int[] bounds, final Walk[] walks, final long[] dirtyPixels) {
+            bandBounds = bounds;
+            bandWalks = walks;
+            dirty = dirtyPixels;
+        }
+
+        /**
+         * Walk the contours that start in the columns from fromX to toX,
+         * excluding toX, in the order of the pixels.
+         */
+        void scan(final int fromX, final int toX, final Integer2DPolygonList result) {
+            for (int x = fromX; x < toX; x++) {
+                for (int w = 0; w < stride; w++) {
+                    long candidates = candidates(x, w);
+                    while (candidates != 0) {
+                        final int bit = Long.numberOfTrailingZeros(candidates);
+                        final int y = w * Long.SIZE + bit;
+                        if (x > maxX || !canMarch(x, y) || bandWalks != null && replay(x, y, result)) {
+                            candidates &= candidates - 1;
+                            continue;
+                        }
+                        startX = x;
+                        startY = y;
+                        final boolean complete = marchRound();
+                        final Integer2DPolygon polygon = complete && trace.size() > 2 ? polygon() : null;
+                        if (speculative) {
+                            contours.add(new Contour(pixelIndex(x, y), complete, polygon, Arrays.copyOf(patterns,
+                                    patternCount), complete ? tracePixels() : null));
+                        } else if (polygon != null) {
+                            result.add(polygon);
+                        }
+                        // the walk may have deleted pixels further up
+                        candidates = candidates(x, w) & -2L << bit;
+                    }
                 }
-                here = last;
-                last = null;
-                LOGGER.debug("changed grid (m={}), continue at {}\n{}", m, here, debugPrinter);
-                continue;
-            case 7:
-                addToResult(result, Neighbour.S.fromX(here.getX()), Neighbour.S.fromY(here.getY()));
-                addToResult(result, Neighbour.E.fromX(here.getX()), Neighbour.E.fromY(here.getY()));
-                break;
-            case 8:
-                addToResult(result, Neighbour.SE.fromX(here.getX()), Neighbour.SE.fromY(here.getY()));
-                break;
-            case 9:
-                if (last == null) {
-                    LOGGER.error("dud 2x2 grid: {} at {}\n{}", m, here, debugPrinter);
-                    return result;
+            }
+        }
+
+        private Integer2DPolygon polygon() {
+            final Integer2DPolygon p = simplify ? trace.simplify() : trace;
+            return p == trace ? trace.copy() : p;
+        }
+
+        private int[] tracePixels() {
+            final int[] result = new int[trace.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = pixelIndex(trace.getX(i), trace.getY(i));
+            }
+            return result;
+        }
+
+        /**
+         * Take over the contour a band has walked from (x, y), if there is one
+         * and it is still valid. Contours of the band that start before it
+         * were not taken over, so the pixels they looked at are dirty now.
+         */
+        private boolean replay(final int x, final int y, final Integer2DPolygonList result) {
+            while (x >= bandBounds[band + 1]) {
+                band++;
+            }
+            final Walk walk = bandWalks[band];
+            final int start = pixelIndex(x, y);
+            while (walk.replayed < walk.contours.size()) {
+                final Contour contour = walk.contours.get(walk.replayed);
+                if (contour.start > start) {
+                    return false;
+                }
+                walk.replayed++;
+                if (contour.start == start && contour.complete && isClean(contour)) {
+                    for (final int point : contour.points) {
+                        setBit(visited, point);
+                    }
+                    if (contour.polygon != null) {
+                        result.add(contour.polygon);
+                    }
+                    return true;
                 }
-                LOGGER.debug("dud 2x2 grid: {} at {}\n{}", m, here, debugPrinter);
-                setVisited(here.getX(), here.getY(), false);
-                if (last.getX() + last.getY() > here.getX() + here.getY()) {
-                    delete(here);
-                } else {
-                    delete(Neighbour.SE.from(here));
+                markDirty(contour);
+            }
+            return false;
+        }
+
+        /**
+         * The pixels of a march pattern at pixel index i are i, its south
+         * neighbour i - 1 and their east neighbours.
+         */
+        private boolean isClean(final Contour contour) {
+            final int column = stride * Long.SIZE;
+            for (final int i : contour.patterns) {
+                if (isSet(dirty, i) || isSet(dirty, i - 1) || isSet(dirty, i + column) || isSet(dirty, i + column - 1)) {
+                    return false;
                 }
-                here = last;
-                last = null;
-                LOGGER.debug("changed grid (m={}) and backtracked to {}\n{}", m, here, debugPrinter);
-                continue;
-            case 10:
-                addToResult(result, Neighbour.E.fromX(here.getX()), Neighbour.E.fromY(here.getY()));
-                addToResult(result, Neighbour.SE.fromX(here.getX()), Neighbour.SE.fromY(here.getY()));
-                break;
-            case 11:
-                addToResult(result, here);
-                addToResult(result, Neighbour.SE.fromX(here.getX()), Neighbour.SE.fromY(here.getY()));
-                break;
-            case 12:
-                addToResult(result, Neighbour.SE.fromX(here.getX()), Neighbour.SE.fromY(here.getY()));
-                addToResult(result, Neighbour.S.fromX(here.getX()), Neighbour.S.fromY(here.getY()));
-                break;
-            case 13:
-                addToResult(result, Neighbour.SE.fromX(here.getX()), Neighbour.SE.fromY(here.getY()));
-                addToResult(result, here);
-                break;
-            case 14:
-                addToResult(result, Neighbour.E.fromX(here.getX()), Neighbour.E.fromY(here.getY()));
-                addToResult(result, Neighbour.S.fromX(here.getX()), Neighbour.S.fromY(here.getY()));
-                break;
-
-            default:
-                LOGGER.error("dud 2x2 grid: {} at {}\n{}", m, here, debugPrinter);
-                return result;
             }
-            last = here;
-            here = MARCHDIRECTIONS[m].from(here);
-        } while (!here.coincidesWith(start));
+            return true;
+        }
 
-        return result;
-    }
+        private void markDirty(final Contour contour) {
+            final int column = stride * Long.SIZE;
+            for (final int i : contour.patterns) {
+                setBit(dirty, i);
+                setBit(dirty, i - 1);
+                setBit(dirty, i + column);
+                setBit(dirty, i + column - 1);
+            }
+        }
+
+        private boolean canMarch(final int x, final int y) {
+            return !isVisited(x, y) && !isVisited(Neighbour.S.fromX(x), Neighbour.S.fromY(y))
+                    && !isVisited(Neighbour.SE.fromX(x), Neighbour.SE.fromY(y))
+                    && !isVisited(Neighbour.E.fromX(x), Neighbour.E.fromY(y));
+        }
+
+        /**
+         * Run marching squares round the polygon starting with the 2x2 march
+         * pattern at start, collecting its points in trace. False if a
+         * speculative walk gave up.
+         */
+        private boolean marchRound() {
+            final Integer2DPolygon result = trace;
+            result.clear();
+            hereX = startX;
+            hereY = startY;
+            hasLast = false;
+            patternCount = 0;
+
+            do {
+                if (speculative && (hereX < minX || hereX > maxX)) {
+                    return giveUp();
+                }
+                if (speculative) {
+                    final int i = pixelIndex(hereX, hereY);
+                    if (isSet(abandoned, i)) {
+                        return giveUp();
+                    }
+                    addPattern(i);
+                }
+                final int m = marchPattern(hereX, hereY);
+                if (LOGGER.isTraceEnabled()) {
+                    LOGGER.trace("walking ({}, {})\n{}", hereX, hereY, debugPrinter);
+                }
+                switch (m) {
+                case 1:
+                    addToResult(result, hereX, hereY);
+                    break;
+                case 2:
+                    addToResult(result, Neighbour.E.fromX(hereX), Neighbour.E.fromY(hereY));
+                    break;
+                case 3:
+                    addToResult(result, hereX, hereY);
+                    addToResult(result, Neighbour.E.fromX(hereX), Neighbour.E.fromY(hereY));
+                    break;
+                case 4:
+                    addToResult(result, Neighbour.S.fromX(hereX), Neighbour.S.fromY(hereY));
+                    break;
+                case 5:
+                    addToResult(result, hereX, hereY);
+                    addToResult(result, Neighbour.S.fromX(hereX), Neighbour.S.fromY(hereY));
+                    break;
+                case 6:
+                    if (speculative) {
+                        return giveUp();
+                    }
+                    if (!hasLast) {
+                        LOGGER.error("dud 2x2 grid: {} at ({}, {})\n{}", m, hereX, hereY, debugPrinter);
+                        return true;
+                    }
+                    LOGGER.debug("dud 2x2 grid: {} at ({}, {})\n{}", m, hereX, hereY, debugPrinter);
+                    setVisited(hereX, hereY, false);
+                    if (lastX + lastY > hereX + hereY) {
+                        delete(Neighbour.S.fromX(hereX), Neighbour.S.fromY(hereY));
+                    } else {
+                        delete(Neighbour.E.fromX(hereX), Neighbour.E.fromY(hereY));
+                    }
+                    hereX = lastX;
+                    hereY = lastY;
+                    hasLast = false;
+                    LOGGER.debug("changed grid (m={}), continue at ({}, {})\n{}", m, hereX, hereY, debugPrinter);
+                    continue;
+                case 7:
+                    addToResult(result, Neighbour.S.fromX(hereX), Neighbour.S.fromY(hereY));
+                    addToResult(result, Neighbour.E.fromX(hereX), Neighbour.E.fromY(hereY));
+                    break;
+                case 8:
+                    addToResult(result, Neighbour.SE.fromX(hereX), Neighbour.SE.fromY(hereY));
+                    break;
+                case 9:
+                    if (speculative) {
+                        return giveUp();
+                    }
+                    if (!hasLast) {
+                        LOGGER.error("dud 2x2 grid: {} at ({}, {})\n{}", m, hereX, hereY, debugPrinter);
+                        return true;
+                    }
+                    LOGGER.debug("dud 2x2 grid: {} at ({}, {})\n{}", m, hereX, hereY, debugPrinter);
+                    setVisited(hereX, hereY, false);
+                    if (lastX + lastY > hereX + hereY) {
+                        delete(hereX, hereY);
+                    } else {
+                        delete(Neighbour.SE.fromX(hereX), Neighbour.SE.fromY(hereY));
+                    }
+                    hereX = lastX;
+                    hereY = lastY;
+                    hasLast = false;
+                    LOGGER.debug("changed grid (m={}) and backtracked to ({}, {})\n{}", m, hereX, hereY, debugPrinter);
+                    continue;
+                case 10:
+                    addToResult(result, Neighbour.E.fromX(hereX), Neighbour.E.fromY(hereY));
+                    addToResult(result, Neighbour.SE.fromX(hereX), Neighbour.SE.fromY(hereY));
+                    break;
+                case 11:
+                    addToResult(result, hereX, hereY);
+                    addToResult(result, Neighbour.SE.fromX(hereX), Neighbour.SE.fromY(hereY));
+                    break;
+                case 12:
+                    addToResult(result, Neighbour.SE.fromX(hereX), Neighbour.SE.fromY(hereY));
+                    addToResult(result, Neighbour.S.fromX(hereX), Neighbour.S.fromY(hereY));
+                    break;
+                case 13:
+                    addToResult(result, Neighbour.SE.fromX(hereX), Neighbour.SE.fromY(hereY));
+                    addToResult(result, hereX, hereY);
+                    break;
+                case 14:
+                    addToResult(result, Neighbour.E.fromX(hereX), Neighbour.E.fromY(hereY));
+                    addToResult(result, Neighbour.S.fromX(hereX), Neighbour.S.fromY(hereY));
+                    break;
+
+                default:
+                    if (speculative) {
+                        return giveUp();
+                    }
+                    LOGGER.error("dud 2x2 grid: {} at ({}, {})\n{}", m, hereX, hereY, debugPrinter);
+                    return true;
+                }
+                lastX = hereX;
+                lastY = hereY;
+                hasLast = true;
+                hereX = MARCHDIRECTIONS[m].fromX(hereX);
+                hereY = MARCHDIRECTIONS[m].fromY(hereY);
+            } while (hereX != startX || hereY != startY);
+            return true;
+        }
+
+        /**
+         * Stop a speculative walk. Its points stay visited, so the band does
+         * not walk the same contour again from its other pixels.
+         */
+        private boolean giveUp() {
+            for (int i = 0; i < patternCount; i++) {
+                setBit(abandoned, patterns[i]);
+            }
+            return false;
+        }
+
+        private void addPattern(final int i) {
+            if (patternCount == patterns.length) {
+                patterns = Arrays.copyOf(patterns, 2 * patternCount);
+            }
+            patterns[patternCount++] = i;
+        }
+
+        private void delete(final int x, final int y) {
+            grid.set(new Integer2DPoint(x, y), false);
+            setVisited(x, y, false);
+        }
 
-    private void delete(final Integer2DPoint pix) {
-        grid.set(pix, false);
-        setVisited(pix.getX(), pix.getY(), false);
+        private void addToResult(final Integer2DPolygon result, final int x, final int y) {
+            if (!isVisited(x, y)) {
+                result.add(x, y);
+                setVisited(x, y, true);
+            }
+        }
+
+        private void setVisited(final int x, final int y, final boolean v) {
+            if (!isInside(x, y)) {
+                throw new RuntimeException("attempt to set pixel beyond boundaries (" + sizeX + ", " + sizeY + "): >>" + x
+                        + ", " + y + "<<");
+            }
+            final int i = pixelIndex(x, y);
+            if (v) {
+                visited[i >>> 6] |= 1L << i;
+            } else {
+                visited[i >>> 6] &= ~(1L << i);
+            }
+            if (dirty != null) {
+                setBit(dirty, i);
+            }
+        }
+
+        private boolean isVisited(final int x, final int y) {
+            if (!isInside(x, y)) {
+                throw new RuntimeException("attempt to get pixel beyond boundaries (" + sizeX + ", " + sizeY + "): >>" + x
+                        + ", " + y + "<<");
+            }
+            final int i = pixelIndex(x, y);
+            return (visited[i >>> 6] & 1L << i) != 0;
+        }
     }
 
-    private void addToResult(final Integer2DPolygon result, final Integer2DPoint pix) {
-        if (!isVisited(pix.getX(), pix.getY())) {
-            result.add(pix);
-            setVisited(pix.getX(), pix.getY(), true);
+    /**
+     * The y positions in word w of column x whose 2x2 march pattern is
+     * neither all air nor all solid, as a bit mask. The pattern at y looks at
+     * y and y - 1 in columns x and x + 1.
+     */
+    private long candidates(final int x, final int w) {
+        final long here = grid.getWord(x, w);
+        final long east = grid.getWord(x + 1, w);
+        long south = here << 1;
+        long southEast = east << 1;
+        if (w > 0) {
+            south |= grid.getWord(x, w - 1) >>> (Long.SIZE - 1);
+            southEast |= grid.getWord(x + 1, w - 1) >>> (Long.SIZE - 1);
         }
+        final long mixed = (here ^ east) | (here ^ south) | (here ^ southEast);
+        return mixed & lastRowsExcluded(w);
     }
 
-    private void addToResult(final Integer2DPolygon result, final int x, final int y) {
-        if (!isVisited(x, y)) {
-            result.add(new Integer2DPoint(x, y));
-            setVisited(x, y, true);
+    /**
+     * The bits of word w for the rows below the top row of the grid.
+     */
+    private long lastRowsExcluded(final int w) {
+        final int rows = sizeY - 1 - w * Long.SIZE;
+        if (rows >= Long.SIZE) {
+            return -1L;
+        }
+        if (rows <= 0) {
+            return 0;
         }
+        return (1L << rows) - 1;
     }
 
     /**
@@ -324,27 +656,21 @@ public class BooleanGridWalker {
         return result;
     }
 
-    private void setVisited(final int x, final int y, final boolean v) {
-        if (!isInside(x, y)) {
-            throw new RuntimeException("attempt to set pixel beyond boundaries (" + sizeX + ", " + sizeY + "): >>" + x + ", "
-                    + y + "<<");
+    private static void setBit(final long[] bits, final int i) {
+        if (i >= 0) {
+            bits[i >>> 6] |= 1L << i;
         }
-        visited.set(pixelIndex(x, y), v);
     }
 
-    private boolean isVisited(final int x, final int y) {
-        if (!isInside(x, y)) {
-            throw new RuntimeException("attempt to get pixel beyond boundaries (" + sizeX + ", " + sizeY + "): >>" + x + ", "
-                    + y + "<<");
-        }
-        return visited.get(pixelIndex(x, y));
+    private static boolean isSet(final long[] bits, final int i) {
+        return i >= 0 && (bits[i >>> 6] & 1L << i) != 0;
     }
 
     /**
-     * The index of a pixel in the 1D bit array.
+     * The index of a pixel in the visited bits.
      */
     private int pixelIndex(final int x, final int y) {
-        return x * sizeY + y;
+        return x * stride * Long.SIZE + y;
     }
 
     private boolean isInside(final int x, final int y) {
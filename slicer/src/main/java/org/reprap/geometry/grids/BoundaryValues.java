@@ -0,0 +1,107 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import java.util.Arrays;
+
+/**
+ * Signed values at the pixels next to the boundary of a grid, negative in
+ * solid and positive in air, measured in pixels. They locate the boundary
+ * between two pixel centres, see SubPixelContours.
+ * 
+ * A hash map with open addressing from pixel index to value. Values are put
+ * concurrently by the painter threads, so put is synchronized.
+ */
+final class BoundaryValues {
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private float[] values;
+    private int size = 0;
+
+    BoundaryValues() {
+        keys = new int[64];
+        Arrays.fill(keys, EMPTY);
+        values = new float[64];
+    }
+
+    private BoundaryValues(final BoundaryValues other) {
+        keys = other.keys.clone();
+        values = other.values.clone();
+        size = other.size;
+    }
+
+    BoundaryValues copy() {
+        return new BoundaryValues(this);
+    }
+
+    synchronized void put(final int pixel, final float value) {
+        if (2 * (size + 1) > keys.length) {
+            grow();
+        }
+        final int slot = slot(keys, pixel);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = pixel;
+            size++;
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * The value at pixel, or NaN if there is none.
+     */
+    float get(final int pixel) {
+        final int slot = slot(keys, pixel);
+        if (keys[slot] == EMPTY) {
+            return Float.NaN;
+        }
+        return values[slot];
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        final int[] oldKeys = keys;
+        final float[] oldValues = values;
+        keys = new int[2 * oldKeys.length];
+        Arrays.fill(keys, EMPTY);
+        values = new float[keys.length];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                final int slot = slot(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * The slot holding pixel, or the empty slot where it belongs.
+     */
+    private static int slot(final int[] keys, final int pixel) {
+        final int mask = keys.length - 1;
+        int slot = (pixel * 0x9E3779B9) >>> 7 & mask;
+        while (keys[slot] != EMPTY && keys[slot] != pixel) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
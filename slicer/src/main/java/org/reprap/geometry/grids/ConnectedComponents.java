@@ -0,0 +1,325 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.reprap.geometry.polygons.Point2D;
+
+/**
+ * The 4-connected components of the solid pixels of a grid, all found in one
+ * pass. The pass collects the vertical runs of solid pixels column by column
+ * and joins every run with the runs it touches in the column to its left in
+ * a union-find forest. A second pass over the runs gives each tree a label
+ * and adds up the pixel count and centroid of each component.
+ * 
+ * Components are numbered in the order a scan of the columns from the left
+ * meets them.
+ */
+public class ConnectedComponents {
+    private final BooleanGrid grid;
+    private final Integer2DRectangle rectangle;
+    /**
+     * The runs of column x are columnStart[x] to columnStart[x + 1] - 1, in
+     * ascending y.
+     */
+    private final int[] columnStart;
+    private int[] runStart = new int[64];
+    private int[] runEnd = new int[64];
+    private int runCount = 0;
+    private final int[] runLabel;
+    private final int[] componentStart;
+    /**
+     * The runs of component c are componentRuns[componentStart[c]] to
+     * componentRuns[componentStart[c + 1] - 1].
+     */
+    private final int[] componentRuns;
+    private final long[] pixelCount;
+    private final long[] sumX;
+    /**
+     * Twice the sums of the y coordinates, which makes the sum over a run an
+     * integer.
+     */
+    private final long[] doubleSumY;
+
+    public ConnectedComponents(final BooleanGrid grid) {
+        this.grid = grid;
+        rectangle = grid.getRectangle();
+        final int sizeX = Math.max(rectangle.getSizeX(), 0);
+        columnStart = new int[sizeX + 1];
+        for (int x = 0; x < sizeX; x++) {
+            columnStart[x] = runCount;
+            collectRuns(x);
+        }
+        columnStart[sizeX] = runCount;
+
+        final int[] parent = new int[runCount];
+        for (int r = 0; r < runCount; r++) {
+            parent[r] = r;
+        }
+        for (int x = 1; x < sizeX; x++) {
+            joinColumns(parent, x);
+        }
+
+        runLabel = new int[runCount];
+        final int[] rootLabel = new int[runCount];
+        Arrays.fill(rootLabel, -1);
+        int components = 0;
+        for (int r = 0; r < runCount; r++) {
+            final int root = find(parent, r);
+            if (rootLabel[root] < 0) {
+                rootLabel[root] = components++;
+            }
+            runLabel[r] = rootLabel[root];
+        }
+
+        componentStart = new int[components + 1];
+        pixelCount = new long[components];
+        sumX = new long[components];
+        doubleSumY = new long[components];
+        for (int x = 0; x < sizeX; x++) {
+            for (int r = columnStart[x]; r < columnStart[x + 1]; r++) {
+                final int label = runLabel[r];
+                final long length = runEnd[r] - runStart[r] + 1;
+                componentStart[label + 1]++;
+                pixelCount[label] += length;
+                sumX[label] += x * length;
+                doubleSumY[label] += (runStart[r] + runEnd[r]) * length;
+            }
+        }
+        for (int c = 0; c < components; c++) {
+            componentStart[c + 1] += componentStart[c];
+        }
+        componentRuns = new int[runCount];
+        final int[] next = Arrays.copyOf(componentStart, components);
+        for (int r = 0; r < runCount; r++) {
+            componentRuns[next[runLabel[r]]++] = r;
+        }
+    }
+
+    /**
+     * Collect the runs of column x from its words. A run that reaches the end
+     * of a word is continued in the next one.
+     */
+    private void collectRuns(final int x) {
+        int open = -1;
+        for (int w = 0; w < grid.getStride(); w++) {
+            final long word = grid.getWord(x, w);
+            final int base = w * 64;
+            int bit = 0;
+            while (bit < 64) {
+                if (open < 0) {
+                    final long rest = word & (-1L << bit);
+                    if (rest == 0) {
+                        break;
+                    }
+                    bit = Long.numberOfTrailingZeros(rest);
+                    open = base + bit;
+                }
+                final long gaps = ~word & (-1L << bit);
+                if (gaps == 0) {
+                    break;
+                }
+                bit = Long.numberOfTrailingZeros(gaps);
+                addRun(open, base + bit - 1);
+                open = -1;
+            }
+        }
+        if (open >= 0) {
+            addRun(open, rectangle.getSizeY() - 1);
+        }
+    }
+
+    private void addRun(final int start, final int end) {
+        if (runCount == runStart.length) {
+            runStart = Arrays.copyOf(runStart, 2 * runCount);
+            runEnd = Arrays.copyOf(runEnd, 2 * runCount);
+        }
+        runStart[runCount] = start;
+        runEnd[runCount] = end;
+        runCount++;
+    }
+
+    /**
+     * Join the runs of column x with the runs of column x - 1 they overlap.
+     */
+    private void joinColumns(final int[] parent, final int x) {
+        int left = columnStart[x - 1];
+        int right = columnStart[x];
+        while (left < columnStart[x] && right < columnStart[x + 1]) {
+            if (runEnd[left] < runStart[right]) {
+                left++;
+            } else if (runEnd[right] < runStart[left]) {
+                right++;
+            } else {
+                union(parent, left, right);
+                if (runEnd[left] < runEnd[right]) {
+                    left++;
+                } else {
+                    right++;
+                }
+            }
+        }
+    }
+
+    private static int find(final int[] parent, final int run) {
+        int r = run;
+        while (parent[r] != r) {
+            parent[r] = parent[parent[r]];
+            r = parent[r];
+        }
+        return r;
+    }
+
+    /**
+     * Join two trees. The lower run becomes the root, so the root of every
+     * tree is the first run of its component.
+     */
+    private static void union(final int[] parent, final int a, final int b) {
+        final int rootA = find(parent, a);
+        final int rootB = find(parent, b);
+        if (rootA < rootB) {
+            parent[rootB] = rootA;
+        } else if (rootB < rootA) {
+            parent[rootA] = rootB;
+        }
+    }
+
+    /**
+     * The number of components
+     */
+    public int size() {
+        return pixelCount.length;
+    }
+
+    public long getPixelCount(final int component) {
+        return pixelCount[component];
+    }
+
+    /**
+     * The centroid of a component in the real world
+     */
+    public Point2D getCentroid(final int component) {
+        return rectangle.realPoint((double) sumX[component] / pixelCount[component], doubleSumY[component] / 2.0
+                / pixelCount[component], grid.getPixelSize());
+    }
+
+    /**
+     * The centroid of several components together in the real world, or null
+     * if there are none.
+     */
+    public Point2D getCentroid(final BitSet components) {
+        long pixels = 0;
+        long x = 0;
+        long doubleY = 0;
+        for (int c = components.nextSetBit(0); c >= 0; c = components.nextSetBit(c + 1)) {
+            pixels += pixelCount[c];
+            x += sumX[c];
+            doubleY += doubleSumY[c];
+        }
+        if (pixels == 0) {
+            return null;
+        }
+        return rectangle.realPoint((double) x / pixels, doubleY / 2.0 / pixels, grid.getPixelSize());
+    }
+
+    /**
+     * The component at a real-world point, or -1 if the point is not solid.
+     */
+    public int componentAt(final Point2D p) {
+        final Integer2DPoint point = rectangle.convertToInteger2DPoint(p, grid.getPixelSize());
+        if (!grid.inside(point)) {
+            return -1;
+        }
+        final int run = firstRunEndingAtOrAfter(point.getX(), point.getY());
+        if (run < columnStart[point.getX() + 1] && runStart[run] <= point.getY()) {
+            return runLabel[run];
+        }
+        return -1;
+    }
+
+    /**
+     * The first run of column x that ends at y or above it.
+     */
+    private int firstRunEndingAtOrAfter(final int x, final int y) {
+        int low = columnStart[x];
+        int high = columnStart[x + 1];
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (runEnd[middle] < y) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * A grid with just the pixels of a component, with the rectangle of the
+     * labelled grid.
+     */
+    public BooleanGrid getComponent(final int component) {
+        final BooleanGrid result = grid.emptyCopy();
+        for (int i = componentStart[component]; i < componentStart[component + 1]; i++) {
+            final int r = componentRuns[i];
+            result.setColumn(columnOf(r), runStart[r], runEnd[r], true);
+        }
+        return result;
+    }
+
+    private int columnOf(final int run) {
+        int low = 0;
+        int high = columnStart.length - 1;
+        while (high - low > 1) {
+            final int middle = (low + high) >>> 1;
+            if (columnStart[middle] <= run) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * The components of other that share a pixel with a component of this
+     * labelling. The grids may have different rectangles.
+     */
+    public BitSet touching(final int component, final ConnectedComponents other) {
+        final int dx = rectangle.getSwCorner().getX() - other.rectangle.getSwCorner().getX();
+        final int dy = rectangle.getSwCorner().getY() - other.rectangle.getSwCorner().getY();
+        final BitSet result = new BitSet(other.size());
+        for (int i = componentStart[component]; i < componentStart[component + 1]; i++) {
+            final int r = componentRuns[i];
+            final int otherX = columnOf(r) + dx;
+            if (otherX < 0 || otherX >= other.columnStart.length - 1) {
+                continue;
+            }
+            final int start = runStart[r] + dy;
+            final int end = runEnd[r] + dy;
+            for (int o = other.firstRunEndingAtOrAfter(otherX, start); o < other.columnStart[otherX + 1]
+                    && other.runStart[o] <= end; o++) {
+                result.set(other.runLabel[o]);
+            }
+        }
+        return result;
+    }
+}
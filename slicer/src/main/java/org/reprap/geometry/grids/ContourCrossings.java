@@ -0,0 +1,292 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.reprap.geometry.polygons.HalfPlane;
+import org.reprap.geometry.polygons.Interval;
+import org.reprap.geometry.polygons.Point2D;
+import org.reprap.geometry.polygons.Rectangle;
+
+/**
+ * Finds where parallel hatch lines enter and leave the solid parts of a grid
+ * without stepping along every line pixel by pixel. A line can only change
+ * from air to solid or back inside the 2 x 2 pixel cells the marching squares
+ * contours run through, the cells with both air and solid corners. Those cells
+ * are found a word column at a time and put on the lists of the lines passing
+ * near them, and only there the pixels the traversal in Hatcher would visit
+ * are looked at. So the cost grows with the length of the contours, not with
+ * the area of the grid, and the result is the same as that of the traversal.
+ */
+final class ContourCrossings {
+    private final BooleanGrid grid;
+    private final List<HalfPlane> lines;
+    private final Rectangle realRectangle;
+    private final int lineCount;
+    /**
+     * The line index as an affine function of the pixel coordinates: line i
+     * runs where u0 + ux * x + uy * y == i.
+     */
+    private final double u0;
+    private final double ux;
+    private final double uy;
+    /**
+     * How far in u from its line the traversal of a line may visit pixels
+     */
+    private final double margin;
+
+    private ContourCrossings(final BooleanGrid grid, final List<HalfPlane> lines) {
+        this.grid = grid;
+        this.lines = lines;
+        lineCount = lines.size();
+        final HalfPlane first = lines.get(0);
+        final Integer2DRectangle rectangle = grid.getRectangle();
+        final double pixelSize = grid.getPixelSize();
+        realRectangle = rectangle.realRectangle(pixelSize);
+        final Point2D origin = rectangle.realPoint(0, 0, pixelSize);
+        final double delta = lineCount > 1 ? lines.get(1).value(origin) - first.value(origin) : 1;
+        u0 = -first.value(origin) / delta;
+        ux = -first.normal().x() * pixelSize / delta;
+        uy = -first.normal().y() * pixelSize / delta;
+        // the ends of a traversal are rounded to pixels, its pixels are
+        // rounded from the line between them
+        margin = 2 * Math.sqrt(ux * ux + uy * uy);
+    }
+
+    /**
+     * The entry and exit pixels of the solid spans of each line, in pairs
+     * along the line, as Hatcher.hatch(HalfPlane) finds them.
+     */
+    static Integer2DPolygon[] cross(final BooleanGrid grid, final List<HalfPlane> lines) {
+        final Integer2DPolygon[] result = new Integer2DPolygon[lines.size()];
+        if (lines.isEmpty()) {
+            return result;
+        }
+        new ContourCrossings(grid, lines).cross(result);
+        return result;
+    }
+
+    private void cross(final Integer2DPolygon[] result) {
+        final int[] mixed = mixedCells();
+        final int cellCount = mixed[0];
+        final int[] start = new int[lineCount + 1];
+        for (int c = 1; c <= cellCount; c++) {
+            final int low = firstLine(mixed[2 * c - 1], mixed[2 * c]);
+            final int high = lastLine(mixed[2 * c - 1], mixed[2 * c]);
+            for (int i = low; i <= high; i++) {
+                start[i + 1]++;
+            }
+        }
+        for (int i = 0; i < lineCount; i++) {
+            start[i + 1] += start[i];
+        }
+        // x and y of every cell, the cells of line i from start[i]
+        final int[] cells = new int[2 * start[lineCount]];
+        final int[] next = new int[lineCount];
+        System.arraycopy(start, 0, next, 0, lineCount);
+        int most = 0;
+        for (int c = 1; c <= cellCount; c++) {
+            final int x = mixed[2 * c - 1];
+            final int y = mixed[2 * c];
+            final int high = lastLine(x, y);
+            for (int i = firstLine(x, y); i <= high; i++) {
+                final int k = 2 * next[i]++;
+                cells[k] = x;
+                cells[k + 1] = y;
+                most = Math.max(most, next[i] - start[i]);
+            }
+        }
+        final int[] steps = new int[most];
+        for (int i = 0; i < lineCount; i++) {
+            result[i] = spans(lines.get(i), cells, start[i], start[i + 1], steps);
+        }
+    }
+
+    /**
+     * The number of cells with both air and solid corners, followed by x and y
+     * of each. Cell x, y has the corners x, y - 1 to x + 1, y.
+     */
+    private int[] mixedCells() {
+        final int sizeX = grid.getRectangle().getSizeX();
+        final int stride = grid.getStride();
+        int[] result = new int[1 + 2 * (sizeX + stride * Long.SIZE)];
+        int count = 0;
+        for (int x = 0; x < sizeX - 1; x++) {
+            long carry = 0;
+            long eastCarry = 0;
+            for (int w = 0; w < stride; w++) {
+                final long here = grid.getWord(x, w);
+                final long east = grid.getWord(x + 1, w);
+                long mixed = (here ^ east) | (here ^ (here << 1 | carry)) | (here ^ (east << 1 | eastCarry));
+                carry = here >>> Long.SIZE - 1;
+                eastCarry = east >>> Long.SIZE - 1;
+                if (mixed == 0) {
+                    continue;
+                }
+                if (2 * (count + Long.SIZE) >= result.length) {
+                    result = Arrays.copyOf(result, 2 * result.length);
+                }
+                while (mixed != 0) {
+                    count++;
+                    result[2 * count - 1] = x;
+                    result[2 * count] = w * Long.SIZE + Long.numberOfTrailingZeros(mixed);
+                    mixed &= mixed - 1;
+                }
+            }
+        }
+        result[0] = count;
+        return result;
+    }
+
+    /**
+     * The first of the lines passing near cell x, y
+     */
+    private int firstLine(final int x, final int y) {
+        return Math.max(0, (int) Math.ceil(u0 + ux * x + uy * (y - 1) + Math.min(0, ux) + Math.min(0, uy) - margin));
+    }
+
+    /**
+     * The last of the lines passing near cell x, y
+     */
+    private int lastLine(final int x, final int y) {
+        return Math.min(lineCount - 1,
+                (int) Math.floor(u0 + ux * x + uy * (y - 1) + Math.max(0, ux) + Math.max(0, uy) + margin));
+    }
+
+    /**
+     * Look for changes between air and solid along the traversal of the line
+     * only at the steps through its cells, and add them like the traversal
+     * does: the first solid pixel and the last solid pixel of each span.
+     */
+    private Integer2DPolygon spans(final HalfPlane line, final int[] cells, final int from, final int to,
+            final int[] steps) {
+        final Integer2DPolygon result = new Integer2DPolygon(false);
+        final Traversal traversal = traversal(line);
+        if (traversal == null) {
+            return result;
+        }
+        final int count = to - from;
+        for (int c = 0; c < count; c++) {
+            steps[c] = traversal.step(cells[2 * (from + c)], cells[2 * (from + c) + 1]);
+        }
+        Arrays.sort(steps, 0, count);
+        boolean solid = isSolid(traversal, 0);
+        if (solid) {
+            result.add(traversal.x(0), traversal.y(0));
+        }
+        int checked = 0;
+        for (int c = 0; c < count; c++) {
+            final int end = Math.min(traversal.last, steps[c] + 2);
+            for (int k = Math.max(checked + 1, steps[c]); k <= end; k++) {
+                if (isSolid(traversal, k) != solid) {
+                    solid = !solid;
+                    final int pixel = solid ? k : k - 1;
+                    result.add(traversal.x(pixel), traversal.y(pixel));
+                }
+                checked = k;
+            }
+        }
+        if (isSolid(traversal, traversal.last)) {
+            result.add(traversal.x(traversal.last), traversal.y(traversal.last));
+        }
+        return result;
+    }
+
+    /**
+     * The traversal of the line across the grid, as in Hatcher.hatch(HalfPlane).
+     */
+    private Traversal traversal(final HalfPlane line) {
+        final Interval se = realRectangle.wipe(line.pLine(), Interval.bigInterval());
+        if (se.empty()) {
+            return null;
+        }
+        final Integer2DRectangle rectangle = grid.getRectangle();
+        final double pixelSize = grid.getPixelSize();
+        return new Traversal(rectangle.convertToInteger2DPoint(line.pLine().point(se.low()), pixelSize),
+                rectangle.convertToInteger2DPoint(line.pLine().point(se.high()), pixelSize));
+    }
+
+    private boolean isSolid(final Traversal traversal, final int k) {
+        return grid.get(traversal.x(k), traversal.y(k));
+    }
+
+    /**
+     * The pixels a DigitalDifferentialAnalyzer visits between two points, in
+     * closed form: the pixel of any step can be had without the ones before.
+     */
+    private static final class Traversal {
+        private final int startX;
+        private final int startY;
+        private final int signX;
+        private final int signY;
+        private final int deltaX;
+        private final int deltaY;
+        /**
+         * The last step, at the end point
+         */
+        private final int last;
+
+        Traversal(final Integer2DPoint start, final Integer2DPoint end) {
+            startX = start.getX();
+            startY = start.getY();
+            signX = end.getX() >= startX ? 1 : -1;
+            signY = end.getY() >= startY ? 1 : -1;
+            deltaX = Math.abs(end.getX() - startX);
+            deltaY = Math.abs(end.getY() - startY);
+            last = Math.max(deltaX, deltaY);
+        }
+
+        int x(final int k) {
+            return startX + signX * advances(k, deltaX);
+        }
+
+        int y(final int k) {
+            return startY + signY * advances(k, deltaY);
+        }
+
+        /**
+         * How often a coordinate with this delta has moved on by step k: its
+         * count starts at -last / 2, goes up by delta every step and down by
+         * last whenever it gets above 0.
+         */
+        private int advances(final int k, final long delta) {
+            final long excess = k * delta - last / 2;
+            if (excess <= 0) {
+                return 0;
+            }
+            return (int) ((excess + last - 1) / last);
+        }
+
+        /**
+         * The earlier of the steps through the two columns or rows of cell x,
+         * y along the major axis, 0 before the start.
+         */
+        int step(final int x, final int y) {
+            final int along;
+            if (deltaX >= deltaY) {
+                along = signX > 0 ? x - startX : startX - x - 1;
+            } else {
+                along = signY > 0 ? y - 1 - startY : startY - y;
+            }
+            return Math.max(0, along);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import java.util.List;
+
+/**
+ * Distances from points to a set of closed polygons given in pixel
+ * coordinates. The edges are sorted into square cells, so a query only looks
+ * at the edges near the point.
+ */
+final class ContourDistance {
+    private static final int CELL_SIZE = 8;
+
+    private final double[] edges;
+    private final int minCellX;
+    private final int minCellY;
+    private final int cellsX;
+    private final int cellsY;
+    /**
+     * The edges of cell c are cellEdges[cellStart[c]] to
+     * cellEdges[cellStart[c + 1] - 1].
+     */
+    private final int[] cellStart;
+    private final int[] cellEdges;
+
+    /**
+     * @param polygons
+     *            closed polygons, each as x0, y0, x1, y1, ...
+     */
+    ContourDistance(final List<double[]> polygons) {
+        int count = 0;
+        for (final double[] polygon : polygons) {
+            count += polygon.length / 2;
+        }
+        edges = new double[4 * count];
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        int e = 0;
+        for (final double[] polygon : polygons) {
+            final int points = polygon.length / 2;
+            for (int i = 0; i < points; i++) {
+                final int j = (i + 1) % points;
+                edges[e++] = polygon[2 * i];
+                edges[e++] = polygon[2 * i + 1];
+                edges[e++] = polygon[2 * j];
+                edges[e++] = polygon[2 * j + 1];
+                minX = Math.min(minX, polygon[2 * i]);
+                minY = Math.min(minY, polygon[2 * i + 1]);
+                maxX = Math.max(maxX, polygon[2 * i]);
+                maxY = Math.max(maxY, polygon[2 * i + 1]);
+            }
+        }
+        if (count == 0) {
+            minX = minY = maxX = maxY = 0;
+        }
+        minCellX = cell(minX);
+        minCellY = cell(minY);
+        cellsX = cell(maxX) - minCellX + 1;
+        cellsY = cell(maxY) - minCellY + 1;
+        cellStart = new int[cellsX * cellsY + 1];
+        for (int i = 0; i < count; i++) {
+            fileEdge(i, null);
+        }
+        for (int c = 0; c < cellsX * cellsY; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        cellEdges = new int[cellStart[cellsX * cellsY]];
+        final int[] next = cellStart.clone();
+        for (int i = 0; i < count; i++) {
+            fileEdge(i, next);
+        }
+    }
+
+    private static int cell(final double coordinate) {
+        return (int) Math.floor(coordinate / CELL_SIZE);
+    }
+
+    /**
+     * Visits the cells touched by the bounding box of edge i. Without next
+     * the edge is only counted, with next it is filed at next[cell].
+     */
+    private void fileEdge(final int i, final int[] next) {
+        final int x0 = cell(Math.min(edges[4 * i], edges[4 * i + 2])) - minCellX;
+        final int x1 = cell(Math.max(edges[4 * i], edges[4 * i + 2])) - minCellX;
+        final int y0 = cell(Math.min(edges[4 * i + 1], edges[4 * i + 3])) - minCellY;
+        final int y1 = cell(Math.max(edges[4 * i + 1], edges[4 * i + 3])) - minCellY;
+        for (int x = x0; x <= x1; x++) {
+            for (int y = y0; y <= y1; y++) {
+                final int c = x * cellsY + y;
+                if (next == null) {
+                    cellStart[c + 1]++;
+                } else {
+                    cellEdges[next[c]++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * The distance from x, y to the nearest edge. The cells are searched in
+     * growing square rings round the cell of the point until no edge in the
+     * next ring could be nearer than the best found.
+     */
+    double distance(final double x, final double y) {
+        final int cx = cell(x) - minCellX;
+        final int cy = cell(y) - minCellY;
+        final int rings = Math.max(Math.max(cx, cellsX - 1 - cx), Math.max(cy, cellsY - 1 - cy));
+        double best = Double.MAX_VALUE;
+        for (int ring = 0; ring <= rings; ring++) {
+            final double nearest = (ring - 1) * CELL_SIZE;
+            if (nearest > 0 && nearest * nearest >= best) {
+                break;
+            }
+            for (int i = cx - ring; i <= cx + ring; i++) {
+                if (i < 0 || i >= cellsX) {
+                    continue;
+                }
+                final int step = (i == cx - ring || i == cx + ring) ? 1 : 2 * ring;
+                for (int j = cy - ring; j <= cy + ring; j += Math.max(step, 1)) {
+                    if (j >= 0 && j < cellsY) {
+                        best = Math.min(best, nearestInCell(i * cellsY + j, x, y));
+                    }
+                }
+            }
+        }
+        return Math.sqrt(best);
+    }
+
+    private double nearestInCell(final int c, final double x, final double y) {
+        double best = Double.MAX_VALUE;
+        for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+            best = Math.min(best, squaredDistance(cellEdges[k], x, y));
+        }
+        return best;
+    }
+
+    private double squaredDistance(final int i, final double x, final double y) {
+        final double ax = edges[4 * i];
+        final double ay = edges[4 * i + 1];
+        final double dx = edges[4 * i + 2] - ax;
+        final double dy = edges[4 * i + 3] - ay;
+        final double length2 = dx * dx + dy * dy;
+        double t = 0;
+        if (length2 > 0) {
+            t = Math.max(0, Math.min(1, ((x - ax) * dx + (y - ay) * dy) / length2));
+        }
+        final double ex = ax + t * dx - x;
+        final double ey = ay + t * dy - y;
+        return ex * ex + ey * ey;
+    }
+}
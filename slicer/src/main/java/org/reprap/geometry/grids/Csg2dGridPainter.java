@@ -18,7 +18,7 @@
  */
 package org.reprap.geometry.grids;
 
-import java.util.BitSet;
+import java.util.concurrent.RecursiveAction;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -29,23 +29,79 @@ import org.reprap.geometry.polygons.Rectangle;
 
 public class Csg2dGridPainter {
     private static final Logger LOGGER = LogManager.getLogger(Csg2dGridPainter.class);
+    /**
+     * Quads with fewer pixels than this are painted on the current thread.
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+    /**
+     * Pixels nearer to the boundary than this many pixels may be needed to
+     * place it between the pixels, see SubPixelContours.
+     */
+    private static final double BOUNDARY_RANGE = 2;
 
     private final double pixelSize;
     private final Integer2DRectangle rectangle;
-    private final BitSet bits;
+    /**
+     * Every column of the grid starts on a word boundary, so forked tasks
+     * that paint disjoint columns never write to the same word. Stores that
+     * group columns together need the split to respect their alignment.
+     */
+    private final BooleanGrid grid;
+    private final int alignment;
 
     private final Point2D increment;
 
-    public Csg2dGridPainter(final double pixelSize, final Integer2DRectangle rectangle, final BitSet bits) {
-        this.pixelSize = pixelSize;
-        this.rectangle = rectangle;
-        this.bits = bits;
+    Csg2dGridPainter(final BooleanGrid grid) {
+        this.grid = grid;
+        pixelSize = grid.getPixelSize();
+        rectangle = grid.getRectangle();
+        alignment = grid.getColumnAlignment();
         increment = new Point2D(pixelSize / 2, pixelSize / 2);
     }
 
-    public void paint(final CSG2D csgExp) {
-        generateQuadTree(new Integer2DPoint(0, 0), new Integer2DPoint(rectangle.getSizeX() - 1, rectangle.getSizeY() - 1),
-                csgExp);
+    void paint(final CSG2D csgExp) {
+        final Integer2DPoint sw = new Integer2DPoint(0, 0);
+        final Integer2DPoint ne = new Integer2DPoint(rectangle.getSizeX() - 1, rectangle.getSizeY() - 1);
+        GridBands.POOL.invoke(new QuadTask(sw, ne, csgExp.prune(pruneRectangle(sw, ne))));
+    }
+
+    /**
+     * Paints a quad of whole columns. Big quads are split into two sets of
+     * columns that are painted in parallel, small ones are handed over to the
+     * quad tree.
+     */
+    private final class QuadTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Integer2DPoint ipsw;
+        private final Integer2DPoint ipne;
+        private final CSG2D csgExpression;
+
+        QuadTask(final Integer2DPoint ipsw, final Integer2DPoint ipne, final CSG2D csgExpression) {
+            this.ipsw = ipsw;
+            this.ipne = ipne;
+            this.csgExpression = csgExpression;
+        }
+
+        @Override
+        protected void compute() {
+            final int x0 = ipsw.getX();
+            final int x1 = ipne.getX();
+            final int xm = (x0 + (x1 - x0 + 1) / 2) / alignment * alignment;
+            if (xm <= x0 || (x1 - x0 + 1) * (ipne.getY() - ipsw.getY() + 1) < PARALLEL_THRESHOLD) {
+                generateQuadTree(ipsw, ipne, csgExpression);
+                return;
+            }
+            final Interval i = csgExpression.value(realRectangle(ipsw, ipne));
+            if (!i.zero()) {
+                homogeneous(ipsw, ipne, i, csgExpression);
+                return;
+            }
+            final Integer2DPoint leftNe = new Integer2DPoint(xm - 1, ipne.getY());
+            final Integer2DPoint rightSw = new Integer2DPoint(xm, ipsw.getY());
+            invokeAll(new QuadTask(ipsw, leftNe, csgExpression.prune(pruneRectangle(ipsw, leftNe))), new QuadTask(rightSw,
+                    ipne, csgExpression.prune(pruneRectangle(rightSw, ipne))));
+        }
     }
 
     /**
@@ -56,15 +112,17 @@ public class Csg2dGridPainter {
         final Point2D p0 = rectangle.realPoint(ipsw, pixelSize);
 
         if (samePixel(ipsw, ipne)) {
-            final boolean value = csgExpression.value(p0) <= 0;
-            bits.set(ipsw.getX() * rectangle.getSizeY() + ipsw.getY(), value);
+            final double value = csgExpression.value(p0);
+            if (value <= 0) {
+                grid.setColumn(ipsw.getX(), ipsw.getY(), ipsw.getY(), true);
+            }
+            grid.setBoundaryValue(ipsw.getX(), ipsw.getY(), value / pixelSize);
             return;
         }
 
-        final Point2D p1 = rectangle.realPoint(ipne, pixelSize);
-        final Interval i = csgExpression.value(new Rectangle(Point2D.sub(p0, increment), Point2D.add(p1, increment)));
+        final Interval i = csgExpression.value(realRectangle(ipsw, ipne));
         if (!i.zero()) {
-            homogeneous(ipsw, ipne, i.high() <= 0);
+            homogeneous(ipsw, ipne, i, csgExpression);
             return;
         }
 
@@ -116,18 +174,62 @@ public class Csg2dGridPainter {
     private void callGenerateQuadTree(final int swX, final int swY, final int neX, final int neY, final CSG2D csgExpression) {
         final Integer2DPoint sw = new Integer2DPoint(swX, swY);
         final Integer2DPoint ne = new Integer2DPoint(neX, neY);
-        final Rectangle realRectangle = new Rectangle(Point2D.sub(rectangle.realPoint(sw, pixelSize), increment), Point2D.add(
-                rectangle.realPoint(ne, pixelSize), increment));
-        generateQuadTree(sw, ne, csgExpression.prune(realRectangle));
+        generateQuadTree(sw, ne, csgExpression.prune(pruneRectangle(sw, ne)));
+    }
+
+    /**
+     * The real world rectangle covered by the pixels from ipsw to ipne.
+     */
+    private Rectangle realRectangle(final Integer2DPoint ipsw, final Integer2DPoint ipne) {
+        return new Rectangle(Point2D.sub(rectangle.realPoint(ipsw, pixelSize), increment), Point2D.add(
+                rectangle.realPoint(ipne, pixelSize), increment));
+    }
+
+    /**
+     * The rectangle to prune the expression for the pixels from ipsw to ipne
+     * to. If the grid keeps boundary values it is grown, so the expression
+     * keeps the exact values near the boundary, not just the signs.
+     */
+    private Rectangle pruneRectangle(final Integer2DPoint ipsw, final Integer2DPoint ipne) {
+        final Rectangle result = realRectangle(ipsw, ipne);
+        if (grid.keepsBoundaryValues()) {
+            return result.offset(BOUNDARY_RANGE * pixelSize);
+        }
+        return result;
     }
 
     /**
-     * Set a whole rectangle to one value
+     * Set a whole rectangle to the value of the interval i of the expression
+     * over it. The grid starts cleared, so only solid rectangles need to be
+     * written. If the grid keeps boundary values and the boundary may come
+     * close to the rectangle, the values of the pixels along its edges are
+     * recorded too, they are neighbours of the pixels at the boundary.
      */
-    private void homogeneous(final Integer2DPoint ipsw, final Integer2DPoint ipne, final boolean v) {
-        for (int x = ipsw.getX(); x <= ipne.getX(); x++) {
-            final int startX = x * rectangle.getSizeY();
-            bits.set(startX + ipsw.getY(), startX + ipne.getY() + 1, v);
+    private void homogeneous(final Integer2DPoint ipsw, final Integer2DPoint ipne, final Interval i,
+            final CSG2D csgExpression) {
+        if (i.high() <= 0) {
+            for (int x = ipsw.getX(); x <= ipne.getX(); x++) {
+                grid.setColumn(x, ipsw.getY(), ipne.getY(), true);
+            }
+        }
+        if (grid.keepsBoundaryValues() && Math.min(Math.abs(i.low()), Math.abs(i.high())) < BOUNDARY_RANGE * pixelSize) {
+            for (int x = ipsw.getX(); x <= ipne.getX(); x++) {
+                recordValue(x, ipsw.getY(), csgExpression);
+                if (ipne.getY() > ipsw.getY()) {
+                    recordValue(x, ipne.getY(), csgExpression);
+                }
+            }
+            for (int y = ipsw.getY() + 1; y < ipne.getY(); y++) {
+                recordValue(ipsw.getX(), y, csgExpression);
+                if (ipne.getX() > ipsw.getX()) {
+                    recordValue(ipne.getX(), y, csgExpression);
+                }
+            }
         }
     }
+
+    private void recordValue(final int x, final int y, final CSG2D csgExpression) {
+        final Point2D p = rectangle.realPoint(new Integer2DPoint(x, y), pixelSize);
+        grid.setBoundaryValue(x, y, csgExpression.value(p) / pixelSize);
+    }
 }
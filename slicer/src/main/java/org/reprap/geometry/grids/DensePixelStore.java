@@ -0,0 +1,259 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import org.reprap.configuration.BitmapStorage;
+
+/**
+ * Stores all columns of a grid one after the other in a single array. An
+ * occupancy summary with a bit for every word of every 64 columns lets
+ * isEmpty and the boolean operations skip the parts that are air. Bands of
+ * whole blocks can be combined in parallel.
+ */
+final class DensePixelStore extends PixelStore {
+    private static final int BLOCK_WIDTH = Long.SIZE;
+
+    private final long[] words;
+    private final OccupancySummary occupied;
+
+    DensePixelStore(final int sizeX, final int sizeY) {
+        super(sizeX, sizeY);
+        words = new long[sizeX * getStride()];
+        occupied = new OccupancySummary(blocksX() * getStride());
+    }
+
+    private DensePixelStore(final DensePixelStore other) {
+        super(other.getSizeX(), other.getSizeY());
+        words = other.words.clone();
+        occupied = other.occupied.copy();
+    }
+
+    private int blocksX() {
+        return (getSizeX() + BLOCK_WIDTH - 1) / BLOCK_WIDTH;
+    }
+
+    private int block(final int x, final int w) {
+        return x / BLOCK_WIDTH * getStride() + w;
+    }
+
+    @Override
+    long getWord(final int x, final int w) {
+        return words[x * getStride() + w];
+    }
+
+    @Override
+    void setWord(final int x, final int w, final long value) {
+        words[x * getStride() + w] = value;
+        if (value != 0) {
+            occupied.mark(block(x, w));
+        }
+    }
+
+    @Override
+    boolean get(final int x, final int y) {
+        return (words[x * getStride() + y / Long.SIZE] & 1L << y) != 0;
+    }
+
+    @Override
+    boolean mayBeSet(final int x, final int w) {
+        return occupied.isMarked(block(x, w));
+    }
+
+    @Override
+    boolean isEmpty() {
+        for (int b = occupied.nextMarked(0); b >= 0; b = occupied.nextMarked(b + 1)) {
+            if (!isBlockEmpty(b)) {
+                return false;
+            }
+            occupied.clear(b);
+        }
+        return true;
+    }
+
+    private boolean isBlockEmpty(final int block) {
+        final int stride = getStride();
+        final int w = block % stride;
+        final int x0 = block / stride * BLOCK_WIDTH;
+        final int x1 = Math.min(x0 + BLOCK_WIDTH, getSizeX());
+        for (int i = x0 * stride + w; i < x1 * stride; i += stride) {
+            if (words[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    PixelStore copy() {
+        return new DensePixelStore(this);
+    }
+
+    @Override
+    PixelStore create(final int newSizeX, final int newSizeY) {
+        return new DensePixelStore(newSizeX, newSizeY);
+    }
+
+    @Override
+    int getColumnAlignment() {
+        return BLOCK_WIDTH;
+    }
+
+    @Override
+    BitmapStorage getStorage() {
+        return BitmapStorage.DENSE;
+    }
+
+    /**
+     * Clear the marks of blocks that turned out to be air, sweeping all
+     * marked blocks.
+     */
+    @Override
+    void compact() {
+        for (int b = occupied.nextMarked(0); b >= 0; b = occupied.nextMarked(b + 1)) {
+            if (isBlockEmpty(b)) {
+                occupied.clear(b);
+            }
+        }
+    }
+
+    /**
+     * Combines only the blocks where the operation can change something: for
+     * OR and AND_NOT those marked in the source and, for AND_NOT, in this
+     * store, for AND those marked in this store.
+     */
+    @Override
+    void combine(final PixelStore other, final Operation operation) {
+        if (!(other instanceof DensePixelStore)) {
+            super.combine(other, operation);
+            return;
+        }
+        final DensePixelStore source = (DensePixelStore) other;
+        if (operation == Operation.COPY) {
+            System.arraycopy(source.words, 0, words, 0, words.length);
+            occupied.copyFrom(source.occupied);
+            return;
+        }
+        combineBlocks(source, operation, 0, blocksX(), true);
+    }
+
+    /**
+     * Like combine, but the marks of blocks that become air are left for
+     * compact() to clear: clearing is not safe while other bands mark.
+     */
+    @Override
+    void combine(final PixelStore other, final Operation operation, final int x0, final int x1) {
+        if (!(other instanceof DensePixelStore)) {
+            super.combine(other, operation, x0, x1);
+            return;
+        }
+        combineBlocks((DensePixelStore) other, operation, x0 / BLOCK_WIDTH, (x1 + BLOCK_WIDTH - 1) / BLOCK_WIDTH, false);
+    }
+
+    /**
+     * Rows of blocks where at least half of the blocks need combining are
+     * combined in one go with the BitmapKernels, as their words are
+     * contiguous. Their marks are then only updated where the operation
+     * itself tells: blocks that become air keep them until compact().
+     */
+    private void combineBlocks(final DensePixelStore source, final Operation operation, final int firstBlockX,
+            final int endBlockX, final boolean clearEmpty) {
+        final OccupancySummary driver = operation == Operation.OR ? source.occupied : occupied;
+        final int stride = getStride();
+        final int end = endBlockX * stride;
+        int b = driver.nextMarked(firstBlockX * stride);
+        while (b >= 0 && b < end) {
+            final int rowEnd = (b / stride + 1) * stride;
+            if (isMostlyMarked(driver, b, rowEnd, stride)) {
+                combineRow(source, operation, b / stride, clearEmpty);
+                b = driver.nextMarked(rowEnd);
+            } else {
+                combineBlock(source, operation, b, clearEmpty);
+                b = driver.nextMarked(b + 1);
+            }
+        }
+    }
+
+    private static boolean isMostlyMarked(final OccupancySummary marks, final int from, final int rowEnd,
+            final int stride) {
+        int count = 0;
+        for (int b = from; b >= 0 && b < rowEnd; b = marks.nextMarked(b + 1)) {
+            if (++count * 2 >= stride) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void combineRow(final DensePixelStore source, final Operation operation, final int blockX,
+            final boolean clearEmpty) {
+        final BitmapKernels kernels = BitmapKernels.get();
+        final int stride = getStride();
+        final int from = blockX * BLOCK_WIDTH * stride;
+        final int length = Math.min(BLOCK_WIDTH, getSizeX() - blockX * BLOCK_WIDTH) * stride;
+        final int firstBlock = blockX * stride;
+        final int rowEnd = firstBlock + stride;
+        switch (operation) {
+        case OR:
+            kernels.or(words, from, source.words, from, length);
+            for (int b = source.occupied.nextMarked(firstBlock); b >= 0 && b < rowEnd; b = source.occupied
+                    .nextMarked(b + 1)) {
+                occupied.mark(b);
+            }
+            break;
+        case AND:
+            kernels.and(words, from, source.words, from, length);
+            if (clearEmpty) {
+                for (int b = occupied.nextMarked(firstBlock); b >= 0 && b < rowEnd; b = occupied.nextMarked(b + 1)) {
+                    if (!source.occupied.isMarked(b)) {
+                        occupied.clear(b);
+                    }
+                }
+            }
+            break;
+        case AND_NOT:
+            kernels.andNot(words, from, source.words, from, length);
+            break;
+        default:
+            throw new IllegalArgumentException("unknown operation " + operation);
+        }
+    }
+
+    private void combineBlock(final DensePixelStore source, final Operation operation, final int b,
+            final boolean clearEmpty) {
+        final int stride = getStride();
+        final boolean sourceMarked = source.occupied.isMarked(b);
+        if (operation == Operation.AND_NOT && !sourceMarked) {
+            return;
+        }
+        final int w = b % stride;
+        final int x0 = b / stride * BLOCK_WIDTH;
+        final int wordEnd = Math.min(x0 + BLOCK_WIDTH, getSizeX()) * stride;
+        long any = 0;
+        for (int i = x0 * stride + w; i < wordEnd; i += stride) {
+            final long word = sourceMarked ? combine(words[i], source.words[i], operation) : 0;
+            words[i] = word;
+            any |= word;
+        }
+        if (any != 0) {
+            occupied.mark(b);
+        } else if (clearEmpty) {
+            occupied.clear(b);
+        }
+    }
+}
@@ -57,31 +57,50 @@ final class DigitalDifferentialAnalyzer {
     private final int steps;
     private boolean finished = false;
     private int taken = 0;
+    private int x;
+    private int y;
 
     /**
      * Set up the DDA between a start and an end point
      */
     DigitalDifferentialAnalyzer(final Integer2DPoint start, final Integer2DPoint end) {
-        final Integer2DPoint delta = end.sub(start).abs();
-        steps = Math.max(delta.getX(), delta.getY());
-        stateX = new CoordinateState(delta.getX(), end.getX() >= start.getX(), -steps / 2, start.getX());
-        stateY = new CoordinateState(delta.getY(), end.getY() >= start.getY(), -steps / 2, start.getY());
+        this(start.getX(), start.getY(), end.getX(), end.getY());
     }
 
     /**
-     * Return the next point along the line, or null if the last point returned
-     * was the final one.
+     * Set up the DDA between startX, startY and endX, endY
      */
-    Integer2DPoint next() {
+    DigitalDifferentialAnalyzer(final int startX, final int startY, final int endX, final int endY) {
+        final int deltaX = Math.abs(endX - startX);
+        final int deltaY = Math.abs(endY - startY);
+        steps = Math.max(deltaX, deltaY);
+        stateX = new CoordinateState(deltaX, endX >= startX, -steps / 2, startX);
+        stateY = new CoordinateState(deltaY, endY >= startY, -steps / 2, startY);
+    }
+
+    /**
+     * Move on to the next point along the line, see getX() and getY().
+     * Returns false if the last point was the final one.
+     */
+    boolean step() {
         if (finished) {
-            return null;
+            return false;
         }
 
-        final Integer2DPoint result = new Integer2DPoint(stateX.next, stateY.next);
+        x = stateX.next;
+        y = stateY.next;
         finished = taken >= steps;
         taken++;
         stateX.advance(steps);
         stateY.advance(steps);
-        return result;
+        return true;
+    }
+
+    int getX() {
+        return x;
+    }
+
+    int getY() {
+        return y;
     }
 }
\ No newline at end of file
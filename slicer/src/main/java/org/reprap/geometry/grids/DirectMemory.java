@@ -0,0 +1,106 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Direct buffers that can be freed as soon as their owner is done with them,
+ * instead of when the garbage collector gets round to their cleaners. The
+ * JDK has no public way to do that: from Java 9 on Unsafe.invokeCleaner does
+ * it, before that the cleaner of the buffer itself. Where neither works the
+ * buffers are left to the garbage collector.
+ */
+final class DirectMemory {
+    private static final Logger LOGGER = LogManager.getLogger(DirectMemory.class);
+    private static final Freer FREER = findFreer();
+
+    private interface Freer {
+        void free(ByteBuffer buffer) throws ReflectiveOperationException;
+    }
+
+    private DirectMemory() {
+    }
+
+    /**
+     * A zeroed buffer of bytes in native byte order.
+     */
+    static ByteBuffer allocate(final long bytes) {
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too big for a direct buffer: " + bytes + " bytes");
+        }
+        return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Free the memory of buffer now. Neither it nor any view of it may be used
+     * afterwards.
+     */
+    static void free(final ByteBuffer buffer) {
+        if (FREER == null) {
+            return;
+        }
+        try {
+            FREER.free(buffer);
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            LOGGER.catching(Level.DEBUG, e);
+        }
+    }
+
+    private static Freer findFreer() {
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            final Object unsafe = theUnsafe.get(null);
+            return new Freer() {
+                @Override
+                public void free(final ByteBuffer buffer) throws ReflectiveOperationException {
+                    invokeCleaner.invoke(unsafe, buffer);
+                }
+            };
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            // before Java 9
+        }
+        try {
+            final ByteBuffer probe = ByteBuffer.allocateDirect(1);
+            final Method cleanerMethod = probe.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            final Method clean = cleanerMethod.getReturnType().getMethod("clean");
+            return new Freer() {
+                @Override
+                public void free(final ByteBuffer buffer) throws ReflectiveOperationException {
+                    clean.invoke(cleanerMethod.invoke(buffer));
+                }
+            };
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            LOGGER.info("direct buffers are left to the garbage collector");
+            LOGGER.catching(Level.DEBUG, e);
+            return null;
+        }
+    }
+}
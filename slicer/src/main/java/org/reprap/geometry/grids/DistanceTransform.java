@@ -0,0 +1,228 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+/**
+ * The squared Euclidean distance of every pixel of a rectangle to the nearest
+ * feature pixel, computed exactly in time proportional to the area with the
+ * separable algorithm of Meijster, Roerdink and Hesselink: first the distance
+ * along x to the nearest feature in each row, then the lower envelope of the
+ * parabolas along each column.
+ * 
+ * The distances are kept in the same column order as the pixels of a grid.
+ */
+final class DistanceTransform {
+    private final int sizeX;
+    private final int sizeY;
+    private final int[] squared;
+
+    private DistanceTransform(final int sizeX, final int sizeY) {
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        squared = GridBufferArena.get().borrowInts(sizeX * sizeY);
+    }
+
+    /**
+     * Give the distances back to the buffer arena, the transform must not be
+     * used afterwards.
+     */
+    void release() {
+        GridBufferArena.get().giveBack(squared);
+    }
+
+    /**
+     * Distances to the solid pixels of grid, over its rectangle grown by
+     * margin pixels on every side.
+     */
+    static DistanceTransform toSolid(final BooleanGrid grid, final int margin) {
+        final Integer2DRectangle rectangle = grid.getRectangle();
+        final DistanceTransform result = new DistanceTransform(rectangle.getSizeX() + 2 * margin, rectangle.getSizeY() + 2
+                * margin);
+        result.scanRows(grid, margin, true);
+        result.scanColumns(false);
+        return result;
+    }
+
+    /**
+     * Distances to the air pixels of grid over its rectangle. Everything
+     * outside of the rectangle counts as air.
+     */
+    static DistanceTransform toAir(final BooleanGrid grid) {
+        final Integer2DRectangle rectangle = grid.getRectangle();
+        final DistanceTransform result = new DistanceTransform(rectangle.getSizeX(), rectangle.getSizeY());
+        result.scanRows(grid, 0, false);
+        result.scanColumns(true);
+        return result;
+    }
+
+    /**
+     * First phase: the distance along x to the nearest feature pixel in the
+     * same row, swept a column at a time. The rows are independent, so big
+     * transforms sweep horizontal bands of rows in parallel.
+     */
+    private void scanRows(final BooleanGrid grid, final int margin, final boolean featureIsSolid) {
+        GridBands.run(sizeY, sizeX, 1, new GridBands.Action() {
+            @Override
+            public void run(final int band, final int start, final int end) {
+                scanRows(grid, margin, featureIsSolid, start, end);
+            }
+        });
+    }
+
+    private void scanRows(final BooleanGrid grid, final int margin, final boolean featureIsSolid, final int y0,
+            final int y1) {
+        final int infinity = sizeX + sizeY;
+        final int outside = featureIsSolid ? infinity : 1;
+        for (int x = 0; x < sizeX; x++) {
+            final int column = x * sizeY;
+            for (int y = y0; y < y1; y++) {
+                if (grid.get(x - margin, y - margin) == featureIsSolid) {
+                    squared[column + y] = 0;
+                } else if (x == 0) {
+                    squared[column + y] = outside;
+                } else {
+                    squared[column + y] = Math.min(infinity, squared[column - sizeY + y] + 1);
+                }
+            }
+        }
+        for (int y = y0; y < y1; y++) {
+            final int last = (sizeX - 1) * sizeY + y;
+            squared[last] = Math.min(squared[last], outside);
+        }
+        for (int x = sizeX - 2; x >= 0; x--) {
+            final int column = x * sizeY;
+            for (int y = y0; y < y1; y++) {
+                squared[column + y] = Math.min(squared[column + y], squared[column + sizeY + y] + 1);
+            }
+        }
+    }
+
+    /**
+     * Second phase: the lower envelope of the parabolas (y - i)^2 + g(i)^2 of
+     * each column, which replaces the row distances g by squared distances.
+     * Bands of columns run in parallel, each with its own stacks.
+     */
+    private void scanColumns(final boolean outsideIsFeature) {
+        final int[] bands = GridBands.split(sizeX, sizeY, 1);
+        final GridBufferArena arena = GridBufferArena.get();
+        final int[][] stacks = new int[3 * (bands.length - 1)][];
+        for (int i = 0; i < stacks.length; i++) {
+            stacks[i] = arena.borrowInts(sizeY);
+        }
+        GridBands.run(bands, new GridBands.Action() {
+            @Override
+            public void run(final int band, final int start, final int end) {
+                scanColumns(outsideIsFeature, stacks[3 * band], stacks[3 * band + 1], stacks[3 * band + 2], start, end);
+            }
+        });
+        for (final int[] stack : stacks) {
+            arena.giveBack(stack);
+        }
+    }
+
+    private void scanColumns(final boolean outsideIsFeature, final int[] s, final int[] t, final int[] g, final int x0,
+            final int x1) {
+        for (int x = x0; x < x1; x++) {
+            final int column = x * sizeY;
+            System.arraycopy(squared, column, g, 0, sizeY);
+            int q = 0;
+            s[0] = 0;
+            t[0] = 0;
+            for (int u = 1; u < sizeY; u++) {
+                while (q >= 0 && parabola(t[q], s[q], g) > parabola(t[q], u, g)) {
+                    q--;
+                }
+                if (q < 0) {
+                    q = 0;
+                    s[0] = u;
+                } else {
+                    final long w = 1 + separator(s[q], u, g);
+                    if (w < sizeY) {
+                        q++;
+                        s[q] = u;
+                        t[q] = (int) w;
+                    }
+                }
+            }
+            for (int u = sizeY - 1; u >= 0; u--) {
+                long d = parabola(u, s[q], g);
+                if (outsideIsFeature) {
+                    final long edge = Math.min(u + 1, sizeY - u);
+                    d = Math.min(d, edge * edge);
+                }
+                squared[column + u] = (int) d;
+                if (u == t[q]) {
+                    q--;
+                }
+            }
+        }
+    }
+
+    private static long parabola(final int y, final int i, final int[] g) {
+        final long dy = y - i;
+        final long gi = g[i];
+        return dy * dy + gi * gi;
+    }
+
+    /**
+     * The last y at which the parabola of i is not above the one of u (i < u).
+     */
+    private static long separator(final int i, final int u, final int[] g) {
+        final long gi = g[i];
+        final long gu = g[u];
+        final long numerator = (long) u * u - (long) i * i + gu * gu - gi * gi;
+        final long denominator = 2L * (u - i);
+        if (numerator < 0) {
+            return (numerator - denominator + 1) / denominator;
+        }
+        return numerator / denominator;
+    }
+
+    /**
+     * Set all pixels of result that are not further than the square root of
+     * limit from a feature to v. The result must have the size of this
+     * transform.
+     */
+    void mark(final BooleanGrid result, final long limit, final boolean v) {
+        GridBands.run(sizeX, sizeY, result.getColumnAlignment(), new GridBands.Action() {
+            @Override
+            public void run(final int band, final int start, final int end) {
+                mark(result, limit, v, start, end);
+            }
+        });
+    }
+
+    private void mark(final BooleanGrid result, final long limit, final boolean v, final int x0, final int x1) {
+        for (int x = x0; x < x1; x++) {
+            final int column = x * sizeY;
+            int y = 0;
+            while (y < sizeY) {
+                if (squared[column + y] > limit) {
+                    y++;
+                    continue;
+                }
+                final int y0 = y;
+                while (y < sizeY && squared[column + y] <= limit) {
+                    y++;
+                }
+                result.setColumn(x, y0, y - 1, v);
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits the work on one grid into bands that run in parallel on a shared
+ * fork-join pool. The grids are stored column by column, so a band is a range
+ * of whole columns (or of whole rows where the work goes along the rows):
+ * bands that start at a multiple of the column alignment of a store never
+ * write to the same word. Every band computes exactly what the single
+ * threaded loop would for its columns, so the results do not depend on the
+ * number of bands.
+ * 
+ * The GridBufferArena is one pool shared by all threads, so the bands may
+ * borrow and give back buffers themselves. GridBufferArena.releaseLayer()
+ * takes back what any thread still has out, it must only run between grid
+ * operations, never while bands are at work.
+ */
+final class GridBands {
+    static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+            new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+                @Override
+                public ForkJoinWorkerThread newThread(final ForkJoinPool pool) {
+                    return new MeteredWorker(pool);
+                }
+            }, null, false);
+    /**
+     * Grids with fewer pixels per band than this are not worth splitting.
+     */
+    private static final int DEFAULT_MINIMUM_BAND_PIXELS = 1 << 18;
+    /**
+     * A few bands per thread even out bands that are quicker than others.
+     */
+    private static final int BANDS_PER_THREAD = 2;
+
+    private static volatile int minimumBandPixels = DEFAULT_MINIMUM_BAND_PIXELS;
+
+    interface Action {
+        /**
+         * Do the work for the columns (or rows) from start to end, excluding
+         * end. The bands are numbered from 0.
+         */
+        void run(int band, int start, int end);
+    }
+
+    private GridBands() {
+    }
+
+    /**
+     * A worker whose allocations the AllocationMeter counts.
+     */
+    private static final class MeteredWorker extends ForkJoinWorkerThread {
+        MeteredWorker(final ForkJoinPool pool) {
+            super(pool);
+        }
+
+        @Override
+        protected void onStart() {
+            super.onStart();
+            AllocationMeter.workerStarted(this);
+        }
+
+        @Override
+        protected void onTermination(final Throwable exception) {
+            AllocationMeter.workerTerminated(this);
+            super.onTermination(exception);
+        }
+    }
+
+    /**
+     * The bounds of the bands over length columns of size pixels each: band b
+     * covers bounds[b] to bounds[b + 1]. All bounds but the last are multiples
+     * of alignment.
+     */
+    static int[] split(final int length, final int size, final int alignment) {
+        final long bandsForSize = (long) length * size / minimumBandPixels;
+        final int bands = (int) Math.max(1,
+                Math.min(Math.min(bandsForSize, POOL.getParallelism() * BANDS_PER_THREAD), length / alignment));
+        final int[] bounds = new int[bands + 1];
+        int count = 1;
+        for (int b = 1; b < bands; b++) {
+            final int bound = (int) ((long) length * b / bands / alignment * alignment);
+            if (bound > bounds[count - 1]) {
+                bounds[count++] = bound;
+            }
+        }
+        bounds[count++] = length;
+        if (count == bounds.length) {
+            return bounds;
+        }
+        final int[] result = new int[count];
+        System.arraycopy(bounds, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * Run action for every band, on the current thread if there is only one.
+     */
+    static void run(final int[] bounds, final Action action) {
+        if (bounds.length <= 2) {
+            if (bounds.length == 2) {
+                action.run(0, bounds[0], bounds[1]);
+            }
+            return;
+        }
+        final List<BandTask> tasks = new ArrayList<>(bounds.length - 1);
+        for (int b = 0; b < bounds.length - 1; b++) {
+            tasks.add(new BandTask(action, b, bounds[b], bounds[b + 1]));
+        }
+        POOL.invoke(new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    /**
+     * Split and run in one go.
+     */
+    static void run(final int length, final int size, final int alignment, final Action action) {
+        run(split(length, size, alignment), action);
+    }
+
+    /**
+     * Change the number of pixels below which bands are not split any more,
+     * a non-positive value restores the default. For tests, that need small
+     * grids in many bands.
+     */
+    static void setMinimumBandPixels(final int pixels) {
+        minimumBandPixels = pixels > 0 ? pixels : DEFAULT_MINIMUM_BAND_PIXELS;
+    }
+
+    private static final class BandTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Action action;
+        private final int band;
+        private final int start;
+        private final int end;
+
+        BandTask(final Action action, final int band, final int start, final int end) {
+            this.action = action;
+            this.band = band;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            action.run(band, start, end);
+        }
+    }
+}
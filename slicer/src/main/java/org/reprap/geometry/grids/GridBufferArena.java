@@ -0,0 +1,211 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pool of the scratch arrays the grid algorithms need for a single
+ * operation: visited bitmaps, distance transforms and morphology windows.
+ * They are borrowed from the arena and given back when the operation is done,
+ * so the next operation on a grid of the same size reuses them instead of
+ * allocating megabytes afresh. At the end of a layer every array still out is
+ * taken back in bulk, so a borrower that fails half way does not leak its
+ * buffers. The arena is shared by all threads, the workers of GridBands
+ * included, and holds at most MAX_FREE_BYTES of free arrays: when a given
+ * back array does not fit, the sizes not asked for the longest are dropped.
+ * Producer empties it at the end of the job.
+ * 
+ * Only scratch storage that is dead when its operation returns may be
+ * borrowed. The grids themselves keep their own storage, they outlive their
+ * layer: the infill keeps the neighbouring layers and the support
+ * calculation keeps the layers above.
+ */
+public final class GridBufferArena {
+    /**
+     * The free arrays are dropped rather than kept above this many bytes.
+     */
+    private static final long MAX_FREE_BYTES = 64L << 20;
+    private static final GridBufferArena ARENA = new GridBufferArena();
+    private static volatile boolean pooling = true;
+
+    /**
+     * The free arrays by length, the length asked for the longest ago first
+     */
+    private final Map<Integer, ArrayDeque<long[]>> freeLongs = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Integer, ArrayDeque<int[]>> freeInts = new LinkedHashMap<>(16, 0.75f, true);
+    private final List<Object> lent = new ArrayList<>();
+    private long freeBytes = 0;
+
+    private GridBufferArena() {
+    }
+
+    static GridBufferArena get() {
+        return ARENA;
+    }
+
+    /**
+     * Switch the pooling off, every borrow then allocates, for comparing the
+     * heap churn with and without the arena.
+     */
+    static void setPooling(final boolean on) {
+        pooling = on;
+    }
+
+    /**
+     * Drop the free arrays. Called when the job is done, and by tests that
+     * must not depend on what earlier work has left in the arena.
+     */
+    public static void clear() {
+        synchronized (ARENA) {
+            ARENA.freeLongs.clear();
+            ARENA.freeInts.clear();
+            ARENA.freeBytes = 0;
+        }
+    }
+
+    /**
+     * Take back every array lent. Called when a layer is done, while no grid
+     * operation is under way on any thread.
+     */
+    public static void releaseLayer() {
+        synchronized (ARENA) {
+            for (final Object array : ARENA.lent.toArray()) {
+                ARENA.giveBack(array);
+            }
+        }
+    }
+
+    /**
+     * A cleared array of length longs
+     */
+    synchronized long[] borrowLongs(final int length) {
+        final ArrayDeque<long[]> free = freeLongs.get(length);
+        long[] result;
+        if (pooling && free != null && !free.isEmpty()) {
+            result = free.pop();
+            freeBytes -= 8L * length;
+            Arrays.fill(result, 0);
+        } else {
+            result = new long[length];
+        }
+        lend(result);
+        return result;
+    }
+
+    /**
+     * A cleared array of length ints
+     */
+    synchronized int[] borrowInts(final int length) {
+        final ArrayDeque<int[]> free = freeInts.get(length);
+        int[] result;
+        if (pooling && free != null && !free.isEmpty()) {
+            result = free.pop();
+            freeBytes -= 4L * length;
+            Arrays.fill(result, 0);
+        } else {
+            result = new int[length];
+        }
+        lend(result);
+        return result;
+    }
+
+    private void lend(final Object array) {
+        if (pooling) {
+            lent.add(array);
+        }
+    }
+
+    /**
+     * Give back an array borrowed from this arena. The borrower must not use
+     * it afterwards. Arrays not lent by this arena are ignored.
+     */
+    synchronized void giveBack(final Object array) {
+        if (!removeLent(array)) {
+            return;
+        }
+        if (array instanceof long[]) {
+            final long[] longs = (long[]) array;
+            if (makeRoom(8L * longs.length)) {
+                freeList(freeLongs, longs.length).push(longs);
+                freeBytes += 8L * longs.length;
+            }
+        } else {
+            final int[] ints = (int[]) array;
+            if (makeRoom(4L * ints.length)) {
+                freeList(freeInts, ints.length).push(ints);
+                freeBytes += 4L * ints.length;
+            }
+        }
+    }
+
+    /**
+     * Drop the free arrays of the lengths asked for the longest ago until
+     * bytes more fit, false if they never can.
+     */
+    private boolean makeRoom(final long bytes) {
+        if (bytes > MAX_FREE_BYTES) {
+            return false;
+        }
+        while (freeBytes + bytes > MAX_FREE_BYTES) {
+            if (!freeLongs.isEmpty()) {
+                dropEldest(freeLongs, 8L);
+            } else {
+                dropEldest(freeInts, 4L);
+            }
+        }
+        return true;
+    }
+
+    private <T> void dropEldest(final Map<Integer, ArrayDeque<T>> lists, final long elementBytes) {
+        final Iterator<Map.Entry<Integer, ArrayDeque<T>>> eldest = lists.entrySet().iterator();
+        final Map.Entry<Integer, ArrayDeque<T>> entry = eldest.next();
+        freeBytes -= elementBytes * entry.getKey() * entry.getValue().size();
+        eldest.remove();
+    }
+
+    /**
+     * Removes array from the lent list, searching from the end, where the
+     * most recent borrows are.
+     */
+    private boolean removeLent(final Object array) {
+        for (int i = lent.size() - 1; i >= 0; i--) {
+            if (lent.get(i) == array) {
+                lent.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <T> ArrayDeque<T> freeList(final Map<Integer, ArrayDeque<T>> lists, final int length) {
+        ArrayDeque<T> result = lists.get(length);
+        if (result == null) {
+            result = new ArrayDeque<>();
+            lists.put(length, result);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,160 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import org.reprap.geometry.polygons.Point2D;
+import org.reprap.geometry.polygons.Rectangle;
+
+/**
+ * Area, first and second moments and bounds of the solid pixels of a grid.
+ * They are summed word by word: the pixel count of a word is its bit count,
+ * the sums of the bit indices and of their squares are bit counts of the word
+ * masked with the bits whose index has given bits set, so no pixel is
+ * visited on its own.
+ */
+public final class GridMoments {
+    /**
+     * INDEX_BIT[k] has the bits set whose index has bit k set.
+     */
+    private static final long[] INDEX_BIT = { 0xAAAAAAAAAAAAAAAAL, 0xCCCCCCCCCCCCCCCCL, 0xF0F0F0F0F0F0F0F0L,
+            0xFF00FF00FF00FF00L, 0xFFFF0000FFFF0000L, 0xFFFFFFFF00000000L };
+
+    private final Integer2DRectangle rectangle;
+    private final double pixelSize;
+    private long count = 0;
+    private long sumX = 0;
+    private long sumY = 0;
+    private long sumXX = 0;
+    private long sumYY = 0;
+    private long sumXY = 0;
+    private int minX = Integer.MAX_VALUE;
+    private int minY = Integer.MAX_VALUE;
+    private int maxX = Integer.MIN_VALUE;
+    private int maxY = Integer.MIN_VALUE;
+
+    GridMoments(final BooleanGrid grid) {
+        rectangle = grid.getRectangle();
+        pixelSize = grid.getPixelSize();
+        final int stride = grid.getStride();
+        for (int x = 0; x < rectangle.getSizeX(); x++) {
+            long columnCount = 0;
+            long columnSumY = 0;
+            for (int w = 0; w < stride; w++) {
+                final long word = grid.getWord(x, w);
+                if (word == 0) {
+                    continue;
+                }
+                final long n = Long.bitCount(word);
+                final long base = 64L * w;
+                final long indices = indexSum(word);
+                columnCount += n;
+                columnSumY += base * n + indices;
+                sumYY += base * base * n + 2 * base * indices + indexSquareSum(word);
+                minY = Math.min(minY, (int) base + Long.numberOfTrailingZeros(word));
+                maxY = Math.max(maxY, (int) base + 63 - Long.numberOfLeadingZeros(word));
+            }
+            if (columnCount > 0) {
+                count += columnCount;
+                sumX += x * columnCount;
+                sumXX += (long) x * x * columnCount;
+                sumY += columnSumY;
+                sumXY += x * columnSumY;
+                minX = Math.min(minX, x);
+                maxX = x;
+            }
+        }
+    }
+
+    /**
+     * The sum of the indices of the set bits
+     */
+    private static long indexSum(final long word) {
+        long result = 0;
+        for (int k = 0; k < INDEX_BIT.length; k++) {
+            result += (long) Long.bitCount(word & INDEX_BIT[k]) << k;
+        }
+        return result;
+    }
+
+    /**
+     * The sum of the squares of the indices of the set bits: the square of an
+     * index is the sum of 2^(j+k) over all pairs of its set bits j and k.
+     */
+    private static long indexSquareSum(final long word) {
+        long result = 0;
+        for (int j = 0; j < INDEX_BIT.length; j++) {
+            final long withJ = word & INDEX_BIT[j];
+            result += (long) Long.bitCount(withJ) << 2 * j;
+            for (int k = j + 1; k < INDEX_BIT.length; k++) {
+                result += (long) Long.bitCount(withJ & INDEX_BIT[k]) << j + k + 1;
+            }
+        }
+        return result;
+    }
+
+    public long getPixelCount() {
+        return count;
+    }
+
+    /**
+     * The solid area in square millimeters
+     */
+    public double getArea() {
+        return count * pixelSize * pixelSize;
+    }
+
+    /**
+     * The centroid in the real world, or null if there are no solid pixels.
+     */
+    public Point2D getCentroid() {
+        if (count == 0) {
+            return null;
+        }
+        return rectangle.realPoint((double) sumX / count, (double) sumY / count, pixelSize);
+    }
+
+    /**
+     * The smallest rectangle holding the centres of all solid pixels, or null
+     * if there are none.
+     */
+    public Rectangle getBounds() {
+        if (count == 0) {
+            return null;
+        }
+        return new Rectangle(rectangle.realPoint(minX, minY, pixelSize), rectangle.realPoint(maxX, maxY, pixelSize));
+    }
+
+    /**
+     * The unit vector along which the solid pixels are spread most, the major
+     * axis of their ellipse of inertia, or null if there are no solid pixels.
+     * Its sign is arbitrary.
+     */
+    public Point2D getPrincipalAxis() {
+        if (count == 0) {
+            return null;
+        }
+        final double meanX = (double) sumX / count;
+        final double meanY = (double) sumY / count;
+        final double xx = (double) sumXX / count - meanX * meanX;
+        final double yy = (double) sumYY / count - meanY * meanY;
+        final double xy = (double) sumXY / count - meanX * meanY;
+        final double angle = 0.5 * Math.atan2(2 * xy, xx - yy);
+        return new Point2D(Math.cos(angle), Math.sin(angle));
+    }
+}
@@ -0,0 +1,188 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.reprap.configuration.HatchMethod;
+import org.reprap.geometry.polygons.HalfPlane;
+import org.reprap.geometry.polygons.Point2D;
+import org.reprap.geometry.polygons.PolygonList;
+
+/**
+ * The hatches made during a job, looked up by what they are made of: the bits
+ * of the grid, where it is, and the hatch line, gap and options. Inner infill
+ * regions often are the same from layer to layer and need not be hatched
+ * again. The bits are hashed to 128 bits, two lanes of 64 with different
+ * multipliers, so grids are told apart without keeping them. The cache holds
+ * a bounded number of hatches and is emptied by clear() at the end of a job.
+ * 
+ * Polygons can be changed by whoever gets them, so the cached hatches are
+ * never handed out themselves, only copies of them.
+ */
+public final class HatchCache {
+    private static final int MAX_HATCHES = 64;
+    private static final long LANE_ONE = 0x9E3779B97F4A7C15L;
+    private static final long LANE_TWO = 0xC2B2AE3D27D4EB4FL;
+    private static final Map<Key, PolygonList> HATCHES = new LinkedHashMap<Key, PolygonList>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Key, PolygonList> eldest) {
+            return size() > MAX_HATCHES;
+        }
+    };
+    private static long hits;
+    private static long misses;
+
+    private HatchCache() {
+    }
+
+    /**
+     * What a hatch is made of, with the bits of the grid hashed
+     */
+    static final class Key {
+        private final long bitsOne;
+        private final long bitsTwo;
+        private final int x;
+        private final int y;
+        private final int sizeX;
+        private final int sizeY;
+        private final double pixelSize;
+        private final String material;
+        private final double normalX;
+        private final double normalY;
+        private final double offset;
+        private final double gap;
+        private final boolean pathOptimize;
+        private final HatchMethod method;
+
+        Key(final BooleanGrid grid, final HalfPlane line, final double gap, final boolean pathOptimize,
+                final HatchMethod method) {
+            final Integer2DRectangle rectangle = grid.getRectangle();
+            x = rectangle.getSwCorner().getX();
+            y = rectangle.getSwCorner().getY();
+            sizeX = rectangle.getSizeX();
+            sizeY = rectangle.getSizeY();
+            pixelSize = grid.getPixelSize();
+            material = grid.getMaterial();
+            normalX = line.normal().x();
+            normalY = line.normal().y();
+            offset = line.value(new Point2D(0, 0));
+            this.gap = gap;
+            this.pathOptimize = pathOptimize;
+            this.method = method;
+            final int stride = grid.getStride();
+            // bits above sizeY in the last word of a column are not looked at
+            final long lastMask = sizeY % Long.SIZE == 0 ? -1L : (1L << sizeY % Long.SIZE) - 1;
+            long one = sizeX * 31L + sizeY;
+            long two = one ^ LANE_TWO;
+            for (int i = 0; i < sizeX; i++) {
+                for (int w = 0; w < stride; w++) {
+                    final long word = w == stride - 1 ? grid.getWord(i, w) & lastMask : grid.getWord(i, w);
+                    one = Long.rotateLeft(one ^ word, 29) * LANE_ONE;
+                    two = Long.rotateLeft(two + word, 37) * LANE_TWO;
+                }
+            }
+            bitsOne = mix(one);
+            bitsTwo = mix(two);
+        }
+
+        private static long mix(long h) {
+            h ^= h >>> 33;
+            h *= 0xFF51AFD7ED558CCDL;
+            h ^= h >>> 33;
+            h *= 0xC4CEB9FE1A85EC53L;
+            return h ^ h >>> 33;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) other;
+            return bitsOne == key.bitsOne && bitsTwo == key.bitsTwo && x == key.x && y == key.y && sizeX == key.sizeX
+                    && sizeY == key.sizeY && pixelSize == key.pixelSize
+                    && (material == null ? key.material == null : material.equals(key.material))
+                    && normalX == key.normalX && normalY == key.normalY && offset == key.offset && gap == key.gap
+                    && pathOptimize == key.pathOptimize && method == key.method;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (bitsOne ^ bitsOne >>> 32);
+        }
+    }
+
+    static Key key(final BooleanGrid grid, final HalfPlane line, final double gap, final boolean pathOptimize,
+            final HatchMethod method) {
+        return new Key(grid, line, gap, pathOptimize, method);
+    }
+
+    /**
+     * A copy of the hatch made of key if it was made before, or null.
+     */
+    static PolygonList get(final Key key) {
+        final PolygonList hatch;
+        synchronized (HatchCache.class) {
+            hatch = HATCHES.get(key);
+            if (hatch == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+        }
+        return new PolygonList(hatch);
+    }
+
+    /**
+     * Keep a copy of the hatch made of key.
+     */
+    static void put(final Key key, final PolygonList hatch) {
+        final PolygonList copy = new PolygonList(hatch);
+        synchronized (HatchCache.class) {
+            HATCHES.put(key, copy);
+        }
+    }
+
+    /**
+     * How many hatches were found in the cache since the last clear()
+     */
+    public static synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * How many hatches were not found in the cache since the last clear()
+     */
+    public static synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Forget all hatches and counts, when the job is done.
+     */
+    public static synchronized void clear() {
+        HATCHES.clear();
+        hits = 0;
+        misses = 0;
+    }
+}
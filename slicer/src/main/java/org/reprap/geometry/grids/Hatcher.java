@@ -20,11 +20,12 @@
 package org.reprap.geometry.grids;
 
 import java.util.ArrayList;
-import java.util.BitSet;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.reprap.configuration.HatchMethod;
 import org.reprap.geometry.polygons.HalfPlane;
 import org.reprap.geometry.polygons.Interval;
 import org.reprap.geometry.polygons.Point2D;
@@ -52,25 +53,63 @@ public class Hatcher {
      */
     private static final int[] NEIGHBOUR_PRODUCT = { 2, 1, 0, -1, -2, -1, 0, 1 };
 
+    /**
+     * How many of the nearest ends of other snakes are tried for each end of a
+     * snake when joining them up
+     */
+    private static final int JOIN_CANDIDATES = 8;
+
     private final BooleanGrid grid;
     private final double pixelSize;
     private final Integer2DRectangle rectangle;
     private final String material;
-    private final BitSet visited;
+    private final HatchMethod method;
+    private long[] visited;
 
     public Hatcher(final BooleanGrid grid) {
+        this(grid, HatchMethod.TRAVERSAL);
+    }
+
+    /**
+     * Other methods than traversal find the spans of the hatch lines without
+     * looking at every pixel along them: CONTOUR_CELLS gives the same hatches,
+     * see ContourCrossings, PATTERN_MASKS rasterizes the lines once per job
+     * and may put the ends of the hatches a pixel off, see PatternMasks.
+     */
+    public Hatcher(final BooleanGrid grid, final HatchMethod method) {
         this.grid = grid;
+        this.method = method;
         pixelSize = grid.getPixelSize();
         rectangle = grid.getRectangle();
         material = grid.getMaterial();
-        visited = new BitSet(rectangle.getSizeX() * rectangle.getSizeY());
     }
 
+    /**
+     * Hatch the grid. A hatch made of the same bits with the same line and
+     * options before in this job comes from the HatchCache.
+     */
     public PolygonList hatch(final HalfPlane hp, final double gap, final boolean pathOptimize) {
         if (gap <= 0) {
             return new PolygonList();
         }
+        final HatchCache.Key key = HatchCache.key(grid, hp, gap, pathOptimize, method);
+        final PolygonList cached = HatchCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        final GridBufferArena arena = GridBufferArena.get();
+        visited = arena.borrowLongs((int) (((long) rectangle.getSizeX() * rectangle.getSizeY() + 63) >>> 6));
+        try {
+            final PolygonList result = hatchVisiting(hp, gap, pathOptimize);
+            HatchCache.put(key, result);
+            return result;
+        } finally {
+            arena.giveBack(visited);
+            visited = null;
+        }
+    }
 
+    private PolygonList hatchVisiting(final HalfPlane hp, final double gap, final boolean pathOptimize) {
         final Rectangle big = rectangle.realRectangle(pixelSize).scale(1.1);
         final List<HalfPlane> hatches = new ArrayList<HalfPlane>();
         final Integer2DPolygonList iHatches = new Integer2DPolygonList();
@@ -83,22 +122,22 @@ public class Hatcher {
         return snakes.realPolygons(material, rectangle, pixelSize).simplify(1.5 * pixelSize);
     }
 
+    /**
+     * Grow snakes from the first hatch with points left until none has. Points
+     * are only ever taken away, so that hatch is never before the last one.
+     */
     private Integer2DPolygonList createSnakes(final List<HalfPlane> hatches, final Integer2DPolygonList iHatches) {
         final Integer2DPolygonList snakes = new Integer2DPolygonList();
-        int segment;
-        do {
-            segment = -1;
-            for (int i = 0; i < iHatches.size(); i++) {
-                if ((iHatches.polygon(i)).size() > 0) {
-                    segment = i;
-                    break;
-                }
+        int segment = 0;
+        while (true) {
+            while (segment < iHatches.size() && iHatches.polygon(segment).size() == 0) {
+                segment++;
             }
-            if (segment >= 0) {
-                snakes.add(snakeGrow(iHatches, hatches, segment, 0));
+            if (segment >= iHatches.size()) {
+                return snakes;
             }
-        } while (segment >= 0);
-        return snakes;
+            snakes.add(snakeGrow(iHatches, hatches, segment, 0));
+        }
     }
 
     /**
@@ -296,7 +335,8 @@ public class Hatcher {
         if (!grid.inside(p)) {
             return false;
         }
-        return visited.get(grid.pixI(p));
+        final int i = grid.pixI(p);
+        return (visited[i >>> 6] & 1L << i) != 0;
     }
 
     /**
@@ -334,7 +374,12 @@ public class Hatcher {
             LOGGER.error("attempt to set pixel beyond boundary!");
             return;
         }
-        visited.set(grid.pixI(p), v);
+        final int i = grid.pixI(p);
+        if (v) {
+            visited[i >>> 6] |= 1L << i;
+        } else {
+            visited[i >>> 6] &= ~(1L << i);
+        }
     }
 
     private static double calculateDistance(final HalfPlane hp, final double gap, final Rectangle big) {
@@ -360,18 +405,47 @@ public class Hatcher {
         }
     }
 
+    /**
+     * Find where the hatch lines cross the pattern. The lines do not depend on
+     * each other, so big grids have them traversed in parallel.
+     */
     private void collectHatches(HalfPlane hatcher, final double gap, final double maxLength, final List<HalfPlane> hatches,
             final Integer2DPolygonList iHatches) {
+        final List<HalfPlane> lines = new ArrayList<HalfPlane>();
         double g = 0;
         while (g < maxLength) {
-            final Integer2DPolygon ip = hatch(hatcher);
-            if (ip.size() > 0) {
-                hatches.add(hatcher);
-                iHatches.add(ip);
-            }
+            lines.add(hatcher);
             hatcher = hatcher.offset(gap);
             g += gap;
         }
+        Integer2DPolygon[] crossings = null;
+        if (method == HatchMethod.CONTOUR_CELLS) {
+            crossings = ContourCrossings.cross(grid, lines);
+        } else if (method == HatchMethod.PATTERN_MASKS) {
+            crossings = PatternMasks.cross(grid, lines, gap);
+        }
+        if (crossings == null) {
+            crossings = traverse(lines, maxLength);
+        }
+        for (int i = 0; i < crossings.length; i++) {
+            if (crossings[i].size() > 0) {
+                hatches.add(lines.get(i));
+                iHatches.add(crossings[i]);
+            }
+        }
+    }
+
+    private Integer2DPolygon[] traverse(final List<HalfPlane> lines, final double maxLength) {
+        final Integer2DPolygon[] result = new Integer2DPolygon[lines.size()];
+        GridBands.run(lines.size(), (int) (maxLength / pixelSize), 1, new GridBands.Action() {
+            @Override
+            public void run(final int band, final int start, final int end) {
+                for (int i = start; i < end; i++) {
+                    result[i] = hatch(lines.get(i));
+                }
+            }
+        });
+        return result;
     }
 
     /**
@@ -379,7 +453,7 @@ public class Hatcher {
      * solid areas. The point pairs are stored in a polygon, which should
      * consequently have an even number of points in it on return.
      */
-    private Integer2DPolygon hatch(final HalfPlane h) {
+    Integer2DPolygon hatch(final HalfPlane h) {
         final Integer2DPolygon result = new Integer2DPolygon(false);
 
         final Interval se = rectangle.realRectangle(pixelSize).wipe(h.pLine(), Interval.bigInterval());
@@ -395,22 +469,23 @@ public class Hatcher {
         }
         final DigitalDifferentialAnalyzer dda = new DigitalDifferentialAnalyzer(s, e);
 
-        Integer2DPoint n = dda.next();
-        Integer2DPoint nOld = n;
-        boolean v;
+        int xOld = s.getX();
+        int yOld = s.getY();
         boolean vs = false;
-        while (n != null) {
-            v = grid.get(n);
+        while (dda.step()) {
+            final int x = dda.getX();
+            final int y = dda.getY();
+            final boolean v = grid.get(x, y);
             if (v != vs) {
                 if (v) {
-                    result.add(n);
+                    result.add(x, y);
                 } else {
-                    result.add(nOld);
+                    result.add(xOld, yOld);
                 }
             }
             vs = v;
-            nOld = n;
-            n = dda.next();
+            xOld = x;
+            yOld = y;
         }
 
         if (grid.get(e)) {
@@ -425,56 +500,92 @@ public class Hatcher {
     }
 
     /**
-     * Run through the snakes, trying to join them up to make longer snakes
+     * Join each snake with later ones, as long as an edge leads from one of
+     * its ends to one of theirs. The ends of the later snakes are looked up in
+     * a SnakeEndIndex and tried nearest first, only the nearest few of them:
+     * the edge walks are what costs.
      */
     private void joinUpSnakes(final Integer2DPolygonList snakes, final List<HalfPlane> hatches, final double gap) {
-        if (hatches.size() <= 0) {
+        if (hatches.size() <= 0 || snakes.size() <= 1) {
             return;
         }
         final Point2D normal = hatches.get(0).normal();
+        final SnakeEndIndex ends = new SnakeEndIndex(snakes, rectangle.getSizeX(), rectangle.getSizeY(), Math.max(4,
+                (int) Math.ceil(2 * gap / pixelSize)));
+        final boolean[] gone = new boolean[snakes.size()];
+        final long[] nearest = new long[JOIN_CANDIDATES];
+        final long[] candidates = new long[2 * JOIN_CANDIDATES];
         for (int i = 0; i < snakes.size(); i++) {
-            do {
-                final Integer2DPolygon newSnake = joinUpSnake(snakes, hatches, gap, snakes.polygon(i), normal, i);
+            if (gone[i]) {
+                continue;
+            }
+            Integer2DPolygon snake = snakes.polygon(i);
+            while (true) {
+                final Integer2DPolygon newSnake = joinUpSnake(snakes, ends, gone, hatches, gap, snake, normal, i,
+                        nearest, candidates);
                 if (newSnake == null) {
                     break;
                 }
-                snakes.set(i, newSnake);
-            } while (true);
+                snake = newSnake;
+            }
+            snakes.set(i, snake);
+        }
+        for (int i = snakes.size() - 1; i >= 0; i--) {
+            if (gone[i]) {
+                snakes.remove(i);
+            }
         }
     }
 
-    private Integer2DPolygon joinUpSnake(final Integer2DPolygonList snakes, final List<HalfPlane> hatches, final double gap,
-            final Integer2DPolygon snake, final Point2D normal, final int index) {
-        for (int j = index + 1; j < snakes.size(); j++) {
-            final Integer2DPolygon secondSnake = snakes.polygon(j);
-            final Integer2DPolygon newSnake = joinUpTwoSnakes(hatches, snake, secondSnake, normal, gap);
+    private Integer2DPolygon joinUpSnake(final Integer2DPolygonList snakes, final SnakeEndIndex ends, final boolean[] gone,
+            final List<HalfPlane> hatches, final double gap, final Integer2DPolygon snake, final Point2D normal,
+            final int index, final long[] nearest, final long[] candidates) {
+        int count = 0;
+        for (int last = 0; last < 2; last++) {
+            final Integer2DPoint from = snake.point(last == 0 ? 0 : snake.size() - 1);
+            final int found = ends.nearest(from, index, gone, nearest);
+            for (int k = 0; k < found; k++) {
+                // the end of this snake goes into the lowest bit
+                candidates[count++] = nearest[k] << 1 | last;
+            }
+        }
+        Arrays.sort(candidates, 0, count);
+        for (int k = 0; k < count; k++) {
+            final boolean last = (candidates[k] & 1) != 0;
+            final int end = (int) (candidates[k] >>> 1 & Integer.MAX_VALUE);
+            final Integer2DPolygon newSnake = joinUpTwoSnakes(hatches, snake, last, snakes.polygon(end / 2),
+                    end % 2 != 0, normal, gap);
             if (newSnake != null) {
-                snakes.remove(j);
+                gone[end / 2] = true;
                 return newSnake;
             }
         }
         return null;
     }
 
+    /**
+     * Join the first or last end of snake to that of secondSnake if an edge
+     * leads from one to the other.
+     */
     private Integer2DPolygon joinUpTwoSnakes(final List<HalfPlane> hatches, final Integer2DPolygon snake,
-            final Integer2DPolygon secondSnake, final Point2D normal, final double gap) {
-        Integer2DPolygon track = getTrackIfNear(hatches, gap, snake.point(0), secondSnake.point(0), normal);
-        if (track != null) {
+            final boolean last, final Integer2DPolygon secondSnake, final boolean secondLast, final Point2D normal,
+            final double gap) {
+        final Integer2DPoint from = last ? snake.point(snake.size() - 1) : snake.point(0);
+        final Integer2DPoint to = secondLast ? secondSnake.point(secondSnake.size() - 1) : secondSnake.point(0);
+        final Integer2DPolygon track = getTrackIfNear(hatches, gap, from, to, normal);
+        if (track == null) {
+            return null;
+        }
+        if (!last && !secondLast) {
             return concatenate(snake.negate(), track, secondSnake);
         }
-        track = getTrackIfNear(hatches, gap, snake.point(0), secondSnake.point(secondSnake.size() - 1), normal);
-        if (track != null) {
+        if (!last) {
             return concatenate(secondSnake, track.negate(), snake);
         }
-        track = getTrackIfNear(hatches, gap, snake.point(snake.size() - 1), secondSnake.point(0), normal);
-        if (track != null) {
+        if (!secondLast) {
             return concatenate(snake, track, secondSnake);
         }
-        track = getTrackIfNear(hatches, gap, snake.point(snake.size() - 1), secondSnake.point(secondSnake.size() - 1), normal);
-        if (track != null) {
-            return concatenate(snake, track, secondSnake.negate());
-        }
-        return null;
+        return concatenate(snake, track, secondSnake.negate());
     }
 
     private static Integer2DPolygon concatenate(final Integer2DPolygon a, final Integer2DPolygon b, final Integer2DPolygon c) {
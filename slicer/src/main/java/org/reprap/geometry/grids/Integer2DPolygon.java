@@ -1,15 +1,17 @@
 package org.reprap.geometry.grids;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 import org.reprap.geometry.polygons.Polygon;
 
 /**
- * Integer-point polygon
+ * Integer-point polygon. The coordinates are packed into one growable array,
+ * x and y of each point next to each other, so building a polygon does not
+ * allocate a point object per vertex.
  */
 final class Integer2DPolygon {
-    private final List<Integer2DPoint> points = new ArrayList<Integer2DPoint>();
+    private int[] coordinates = new int[16];
+    private int size = 0;
     /**
      * Does the polygon loop back on itself?
      */
@@ -23,21 +25,49 @@ final class Integer2DPolygon {
      * Return the point at a given index
      */
     Integer2DPoint point(final int i) {
-        return points.get(i);
+        return new Integer2DPoint(getX(i), getY(i));
+    }
+
+    int getX(final int i) {
+        checkIndex(i);
+        return coordinates[2 * i];
+    }
+
+    int getY(final int i) {
+        checkIndex(i);
+        return coordinates[2 * i + 1];
+    }
+
+    private void checkIndex(final int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
     }
 
     /**
      * How many points?
      */
     int size() {
-        return points.size();
+        return size;
     }
 
     /**
      * Add a new point on the end
      */
     void add(final Integer2DPoint p) {
-        points.add(p);
+        add(p.getX(), p.getY());
+    }
+
+    /**
+     * Add a new point x, y on the end
+     */
+    void add(final int x, final int y) {
+        if (2 * size == coordinates.length) {
+            coordinates = Arrays.copyOf(coordinates, 2 * coordinates.length);
+        }
+        coordinates[2 * size] = x;
+        coordinates[2 * size + 1] = y;
+        size++;
     }
 
     /**
@@ -45,7 +75,7 @@ final class Integer2DPolygon {
      */
     void add(final Integer2DPolygon a) {
         for (int i = 0; i < a.size(); i++) {
-            add(a.point(i));
+            add(a.getX(i), a.getY(i));
         }
     }
 
@@ -53,7 +83,16 @@ final class Integer2DPolygon {
      * Delete a point and close the resulting gap
      */
     void remove(final int i) {
-        points.remove(i);
+        checkIndex(i);
+        System.arraycopy(coordinates, 2 * i + 2, coordinates, 2 * i, 2 * (size - i - 1));
+        size--;
+    }
+
+    /**
+     * Forget all points, keeping the space for reuse
+     */
+    void clear() {
+        size = 0;
     }
 
     /**
@@ -62,16 +101,16 @@ final class Integer2DPolygon {
      * search.
      */
     int nearest(final Integer2DPoint a, final long tooFar2) {
-        int i = 0;
         int j = -1;
         long d0 = tooFar2;
-        while (i < size()) {
-            final long d1 = point(i).sub(a).magnitude2();
+        for (int i = 0; i < size; i++) {
+            final long dx = getX(i) - a.getX();
+            final long dy = getY(i) - a.getY();
+            final long d1 = dx * dx + dy * dy;
             if (d1 < d0) {
                 j = i;
                 d0 = d1;
             }
-            i++;
         }
         return j;
     }
@@ -82,7 +121,7 @@ final class Integer2DPolygon {
     Integer2DPolygon negate() {
         final Integer2DPolygon result = new Integer2DPolygon(closed);
         for (int i = size() - 1; i >= 0; i--) {
-            result.add(point(i));
+            result.add(getX(i), getY(i));
         }
         return result;
     }
@@ -93,11 +132,21 @@ final class Integer2DPolygon {
     Integer2DPolygon translate(final Integer2DPoint t) {
         final Integer2DPolygon result = new Integer2DPolygon(closed);
         for (int i = 0; i < size(); i++) {
-            result.add(point(i).add(t));
+            result.add(getX(i) + t.getX(), getY(i) + t.getY());
         }
         return result;
     }
 
+    /**
+     * A copy that holds just as much space as it needs
+     */
+    Integer2DPolygon copy() {
+        final Integer2DPolygon result = new Integer2DPolygon(closed);
+        result.coordinates = Arrays.copyOf(coordinates, Math.max(2, 2 * size));
+        result.size = size;
+        return result;
+    }
+
     /**
      * Find the farthest point from point v1 on the polygon such that the
      * polygon between the two can be approximated by a DDA straight line from
@@ -106,22 +155,22 @@ final class Integer2DPolygon {
     private int findAngleStart(final int v1) {
         int top = size() - 1;
         int bottom = v1;
-        final Integer2DPoint p1 = point(v1);
         int offCount = 0;
         while (top - bottom > 1) {
             final int middle = (bottom + top) / 2;
-            final DigitalDifferentialAnalyzer line = new DigitalDifferentialAnalyzer(p1, point(middle));
-            Integer2DPoint n = line.next();
+            final DigitalDifferentialAnalyzer line = new DigitalDifferentialAnalyzer(getX(v1), getY(v1), getX(middle),
+                    getY(middle));
+            boolean more = line.step();
             offCount = 0;
             int j = v1;
 
-            while (j <= middle && n != null && offCount < 2) {
-                if (point(j).coincidesWith(n)) {
+            while (j <= middle && more && offCount < 2) {
+                if (getX(j) == line.getX() && getY(j) == line.getY()) {
                     offCount = 0;
                 } else {
                     offCount++;
                 }
-                n = line.next();
+                more = line.step();
                 j++;
             }
 
@@ -150,10 +199,10 @@ final class Integer2DPolygon {
         final Integer2DPolygon r = new Integer2DPolygon(closed);
         int v = 0;
         do {
-            r.add(point(v));
+            r.add(getX(v), getY(v));
             v = findAngleStart(v);
         } while (v < size() - 1);
-        r.add(point(v));
+        r.add(getX(v), getY(v));
         return r;
     }
 
@@ -163,9 +212,8 @@ final class Integer2DPolygon {
     Polygon realPolygon(final String material, final Integer2DRectangle rec, final double pixelSize) {
         final Polygon result = new Polygon(material, closed);
         for (int i = 0; i < size(); i++) {
-            final Integer2DPoint r = point(i);
-            result.add(rec.realPoint(r, pixelSize));
+            result.add(rec.realPoint(point(i), pixelSize));
         }
         return result;
     }
-}
\ No newline at end of file
+}
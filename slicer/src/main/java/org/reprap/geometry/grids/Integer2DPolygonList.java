@@ -90,15 +90,4 @@ final class Integer2DPolygonList {
         }
         return result;
     }
-
-    /**
-     * Simplify all the polygons
-     */
-    Integer2DPolygonList simplify() {
-        final Integer2DPolygonList result = new Integer2DPolygonList();
-        for (int i = 0; i < size(); i++) {
-            result.add(polygon(i).simplify());
-        }
-        return result;
-    }
 }
\ No newline at end of file
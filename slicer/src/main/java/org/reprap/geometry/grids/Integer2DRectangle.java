@@ -87,8 +87,8 @@ final class Integer2DRectangle {
     Integer2DRectangle union(final Integer2DRectangle b) {
         final int swX = Math.min(swCorner.getX(), b.swCorner.getX());
         final int swY = Math.min(swCorner.getY(), b.swCorner.getY());
-        final int neX = Math.max(swX + getSizeX() - 1, b.swCorner.getX() + b.getSizeX() - 1);
-        final int neY = Math.max(swY + getSizeY() - 1, b.swCorner.getY() + b.getSizeY() - 1);
+        final int neX = Math.max(swCorner.getX() + getSizeX() - 1, b.swCorner.getX() + b.getSizeX() - 1);
+        final int neY = Math.max(swCorner.getY() + getSizeY() - 1, b.swCorner.getY() + b.getSizeY() - 1);
         return new Integer2DRectangle(new Integer2DPoint(swX, swY), new Integer2DPoint(neX, neY));
     }
 
@@ -98,8 +98,8 @@ final class Integer2DRectangle {
     Integer2DRectangle intersection(final Integer2DRectangle b) {
         final int swX = Math.max(swCorner.getX(), b.swCorner.getX());
         final int swY = Math.max(swCorner.getY(), b.swCorner.getY());
-        final int neX = Math.min(swX + getSizeX() - 1, b.swCorner.getX() + b.getSizeX() - 1);
-        final int neY = Math.min(swY + getSizeY() - 1, b.swCorner.getY() + b.getSizeY() - 1);
+        final int neX = Math.min(swCorner.getX() + getSizeX() - 1, b.swCorner.getX() + b.getSizeX() - 1);
+        final int neY = Math.min(swCorner.getY() + getSizeY() - 1, b.swCorner.getY() + b.getSizeY() - 1);
         return new Integer2DRectangle(new Integer2DPoint(swX, swY), new Integer2DPoint(neX, neY));
     }
 
@@ -122,6 +122,14 @@ final class Integer2DRectangle {
         return new Point2D(scale(swCorner.getX() + point.getX(), pixelSize), scale(swCorner.getY() + point.getY(), pixelSize));
     }
 
+    /**
+     * Convert a point given in pixels relative to this rectangle to the real
+     * world
+     */
+    Point2D realPoint(final double x, final double y, final double pixelSize) {
+        return new Point2D((swCorner.getX() + x) * pixelSize, (swCorner.getY() + y) * pixelSize);
+    }
+
     /**
      * Convert real-world point to integer relative to this rectangle
      */
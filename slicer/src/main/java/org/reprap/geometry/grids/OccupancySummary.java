@@ -0,0 +1,134 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Two levels of occupancy bits over the blocks of a pixel store: a block bit
+ * for each block and a summary bit for each 64 blocks. A clear bit
+ * guarantees that all pixels below it are air. A set bit only means they may
+ * not be: stores set bits as soon as they write a non-zero word and clear them
+ * again when they look at the block and find it empty. Bits are set with
+ * compare and swap, as bands of a grid that are written in parallel share
+ * words of the summary.
+ */
+final class OccupancySummary {
+    private final AtomicLongArray blocks;
+    private final AtomicLongArray summary;
+
+    OccupancySummary(final int blockCount) {
+        final int words = (blockCount + Long.SIZE - 1) / Long.SIZE;
+        blocks = new AtomicLongArray(words);
+        summary = new AtomicLongArray((words + Long.SIZE - 1) / Long.SIZE);
+    }
+
+    private OccupancySummary(final OccupancySummary other) {
+        this(other.blocks.length() * Long.SIZE);
+        copyFrom(other);
+    }
+
+    OccupancySummary copy() {
+        return new OccupancySummary(this);
+    }
+
+    void copyFrom(final OccupancySummary other) {
+        for (int i = 0; i < blocks.length(); i++) {
+            blocks.set(i, other.blocks.get(i));
+        }
+        for (int i = 0; i < summary.length(); i++) {
+            summary.set(i, other.summary.get(i));
+        }
+    }
+
+    /**
+     * Safe to call from tasks that write to the same store concurrently.
+     */
+    void mark(final int block) {
+        final int i = block >>> 6;
+        if (setBit(blocks, i, 1L << block)) {
+            setBit(summary, i >>> 6, 1L << i);
+        }
+    }
+
+    /**
+     * Set the bits of mask in word i, true if they were not all set before.
+     */
+    private static boolean setBit(final AtomicLongArray words, final int i, final long mask) {
+        long word = words.get(i);
+        while ((word & mask) != mask) {
+            if (words.compareAndSet(i, word, word | mask)) {
+                return true;
+            }
+            word = words.get(i);
+        }
+        return false;
+    }
+
+    /**
+     * Must not run concurrently with mark.
+     */
+    void clear(final int block) {
+        final int i = block >>> 6;
+        final long word = blocks.get(i) & ~(1L << block);
+        blocks.set(i, word);
+        if (word == 0) {
+            summary.set(i >>> 6, summary.get(i >>> 6) & ~(1L << i));
+        }
+    }
+
+    boolean isMarked(final int block) {
+        return (blocks.get(block >>> 6) & 1L << block) != 0;
+    }
+
+    /**
+     * The first marked block at or after from, or -1 if there is none. Words
+     * of blocks without marks are skipped through the summary.
+     */
+    int nextMarked(final int from) {
+        int i = from >>> 6;
+        if (i >= blocks.length()) {
+            return -1;
+        }
+        long word = blocks.get(i) & -1L << from;
+        while (word == 0) {
+            i = nextMarkedWord(i + 1);
+            if (i < 0) {
+                return -1;
+            }
+            word = blocks.get(i);
+        }
+        return i * Long.SIZE + Long.numberOfTrailingZeros(word);
+    }
+
+    private int nextMarkedWord(final int from) {
+        int s = from >>> 6;
+        if (s >= summary.length()) {
+            return -1;
+        }
+        long word = summary.get(s) & -1L << from;
+        while (word == 0) {
+            if (++s >= summary.length()) {
+                return -1;
+            }
+            word = summary.get(s);
+        }
+        return s * Long.SIZE + Long.numberOfTrailingZeros(word);
+    }
+}
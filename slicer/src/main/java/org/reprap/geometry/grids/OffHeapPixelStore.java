@@ -0,0 +1,160 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+import org.reprap.configuration.BitmapStorage;
+
+/**
+ * Stores the columns of a grid like the DensePixelStore, but in a direct
+ * buffer outside of the Java heap, so many layer sized grids held at once do
+ * not make the garbage collector copy and scan them. The buffer is freed by
+ * release(), or by the garbage collector when the store is dropped without.
+ */
+final class OffHeapPixelStore extends PixelStore {
+    private static final int BLOCK_WIDTH = Long.SIZE;
+
+    private ByteBuffer buffer;
+    private LongBuffer words;
+    private final OccupancySummary occupied;
+
+    OffHeapPixelStore(final int sizeX, final int sizeY) {
+        super(sizeX, sizeY);
+        buffer = DirectMemory.allocate((long) sizeX * getStride() * (Long.SIZE / Byte.SIZE));
+        words = buffer.asLongBuffer();
+        occupied = new OccupancySummary(blocksX() * getStride());
+    }
+
+    private OffHeapPixelStore(final OffHeapPixelStore other) {
+        this(other.getSizeX(), other.getSizeY());
+        copyWords(other);
+    }
+
+    private void copyWords(final OffHeapPixelStore other) {
+        final LongBuffer source = other.words.duplicate();
+        source.clear();
+        words.clear();
+        words.put(source);
+        occupied.copyFrom(other.occupied);
+    }
+
+    private int blocksX() {
+        return (getSizeX() + BLOCK_WIDTH - 1) / BLOCK_WIDTH;
+    }
+
+    private int block(final int x, final int w) {
+        return x / BLOCK_WIDTH * getStride() + w;
+    }
+
+    @Override
+    long getWord(final int x, final int w) {
+        return words.get(x * getStride() + w);
+    }
+
+    @Override
+    void setWord(final int x, final int w, final long value) {
+        words.put(x * getStride() + w, value);
+        if (value != 0) {
+            occupied.mark(block(x, w));
+        }
+    }
+
+    @Override
+    boolean mayBeSet(final int x, final int w) {
+        return occupied.isMarked(block(x, w));
+    }
+
+    @Override
+    boolean isEmpty() {
+        for (int b = occupied.nextMarked(0); b >= 0; b = occupied.nextMarked(b + 1)) {
+            if (!isBlockEmpty(b)) {
+                return false;
+            }
+            occupied.clear(b);
+        }
+        return true;
+    }
+
+    private boolean isBlockEmpty(final int block) {
+        final int stride = getStride();
+        final int w = block % stride;
+        final int x0 = block / stride * BLOCK_WIDTH;
+        final int x1 = Math.min(x0 + BLOCK_WIDTH, getSizeX());
+        for (int i = x0 * stride + w; i < x1 * stride; i += stride) {
+            if (words.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    PixelStore copy() {
+        return new OffHeapPixelStore(this);
+    }
+
+    @Override
+    PixelStore create(final int newSizeX, final int newSizeY) {
+        return new OffHeapPixelStore(newSizeX, newSizeY);
+    }
+
+    @Override
+    int getColumnAlignment() {
+        return BLOCK_WIDTH;
+    }
+
+    @Override
+    BitmapStorage getStorage() {
+        return BitmapStorage.OFF_HEAP;
+    }
+
+    /**
+     * Clear the marks of blocks that turned out to be air, sweeping all
+     * marked blocks.
+     */
+    @Override
+    void compact() {
+        for (int b = occupied.nextMarked(0); b >= 0; b = occupied.nextMarked(b + 1)) {
+            if (isBlockEmpty(b)) {
+                occupied.clear(b);
+            }
+        }
+    }
+
+    @Override
+    void combine(final PixelStore other, final Operation operation) {
+        if (operation == Operation.COPY && other instanceof OffHeapPixelStore) {
+            copyWords((OffHeapPixelStore) other);
+            return;
+        }
+        super.combine(other, operation);
+        compact();
+    }
+
+    @Override
+    void release() {
+        if (buffer != null) {
+            words = null;
+            DirectMemory.free(buffer);
+            buffer = null;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.reprap.geometry.polygons.HalfPlane;
+import org.reprap.geometry.polygons.Point2D;
+
+/**
+ * The hatch lines of one direction, spacing and phase rasterized once, so the
+ * infill of every region and layer using them is just their AND with the
+ * region. The lines lie at the same places in every layer: Hatcher puts them
+ * at whole multiples of the spacing from the origin of the world. So the
+ * masks are kept for the whole job, over a window of the world that grows
+ * with the regions asked for, until clear() is called at its end.
+ * 
+ * A line is rasterized with one pixel in every column, or every row if it is
+ * steep, and a second mask marks the pixels after which it steps sideways.
+ * With it the pixel following each pixel along its line is found for whole
+ * words of pixels, so the ends of the solid runs of all lines come out of a
+ * few word operations per word of the region. The runs are then sorted to
+ * their lines. The pixels are rounded from the lines rather than traversed
+ * from the edges of the region like Hatcher does, the ends of a hatch may be
+ * a pixel off the traversal.
+ */
+public final class PatternMasks {
+    /**
+     * Lines closer than this many pixels are traversed instead: the pixels of
+     * neighbouring lines must not touch.
+     */
+    private static final double MIN_SPACING = 3;
+    private static final int MAX_MASKS = 8;
+    /**
+     * A mask that has to grow grows by this many pixels more on every side
+     */
+    private static final int MARGIN = 64;
+    private static final Map<Family, PatternMasks> MASKS = new LinkedHashMap<Family, PatternMasks>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Family, PatternMasks> eldest) {
+            return size() > MAX_MASKS;
+        }
+    };
+
+    /**
+     * The lines with normal n where n * p == k * gap - phase for whole k
+     */
+    private static final class Family {
+        private final double normalX;
+        private final double normalY;
+        private final double gap;
+        private final double pixelSize;
+        /**
+         * The phase in millionths of the gap, so rounding errors in placing
+         * the first line do not make a new family.
+         */
+        private final long phase;
+
+        Family(final HalfPlane line, final double gap, final double pixelSize) {
+            normalX = line.normal().x();
+            normalY = line.normal().y();
+            this.gap = gap;
+            this.pixelSize = pixelSize;
+            final double offset = line.value(new Point2D(0, 0));
+            phase = Math.round((offset / gap - Math.floor(offset / gap)) * 1e6) % 1000000;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof Family)) {
+                return false;
+            }
+            final Family family = (Family) other;
+            return normalX == family.normalX && normalY == family.normalY && gap == family.gap
+                    && pixelSize == family.pixelSize && phase == family.phase;
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(normalX);
+            bits = 31 * bits + Double.doubleToLongBits(normalY);
+            bits = 31 * bits + Double.doubleToLongBits(gap);
+            bits = 31 * bits + Double.doubleToLongBits(pixelSize);
+            bits = 31 * bits + phase;
+            return (int) (bits ^ bits >>> 32);
+        }
+    }
+
+    private final Family family;
+    /**
+     * The pixels of the lines, and those after which a line steps sideways
+     */
+    private final BooleanGrid lines;
+    private final BooleanGrid steps;
+    /**
+     * The offsets from a pixel to the next one along its line, without and
+     * with a step sideways.
+     */
+    private final int straightX;
+    private final int straightY;
+    private final int stepX;
+    private final int stepY;
+
+    private PatternMasks(final Family family, final Integer2DRectangle window) {
+        this.family = family;
+        lines = new BooleanGrid(family.pixelSize, "pattern", window);
+        steps = new BooleanGrid(family.pixelSize, "pattern", window);
+        final boolean rows = Math.abs(family.normalY) >= Math.abs(family.normalX);
+        final int side = family.normalX * family.normalY <= 0 ? 1 : -1;
+        straightX = rows ? 1 : 0;
+        straightY = rows ? 0 : 1;
+        stepX = rows ? 1 : side;
+        stepY = rows ? side : 1;
+        rasterize(rows);
+    }
+
+    /**
+     * Put one pixel of every line into each column, or each row for steep
+     * lines, the pixel the line runs through.
+     */
+    private void rasterize(final boolean rows) {
+        final Integer2DRectangle window = lines.getRectangle();
+        final double pixelSize = family.pixelSize;
+        final int x0 = window.getSwCorner().getX();
+        final int y0 = window.getSwCorner().getY();
+        final int sizeX = window.getSizeX();
+        final int sizeY = window.getSizeY();
+        final double across = rows ? family.normalY : family.normalX;
+        final double along = rows ? family.normalX : family.normalY;
+        final int count = rows ? sizeX : sizeY;
+        final int first = rows ? x0 : y0;
+        final int low = rows ? y0 : x0;
+        final int size = rows ? sizeY : sizeX;
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        for (final int x : new int[] { x0, x0 + sizeX - 1 }) {
+            for (final int y : new int[] { y0, y0 + sizeY - 1 }) {
+                final double value = (family.normalX * x + family.normalY * y) * pixelSize;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+        }
+        final double phase = family.phase * 1e-6 * family.gap;
+        final long kMin = (long) Math.floor((min + phase) / family.gap) - 1;
+        final long kMax = (long) Math.ceil((max + phase) / family.gap) + 1;
+        for (long k = kMin; k <= kMax; k++) {
+            final double value = k * family.gap - phase;
+            int previous = 0;
+            for (int i = 0; i <= count; i++) {
+                final int c = first + i;
+                final int pixel = (int) Math.floor((value - along * c * pixelSize) / (across * pixelSize) + 0.5) - low;
+                if (i > 0 && pixel != previous && previous >= 0 && previous < size) {
+                    set(steps, rows, i - 1, previous);
+                }
+                if (i < count && pixel >= 0 && pixel < size) {
+                    set(lines, rows, i, pixel);
+                }
+                previous = pixel;
+            }
+        }
+    }
+
+    private static void set(final BooleanGrid grid, final boolean rows, final int i, final int pixel) {
+        if (rows) {
+            grid.setColumn(i, pixel, pixel, true);
+        } else {
+            grid.setColumn(pixel, i, i, true);
+        }
+    }
+
+    /**
+     * Forget all masks, when the job is done.
+     */
+    public static synchronized void clear() {
+        MASKS.clear();
+    }
+
+    /**
+     * The mask of the family of lines covering the grid, made or grown if
+     * need be.
+     */
+    private static synchronized PatternMasks get(final Family family, final Integer2DRectangle wanted) {
+        PatternMasks result = MASKS.get(family);
+        if (result == null || !covers(result.lines.getRectangle(), wanted)) {
+            final Integer2DRectangle window = result == null ? wanted : result.lines.getRectangle().union(wanted);
+            result = new PatternMasks(family, window.offset(MARGIN));
+            MASKS.put(family, result);
+        }
+        return result;
+    }
+
+    private static boolean covers(final Integer2DRectangle window, final Integer2DRectangle wanted) {
+        return window.intersection(wanted).coincidesWith(wanted);
+    }
+
+    /**
+     * The entry and exit pixels of the solid spans of each of the equally
+     * spaced lines, in pairs along the line, like the traversal in Hatcher.
+     * Null if the lines are too close for a mask.
+     */
+    static Integer2DPolygon[] cross(final BooleanGrid grid, final List<HalfPlane> lines, final double gap) {
+        final double pixelSize = grid.getPixelSize();
+        if (lines.isEmpty() || gap < MIN_SPACING * pixelSize) {
+            return null;
+        }
+        final HalfPlane first = lines.get(0);
+        final PatternMasks mask = get(new Family(first, gap, pixelSize), grid.getRectangle());
+        return mask.cross(grid, first, lines.size());
+    }
+
+    private Integer2DPolygon[] cross(final BooleanGrid grid, final HalfPlane first, final int lineCount) {
+        final Integer2DRectangle rectangle = grid.getRectangle();
+        final int dx = rectangle.getSwCorner().getX() - lines.getRectangle().getSwCorner().getX();
+        final int dy = rectangle.getSwCorner().getY() - lines.getRectangle().getSwCorner().getY();
+        // the line index as an affine function of the pixel coordinates
+        final double pixelSize = family.pixelSize;
+        final Point2D origin = rectangle.realPoint(0, 0, pixelSize);
+        final double u0 = first.value(origin) / family.gap;
+        final double ux = family.normalX * pixelSize / family.gap;
+        final double uy = family.normalY * pixelSize / family.gap;
+        final Point2D direction = Point2D.sub(first.pLine().point(1), first.pLine().origin());
+
+        int[] ends = new int[3 * 64];
+        int endCount = 0;
+        final int sizeX = rectangle.getSizeX();
+        final int stride = grid.getStride();
+        for (int x = 0; x < sizeX; x++) {
+            for (int w = 0; w < stride; w++) {
+                if (grid.getWord(x, w) == 0) {
+                    continue;
+                }
+                final int y = w * Long.SIZE;
+                final long here = solid(grid, x, y, dx, dy);
+                if (here == 0) {
+                    continue;
+                }
+                final long step = bits(steps, x + dx, y + dy);
+                final long next = solid(grid, x + straightX, y + straightY, dx, dy) & ~step
+                        | solid(grid, x + stepX, y + stepY, dx, dy) & step;
+                final long previous = solid(grid, x - straightX, y - straightY, dx, dy)
+                        & ~bits(steps, x - straightX + dx, y - straightY + dy)
+                        | solid(grid, x - stepX, y - stepY, dx, dy) & bits(steps, x - stepX + dx, y - stepY + dy);
+                long found = here & (~next | ~previous);
+                while (found != 0) {
+                    final int bit = Long.numberOfTrailingZeros(found);
+                    found &= found - 1;
+                    final int line = (int) Math.floor(u0 + ux * x + uy * (y + bit) + 0.5);
+                    if (line < 0 || line >= lineCount) {
+                        continue;
+                    }
+                    final int copies = (int) ((~next >>> bit & 1) + (~previous >>> bit & 1));
+                    if (3 * (endCount + 2) > ends.length) {
+                        ends = Arrays.copyOf(ends, 2 * ends.length);
+                    }
+                    for (int c = 0; c < copies; c++) {
+                        ends[3 * endCount] = line;
+                        ends[3 * endCount + 1] = x;
+                        ends[3 * endCount + 2] = y + bit;
+                        endCount++;
+                    }
+                }
+            }
+        }
+        return spans(ends, endCount, lineCount, direction);
+    }
+
+    /**
+     * Sort the ends of the runs to their lines and along them.
+     */
+    private static Integer2DPolygon[] spans(final int[] ends, final int endCount, final int lineCount,
+            final Point2D direction) {
+        final int[] start = new int[lineCount + 1];
+        for (int e = 0; e < endCount; e++) {
+            start[ends[3 * e] + 1]++;
+        }
+        for (int i = 0; i < lineCount; i++) {
+            start[i + 1] += start[i];
+        }
+        final int[] next = new int[lineCount];
+        System.arraycopy(start, 0, next, 0, lineCount);
+        final int[] points = new int[2 * endCount];
+        for (int e = 0; e < endCount; e++) {
+            final int k = 2 * next[ends[3 * e]]++;
+            points[k] = ends[3 * e + 1];
+            points[k + 1] = ends[3 * e + 2];
+        }
+        final Integer2DPolygon[] result = new Integer2DPolygon[lineCount];
+        for (int i = 0; i < lineCount; i++) {
+            sortAlong(points, start[i], start[i + 1], direction);
+            result[i] = new Integer2DPolygon(false);
+            for (int k = start[i]; k < start[i + 1]; k++) {
+                result[i].add(points[2 * k], points[2 * k + 1]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Insertion sort of the points from "from" to "to" along direction, there
+     * are few on every line.
+     */
+    private static void sortAlong(final int[] points, final int from, final int to, final Point2D direction) {
+        for (int k = from + 1; k < to; k++) {
+            final int x = points[2 * k];
+            final int y = points[2 * k + 1];
+            final double t = x * direction.x() + y * direction.y();
+            int j = k - 1;
+            while (j >= from && points[2 * j] * direction.x() + points[2 * j + 1] * direction.y() > t) {
+                points[2 * j + 2] = points[2 * j];
+                points[2 * j + 3] = points[2 * j + 1];
+                j--;
+            }
+            points[2 * j + 2] = x;
+            points[2 * j + 3] = y;
+        }
+    }
+
+    /**
+     * The 64 pixels of the grid from x, y up that lie on lines
+     */
+    private long solid(final BooleanGrid grid, final int x, final int y, final int dx, final int dy) {
+        final long result = bits(grid, x, y);
+        if (result == 0) {
+            return 0;
+        }
+        return result & bits(lines, x + dx, y + dy);
+    }
+
+    /**
+     * The 64 pixels from x, y up in column x, air outside of the grid
+     */
+    private static long bits(final BooleanGrid grid, final int x, final int y) {
+        final Integer2DRectangle rectangle = grid.getRectangle();
+        if (x < 0 || x >= rectangle.getSizeX() || y >= rectangle.getSizeY() || y <= -Long.SIZE) {
+            return 0;
+        }
+        if (y < 0) {
+            return grid.getWord(x, 0) << -y;
+        }
+        final int w = y / Long.SIZE;
+        final int offset = y % Long.SIZE;
+        long result = grid.getWord(x, w) >>> offset;
+        if (offset != 0 && w + 1 < grid.getStride()) {
+            result |= grid.getWord(x, w + 1) << Long.SIZE - offset;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,231 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import org.reprap.configuration.BitmapStorage;
+
+/**
+ * Holds the pixels of a BooleanGrid as columns of words. Each column (fixed
+ * x) starts on a word boundary and holds its y values in ascending bit order.
+ * Bits beyond the height of the grid are always clear.
+ */
+abstract class PixelStore {
+    enum Operation {
+        COPY, OR, AND_NOT, AND
+    }
+
+    private final int sizeX;
+    private final int sizeY;
+    /**
+     * Number of words per column
+     */
+    private final int stride;
+
+    PixelStore(final int sizeX, final int sizeY) {
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        stride = (sizeY + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /**
+     * Word w of column x
+     */
+    abstract long getWord(int x, int w);
+
+    /**
+     * Replace word w of column x. Bits beyond the height of the grid must be
+     * clear.
+     */
+    abstract void setWord(int x, int w, long value);
+
+    abstract boolean isEmpty();
+
+    /**
+     * False if word w is air in all columns of the block of 64 columns that
+     * holds column x. True does not promise any solid pixel.
+     */
+    abstract boolean mayBeSet(int x, int w);
+
+    abstract PixelStore copy();
+
+    /**
+     * A new, empty store of the same kind.
+     */
+    abstract PixelStore create(int newSizeX, int newSizeY);
+
+    /**
+     * The kind of this store
+     */
+    abstract BitmapStorage getStorage();
+
+    /**
+     * Columns painted concurrently must not share this many columns starting
+     * at a multiple of it.
+     */
+    abstract int getColumnAlignment();
+
+    /**
+     * Combine a store of the same size into this one, word by word.
+     */
+    void combine(final PixelStore other, final Operation operation) {
+        combine(other, operation, 0, sizeX);
+    }
+
+    /**
+     * Combine only the columns from x0 to x1 (excluding x1), where x0 is a
+     * multiple of the column alignment. Disjoint ranges may be combined
+     * concurrently, so stores tidy up in compact(), not here.
+     */
+    void combine(final PixelStore other, final Operation operation, final int x0, final int x1) {
+        final boolean skipAir = operation == Operation.OR || operation == Operation.AND_NOT;
+        for (int x = x0; x < x1; x++) {
+            for (int w = 0; w < stride; w++) {
+                if (skipAir && !other.mayBeSet(x, w)) {
+                    continue;
+                }
+                setWord(x, w, combine(getWord(x, w), other.getWord(x, w), operation));
+            }
+        }
+    }
+
+    /**
+     * Called after bulk modifications, so that the store can tidy up.
+     */
+    void compact() {
+    }
+
+    /**
+     * Give back memory that the garbage collector would not free promptly.
+     * The store must not be used afterwards.
+     */
+    void release() {
+    }
+
+    static long combine(final long target, final long source, final Operation operation) {
+        switch (operation) {
+        case COPY:
+            return source;
+        case OR:
+            return target | source;
+        case AND_NOT:
+            return target & ~source;
+        case AND:
+            return target & source;
+        default:
+            throw new IllegalArgumentException("unknown operation " + operation);
+        }
+    }
+
+    boolean get(final int x, final int y) {
+        return (getWord(x, y / Long.SIZE) & 1L << y) != 0;
+    }
+
+    /**
+     * Set the pixels from y0 to y1 (both inclusive) in column x to v
+     */
+    void setColumn(final int x, final int y0, final int y1, final boolean v) {
+        final int firstWord = y0 / Long.SIZE;
+        final int lastWord = y1 / Long.SIZE;
+        final long firstMask = -1L << y0;
+        final long lastMask = -1L >>> (Long.SIZE - 1 - y1 % Long.SIZE);
+        if (firstWord == lastWord) {
+            setMasked(x, firstWord, firstMask & lastMask, v);
+            return;
+        }
+        setMasked(x, firstWord, firstMask, v);
+        for (int w = firstWord + 1; w < lastWord; w++) {
+            setWord(x, w, v ? -1L : 0L);
+        }
+        setMasked(x, lastWord, lastMask, v);
+    }
+
+    private void setMasked(final int x, final int w, final long mask, final boolean v) {
+        final long word = getWord(x, w);
+        if (v) {
+            setWord(x, w, word | mask);
+        } else {
+            setWord(x, w, word & ~mask);
+        }
+    }
+
+    /**
+     * Read n (at most 64) bits of column x starting at y. The result is right
+     * aligned, bits above n are undefined.
+     */
+    long readBits(final int x, final int y, final int n) {
+        final int w = y / Long.SIZE;
+        final int offset = y % Long.SIZE;
+        long result = getWord(x, w) >>> offset;
+        if (offset != 0 && n > Long.SIZE - offset) {
+            result |= getWord(x, w + 1) << (Long.SIZE - offset);
+        }
+        return result;
+    }
+
+    /**
+     * Combine length bits of column sourceX of source starting at sourceY into
+     * column x of this store starting at y.
+     */
+    void combineBits(final int x, int y, final PixelStore source, final int sourceX, int sourceY, int length,
+            final Operation operation) {
+        final boolean skipAir = operation == Operation.OR || operation == Operation.AND_NOT;
+        while (length > 0) {
+            final int w = y / Long.SIZE;
+            final int offset = y % Long.SIZE;
+            final int n = Math.min(Long.SIZE - offset, length);
+            if (skipAir && !source.mayBeSet(sourceX, sourceY / Long.SIZE)
+                    && !source.mayBeSet(sourceX, (sourceY + n - 1) / Long.SIZE)) {
+                y += n;
+                sourceY += n;
+                length -= n;
+                continue;
+            }
+            final long mask = (n == Long.SIZE ? -1L : (1L << n) - 1) << offset;
+            final long bits = source.readBits(sourceX, sourceY, n) << offset;
+            final long word = getWord(x, w);
+            final long combined = combine(word, bits, operation);
+            setWord(x, w, word & ~mask | combined & mask);
+            y += n;
+            sourceY += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * The bits of word w that lie inside the grid.
+     */
+    long validBits(final int w) {
+        if (w < stride - 1 || sizeY % Long.SIZE == 0) {
+            return -1L;
+        }
+        return (1L << sizeY % Long.SIZE) - 1;
+    }
+
+    int getSizeX() {
+        return sizeX;
+    }
+
+    int getSizeY() {
+        return sizeY;
+    }
+
+    int getStride() {
+        return stride;
+    }
+}
@@ -0,0 +1,73 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+/**
+ * The bitmap kernels in plain Java, a word at a time.
+ */
+final class ScalarBitmapKernels extends BitmapKernels {
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+
+    @Override
+    public void or(final long[] target, final int targetOffset, final long[] source, final int sourceOffset,
+            final int length) {
+        for (int i = 0; i < length; i++) {
+            target[targetOffset + i] |= source[sourceOffset + i];
+        }
+    }
+
+    @Override
+    public void and(final long[] target, final int targetOffset, final long[] source, final int sourceOffset,
+            final int length) {
+        for (int i = 0; i < length; i++) {
+            target[targetOffset + i] &= source[sourceOffset + i];
+        }
+    }
+
+    @Override
+    public void andNot(final long[] target, final int targetOffset, final long[] source, final int sourceOffset,
+            final int length) {
+        for (int i = 0; i < length; i++) {
+            target[targetOffset + i] &= ~source[sourceOffset + i];
+        }
+    }
+
+    @Override
+    public void spread(final long[] words, final int from, final int to, final int length, final long lastValid,
+            final boolean grow) {
+        for (int w = 0; w < length; w++) {
+            final long word = words[from + w];
+            final long below = w > 0 ? words[from + w - 1] : 0;
+            final long above = w < length - 1 ? words[from + w + 1] : 0;
+            final long up = word << 1 | below >>> (Long.SIZE - 1);
+            final long down = word >>> 1 | above << (Long.SIZE - 1);
+            if (grow) {
+                words[to + w] = word | up | down;
+            } else {
+                words[to + w] = word & up & down;
+            }
+        }
+        if (grow && length > 0) {
+            words[to + length - 1] &= lastValid;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import org.reprap.configuration.BitmapStorage;
+
+/**
+ * The bitmaps of one material of an object in all layers, stacked, to find
+ * its top and bottom skins in one go. A pixel of a layer is skin if one of
+ * the shells layers above or below it is air there, and it has nothing below
+ * it if one of the layers below is. Along each word of pixels through the
+ * layers that is a sliding AND of the words of the neighbouring layers, done
+ * for all layers with a few word operations per layer whatever the number of
+ * shells: the AND of a window is that of the suffix of the block of shells
+ * layers it starts in and the prefix of the block it ends in (van Herk and
+ * Gil-Werman). Layers outside the stack count as air.
+ * 
+ * The words of the stack are kept on the heap, one array per layer that has
+ * pixels set, so the stack takes about as much memory as the bitmaps of all
+ * its layers. The classification runs on bands of columns in parallel and
+ * replaces the bitmaps by the skins.
+ */
+public final class SkinStack {
+    private final String material;
+    private final int shells;
+    private final boolean keepUnsupported;
+    /**
+     * The words of each layer, column by column as in the grids, null where
+     * there is nothing. The bitmaps until classify(), the skins after.
+     */
+    private final long[][] skins;
+    private final long[][] unsupported;
+    private final boolean[] released;
+    private double pixelSize;
+    private BitmapStorage storage;
+    private Integer2DRectangle rectangle;
+    private int stride;
+    private boolean classified;
+
+    /**
+     * A stack of layers with shells layers of skin. The pixels with nothing
+     * below are only kept if keepUnsupported is true.
+     */
+    public SkinStack(final String material, final int layers, final int shells, final boolean keepUnsupported) {
+        this.material = material;
+        this.shells = Math.max(1, shells);
+        this.keepUnsupported = keepUnsupported;
+        skins = new long[layers][];
+        unsupported = keepUnsupported ? new long[layers][] : null;
+        released = new boolean[layers];
+    }
+
+    public int getLayers() {
+        return skins.length;
+    }
+
+    /**
+     * Add the pixels of the grid to the layer. All grids of a stack must have
+     * the pixel size of the first, grids with other rectangles are aligned to
+     * its rectangle. The skins are kept in the kind of storage of the first.
+     */
+    public void add(final int layer, final BooleanGrid grid) {
+        if (classified) {
+            throw new IllegalStateException("stack of " + material + " already classified");
+        }
+        if (grid == BooleanGrid.NOTHING_THERE || grid.isEmpty()) {
+            return;
+        }
+        BooleanGrid aligned = grid;
+        if (rectangle == null) {
+            pixelSize = grid.getPixelSize();
+            storage = grid.getStorage();
+            rectangle = new Integer2DRectangle(grid.getRectangle());
+            stride = grid.getStride();
+        } else if (!grid.getRectangle().coincidesWith(rectangle)) {
+            aligned = new BooleanGrid(grid, rectangle);
+        }
+        if (skins[layer] == null) {
+            skins[layer] = new long[rectangle.getSizeX() * stride];
+        }
+        final long[] words = skins[layer];
+        for (int x = 0; x < rectangle.getSizeX(); x++) {
+            for (int w = 0; w < stride; w++) {
+                words[x * stride + w] |= aligned.getWord(x, w) & aligned.getValidBits(w);
+            }
+        }
+        if (aligned != grid) {
+            aligned.release();
+        }
+    }
+
+    /**
+     * Turn the bitmaps into skins, and find the pixels with nothing below.
+     */
+    public void classify() {
+        classified = true;
+        if (rectangle == null) {
+            return;
+        }
+        if (keepUnsupported) {
+            for (int layer = 0; layer < skins.length; layer++) {
+                if (skins[layer] != null) {
+                    unsupported[layer] = new long[skins[layer].length];
+                }
+            }
+        }
+        GridBands.run(rectangle.getSizeX(), rectangle.getSizeY() * skins.length, 1, new GridBands.Action() {
+            @Override
+            public void run(final int band, final int start, final int end) {
+                classify(start, end);
+            }
+        });
+        dropEmptyLayers(skins);
+        if (keepUnsupported) {
+            dropEmptyLayers(unsupported);
+        }
+    }
+
+    /**
+     * Classify the words of the columns from start to end, excluding end.
+     */
+    private void classify(final int start, final int end) {
+        final int layers = skins.length;
+        // the words of the layers from -shells to layers + shells - 1
+        final long[] padded = new long[layers + 2 * shells];
+        final long[] prefix = new long[padded.length];
+        final long[] suffix = new long[padded.length];
+        for (int p = start * stride; p < end * stride; p++) {
+            for (int layer = 0; layer < layers; layer++) {
+                padded[layer + shells] = skins[layer] == null ? 0 : skins[layer][p];
+            }
+            for (int i = 0; i < padded.length; i++) {
+                prefix[i] = i % shells == 0 ? padded[i] : prefix[i - 1] & padded[i];
+            }
+            for (int i = padded.length - 1; i >= 0; i--) {
+                suffix[i] = i % shells == shells - 1 || i == padded.length - 1 ? padded[i] : padded[i] & suffix[i + 1];
+            }
+            for (int layer = 0; layer < layers; layer++) {
+                if (skins[layer] == null) {
+                    continue;
+                }
+                final long here = padded[layer + shells];
+                // the AND of padded from i to i + shells - 1 is suffix[i] & prefix[i + shells - 1]
+                final long below = suffix[layer] & prefix[layer + shells - 1];
+                final long above = suffix[layer + shells + 1] & prefix[layer + 2 * shells];
+                skins[layer][p] = here & ~(below & above);
+                if (keepUnsupported) {
+                    unsupported[layer][p] = here & ~below;
+                }
+            }
+        }
+    }
+
+    private static void dropEmptyLayers(final long[][] layers) {
+        for (int layer = 0; layer < layers.length; layer++) {
+            if (layers[layer] != null && isZero(layers[layer])) {
+                layers[layer] = null;
+            }
+        }
+    }
+
+    private static boolean isZero(final long[] words) {
+        for (final long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Drop the skins of the layer once they are used. Neither skin() nor
+     * unsupported() may be asked for the layer afterwards.
+     */
+    public void release(final int layer) {
+        skins[layer] = null;
+        if (keepUnsupported) {
+            unsupported[layer] = null;
+        }
+        released[layer] = true;
+    }
+
+    /**
+     * The pixels of the layer that are skin, NOTHING_THERE if there are none.
+     */
+    public BooleanGrid skin(final int layer) {
+        return grid(skins, layer);
+    }
+
+    /**
+     * The pixels of the layer with nothing below, NOTHING_THERE if there are
+     * none or they are not kept.
+     */
+    public BooleanGrid unsupported(final int layer) {
+        return keepUnsupported ? grid(unsupported, layer) : BooleanGrid.NOTHING_THERE;
+    }
+
+    private BooleanGrid grid(final long[][] layers, final int layer) {
+        if (!classified) {
+            throw new IllegalStateException("stack of " + material + " not classified yet");
+        }
+        if (released[layer]) {
+            throw new IllegalStateException("layer " + layer + " of " + material + " already released");
+        }
+        if (layers[layer] == null) {
+            return BooleanGrid.NOTHING_THERE;
+        }
+        final BooleanGrid result = new BooleanGrid(pixelSize, material, rectangle, storage);
+        final long[] words = layers[layer];
+        for (int x = 0; x < rectangle.getSizeX(); x++) {
+            for (int w = 0; w < stride; w++) {
+                if (words[x * stride + w] != 0) {
+                    result.setWord(x, w, words[x * stride + w]);
+                }
+            }
+        }
+        return result;
+    }
+}
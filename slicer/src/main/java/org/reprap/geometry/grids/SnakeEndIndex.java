@@ -0,0 +1,148 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import java.util.Arrays;
+
+/**
+ * The first and last points of the snakes of a hatch, bucketed in square
+ * cells, so the ends near a point are found without looking at all of them.
+ * An end is named by its snake times two, plus one for the last point.
+ */
+final class SnakeEndIndex {
+    /**
+     * Squared distances are cut off here, which leaves the top bit of an entry
+     * free.
+     */
+    private static final long FAR = (1L << 30) - 1;
+    private final int cellSize;
+    private final int cellsX;
+    private final int cellsY;
+    private final int[][] cells;
+    private final int[] counts;
+    private final int[] xs;
+    private final int[] ys;
+
+    SnakeEndIndex(final Integer2DPolygonList snakes, final int sizeX, final int sizeY, final int cellSize) {
+        this.cellSize = cellSize;
+        cellsX = sizeX / cellSize + 1;
+        cellsY = sizeY / cellSize + 1;
+        cells = new int[cellsX * cellsY][];
+        counts = new int[cells.length];
+        xs = new int[2 * snakes.size()];
+        ys = new int[2 * snakes.size()];
+        for (int i = 0; i < snakes.size(); i++) {
+            final Integer2DPolygon snake = snakes.polygon(i);
+            add(2 * i, snake.point(0));
+            add(2 * i + 1, snake.point(snake.size() - 1));
+        }
+    }
+
+    private void add(final int end, final Integer2DPoint p) {
+        xs[end] = p.getX();
+        ys[end] = p.getY();
+        final int cell = cellY(p.getY()) * cellsX + cellX(p.getX());
+        if (cells[cell] == null) {
+            cells[cell] = new int[4];
+        } else if (counts[cell] == cells[cell].length) {
+            cells[cell] = Arrays.copyOf(cells[cell], 2 * counts[cell]);
+        }
+        cells[cell][counts[cell]++] = end;
+    }
+
+    private int cellX(final int x) {
+        return Math.max(0, Math.min(cellsX - 1, x / cellSize));
+    }
+
+    private int cellY(final int y) {
+        return Math.max(0, Math.min(cellsY - 1, y / cellSize));
+    }
+
+    int getX(final int end) {
+        return xs[end];
+    }
+
+    int getY(final int end) {
+        return ys[end];
+    }
+
+    /**
+     * Put the ends nearest to p of the snakes after snake that are not gone
+     * into nearest, as their squared distance shifted up by 32 bits or'ed with
+     * the end, nearest first, and return how many there are. The cells are
+     * searched in rings round that of p until no nearer end can turn up.
+     */
+    int nearest(final Integer2DPoint p, final int snake, final boolean[] gone, final long[] nearest) {
+        final int cx = cellX(p.getX());
+        final int cy = cellY(p.getY());
+        final int rings = Math.max(cellsX, cellsY);
+        int count = 0;
+        for (int ring = 0; ring <= rings; ring++) {
+            if (count == nearest.length) {
+                final long reach = (long) (ring - 1) * cellSize;
+                if (reach * reach > nearest[count - 1] >>> 32) {
+                    break;
+                }
+            }
+            for (int y = cy - ring; y <= cy + ring; y++) {
+                if (y < 0 || y >= cellsY) {
+                    continue;
+                }
+                final boolean edge = y == cy - ring || y == cy + ring;
+                for (int x = cx - ring; x <= cx + ring; x += edge ? 1 : 2 * ring) {
+                    if (x >= 0 && x < cellsX) {
+                        count = collect(y * cellsX + x, p, snake, gone, nearest, count);
+                    }
+                    if (ring == 0) {
+                        break;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private int collect(final int cell, final Integer2DPoint p, final int snake, final boolean[] gone,
+            final long[] nearest, final int found) {
+        int count = found;
+        for (int k = 0; k < counts[cell]; k++) {
+            final int end = cells[cell][k];
+            if (end / 2 <= snake || gone[end / 2]) {
+                continue;
+            }
+            final long dx = xs[end] - p.getX();
+            final long dy = ys[end] - p.getY();
+            final long entry = Math.min(dx * dx + dy * dy, FAR) << 32 | end;
+            if (count == nearest.length) {
+                if (entry >= nearest[count - 1]) {
+                    continue;
+                }
+                count--;
+            }
+            int j = count - 1;
+            while (j >= 0 && nearest[j] > entry) {
+                nearest[j + 1] = nearest[j];
+                j--;
+            }
+            nearest[j + 1] = entry;
+            count++;
+        }
+        return count;
+    }
+}
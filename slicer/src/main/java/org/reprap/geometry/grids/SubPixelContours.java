@@ -0,0 +1,166 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Contours that lie between pixel centres. The walker puts the corners of a
+ * contour on the centres of solid pixels, so it lies up to half a pixel
+ * inside the true boundary and steps wherever that is not parallel to the
+ * axes. Where the grid knows signed values at its boundary pixels each
+ * corner is moved to the mean of the points at which the values, linearly
+ * interpolated, cross zero between the corner and its air neighbours, as
+ * marching squares with interpolation does.
+ * 
+ * All coordinates are in pixels relative to the grid rectangle.
+ */
+final class SubPixelContours {
+    private static final int[] NEIGHBOUR_X = { 1, -1, 0, 0, 1, 1, -1, -1 };
+    private static final int[] NEIGHBOUR_Y = { 0, 0, 1, -1, 1, -1, 1, -1 };
+    private static final double[] NEIGHBOUR_DISTANCE = { 1, 1, 1, 1, Math.sqrt(2), Math.sqrt(2), Math.sqrt(2),
+            Math.sqrt(2) };
+
+    private SubPixelContours() {
+    }
+
+    /**
+     * Move the corners of the polygons the walker found in grid onto the
+     * boundary given by values.
+     * 
+     * @return the polygons, each as x0, y0, x1, y1, ...
+     */
+    static List<double[]> interpolate(final BooleanGrid grid, final BoundaryValues values,
+            final Integer2DPolygonList polygons) {
+        final int sizeY = grid.getRectangle().getSizeY();
+        final List<double[]> result = new ArrayList<>(polygons.size());
+        for (int i = 0; i < polygons.size(); i++) {
+            final Integer2DPolygon polygon = polygons.polygon(i);
+            final double[] points = new double[2 * polygon.size()];
+            for (int j = 0; j < polygon.size(); j++) {
+                corner(grid, values, sizeY, polygon.getX(j), polygon.getY(j), points, 2 * j);
+            }
+            result.add(points);
+        }
+        return result;
+    }
+
+    private static void corner(final BooleanGrid grid, final BoundaryValues values, final int sizeY, final int x,
+            final int y, final double[] points, final int at) {
+        final float here = values.get(x * sizeY + y);
+        double sumX = 0;
+        double sumY = 0;
+        int crossings = 0;
+        for (int n = 0; n < NEIGHBOUR_X.length; n++) {
+            final int nx = x + NEIGHBOUR_X[n];
+            final int ny = y + NEIGHBOUR_Y[n];
+            if (grid.get(nx, ny)) {
+                continue;
+            }
+            final float there = grid.inside(nx, ny) ? values.get(nx * sizeY + ny) : Float.NaN;
+            final double t = crossing(here, there, NEIGHBOUR_DISTANCE[n]);
+            sumX += t * NEIGHBOUR_X[n];
+            sumY += t * NEIGHBOUR_Y[n];
+            crossings++;
+        }
+        points[at] = x;
+        points[at + 1] = y;
+        if (crossings > 0) {
+            points[at] += sumX / crossings;
+            points[at + 1] += sumY / crossings;
+        }
+    }
+
+    /**
+     * Where between a solid pixel with value inside and an air pixel with
+     * value outside, a distance apart, the boundary lies, as a fraction of the
+     * distance. A missing value is estimated from the other one, as if the
+     * boundary ran across the line between the two.
+     */
+    private static double crossing(final float inside, final float outside, final double distance) {
+        double in = inside;
+        double out = outside;
+        if (Float.isNaN(inside) && Float.isNaN(outside)) {
+            return 0.5;
+        } else if (Float.isNaN(inside)) {
+            in = out - distance;
+        } else if (Float.isNaN(outside)) {
+            out = in + distance;
+        }
+        in = Math.min(in, 0);
+        out = Math.max(out, 0);
+        if (out - in <= 0) {
+            return 0.5;
+        }
+        return -in / (out - in);
+    }
+
+    /**
+     * Values for the boundary pixels of a grid grown (r &gt; 0) or shrunk
+     * (r &lt; 0) by r pixels from source, taken from the distance of each
+     * pixel to the sub-pixel contours of source. The pixels of the offset
+     * grid were set with r rounded, the values use r as it is, so the
+     * contours of the offset grid lie at the exact distance.
+     */
+    static BoundaryValues offsetValues(final BooleanGrid source, final List<double[]> contours,
+            final BooleanGrid offset, final double r) {
+        final ContourDistance distance = new ContourDistance(contours);
+        final Integer2DRectangle rectangle = offset.getRectangle();
+        final int dx = rectangle.getSwCorner().getX() - source.getRectangle().getSwCorner().getX();
+        final int dy = rectangle.getSwCorner().getY() - source.getRectangle().getSwCorner().getY();
+        final int sizeX = rectangle.getSizeX();
+        final int sizeY = rectangle.getSizeY();
+        final int stride = offset.getStride();
+        final BoundaryValues values = new BoundaryValues();
+        for (int x = 0; x < sizeX; x++) {
+            for (int w = 0; w < stride; w++) {
+                final long edge = boundaryBits(offset, x, w);
+                for (long bits = edge; bits != 0; bits &= bits - 1) {
+                    final int y = w * 64 + Long.numberOfTrailingZeros(bits);
+                    final double d = distance.distance(x + dx, y + dy);
+                    final double signed = source.get(x + dx, y + dy) ? -d : d;
+                    values.put(x * sizeY + y, (float) (signed - r));
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * The pixels of word w in column x whose state differs from one of their
+     * four neighbours.
+     */
+    private static long boundaryBits(final BooleanGrid grid, final int x, final int w) {
+        final int stride = grid.getStride();
+        final long here = grid.getWord(x, w);
+        final long below = w > 0 ? grid.getWord(x, w - 1) >>> 63 : 0;
+        final long above = w + 1 < stride ? grid.getWord(x, w + 1) << 63 : 0;
+        final long south = here << 1 | below;
+        final long north = here >>> 1 | above;
+        long mixed = (here ^ south) | (here ^ north);
+        if (x > 0) {
+            mixed |= here ^ grid.getWord(x - 1, w);
+        }
+        if (x + 1 < grid.getRectangle().getSizeX()) {
+            mixed |= here ^ grid.getWord(x + 1, w);
+        }
+        return mixed & grid.getValidBits(w);
+    }
+}
@@ -0,0 +1,245 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import java.util.Arrays;
+
+import org.reprap.configuration.BitmapStorage;
+
+/**
+ * Stores a grid as tiles of 64 x 64 pixels: 64 columns of one word each.
+ * Tiles that are all air or all solid hold no words at all, so mostly empty
+ * or mostly solid grids cost little memory, and the boolean operations skip
+ * those tiles without looking at their pixels.
+ * 
+ * The tiles at the right and top edges of the grid are never marked full:
+ * their columns and bits outside of the grid must stay clear.
+ */
+final class TiledPixelStore extends PixelStore {
+    static final int TILE_SIZE = Long.SIZE;
+
+    /**
+     * Marks a tile that is completely solid. It is never written to.
+     */
+    private static final long[] FULL = filledTile();
+
+    /**
+     * The tiles of each column of tiles, bottom up. null means empty, FULL
+     * means solid, everything else is a mixed tile with one word per column.
+     */
+    private final long[][] tiles;
+    private final int tilesX;
+
+    TiledPixelStore(final int sizeX, final int sizeY) {
+        super(sizeX, sizeY);
+        tilesX = (sizeX + TILE_SIZE - 1) / TILE_SIZE;
+        tiles = new long[tilesX * getStride()][];
+    }
+
+    private TiledPixelStore(final TiledPixelStore other) {
+        this(other.getSizeX(), other.getSizeY());
+        for (int t = 0; t < tiles.length; t++) {
+            tiles[t] = copyOf(other.tiles[t]);
+        }
+    }
+
+    private static long[] filledTile() {
+        final long[] result = new long[TILE_SIZE];
+        Arrays.fill(result, -1L);
+        return result;
+    }
+
+    private static long[] copyOf(final long[] tile) {
+        if (tile == null || tile == FULL) {
+            return tile;
+        }
+        return tile.clone();
+    }
+
+    private int tileIndex(final int x, final int w) {
+        return x / TILE_SIZE * getStride() + w;
+    }
+
+    @Override
+    long getWord(final int x, final int w) {
+        final long[] tile = tiles[tileIndex(x, w)];
+        if (tile == null) {
+            return 0;
+        }
+        return tile[x % TILE_SIZE];
+    }
+
+    @Override
+    void setWord(final int x, final int w, final long value) {
+        final int t = tileIndex(x, w);
+        long[] tile = tiles[t];
+        if (tile == null) {
+            if (value == 0) {
+                return;
+            }
+            tile = new long[TILE_SIZE];
+            tiles[t] = tile;
+        } else if (tile == FULL) {
+            if (value == -1L) {
+                return;
+            }
+            tile = filledTile();
+            tiles[t] = tile;
+        }
+        tile[x % TILE_SIZE] = value;
+    }
+
+    @Override
+    boolean mayBeSet(final int x, final int w) {
+        return tiles[tileIndex(x, w)] != null;
+    }
+
+    @Override
+    boolean isEmpty() {
+        for (final long[] tile : tiles) {
+            if (tile == FULL) {
+                return false;
+            }
+            if (tile != null) {
+                for (final long word : tile) {
+                    if (word != 0) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    PixelStore copy() {
+        return new TiledPixelStore(this);
+    }
+
+    @Override
+    PixelStore create(final int newSizeX, final int newSizeY) {
+        return new TiledPixelStore(newSizeX, newSizeY);
+    }
+
+    @Override
+    int getColumnAlignment() {
+        return TILE_SIZE;
+    }
+
+    @Override
+    BitmapStorage getStorage() {
+        return BitmapStorage.TILED;
+    }
+
+    @Override
+    void combine(final PixelStore other, final Operation operation) {
+        if (!(other instanceof TiledPixelStore)) {
+            super.combine(other, operation);
+            compact();
+            return;
+        }
+        combineTiles((TiledPixelStore) other, operation, 0, tiles.length);
+    }
+
+    @Override
+    void combine(final PixelStore other, final Operation operation, final int x0, final int x1) {
+        if (!(other instanceof TiledPixelStore)) {
+            super.combine(other, operation, x0, x1);
+            return;
+        }
+        final int stride = getStride();
+        combineTiles((TiledPixelStore) other, operation, x0 / TILE_SIZE * stride, (x1 + TILE_SIZE - 1) / TILE_SIZE
+                * stride);
+    }
+
+    private void combineTiles(final TiledPixelStore other, final Operation operation, final int first, final int end) {
+        for (int t = first; t < end; t++) {
+            tiles[t] = combine(tiles[t], other.tiles[t], operation);
+        }
+    }
+
+    private static long[] combine(final long[] target, final long[] source, final Operation operation) {
+        switch (operation) {
+        case COPY:
+            return copyOf(source);
+        case OR:
+            if (target == FULL || source == null) {
+                return target;
+            }
+            if (source == FULL || target == null) {
+                return copyOf(source);
+            }
+            break;
+        case AND_NOT:
+            if (target == null || source == null) {
+                return target;
+            }
+            if (source == FULL) {
+                return null;
+            }
+            break;
+        case AND:
+            if (target == null || source == FULL) {
+                return target;
+            }
+            if (source == null) {
+                return null;
+            }
+            if (target == FULL) {
+                return copyOf(source);
+            }
+            break;
+        default:
+            throw new IllegalArgumentException("unknown operation " + operation);
+        }
+        final long[] result = target == FULL ? filledTile() : target;
+        for (int i = 0; i < TILE_SIZE; i++) {
+            result[i] = combine(result[i], source[i], operation);
+        }
+        return normalize(result);
+    }
+
+    /**
+     * Replace all mixed tiles that turned out to be uniform.
+     */
+    @Override
+    void compact() {
+        for (int t = 0; t < tiles.length; t++) {
+            if (tiles[t] != FULL) {
+                tiles[t] = normalize(tiles[t]);
+            }
+        }
+    }
+
+    private static long[] normalize(final long[] tile) {
+        if (tile == null) {
+            return null;
+        }
+        final long first = tile[0];
+        if (first != 0 && first != -1L) {
+            return tile;
+        }
+        for (int i = 1; i < TILE_SIZE; i++) {
+            if (tile[i] != first) {
+                return tile;
+            }
+        }
+        return first == 0 ? null : FULL;
+    }
+}
@@ -91,6 +91,12 @@ public class Polygon {
 
     private final String material;
 
+    /**
+     * How many layers high the extrusion along the polygon is: more than one
+     * for infill combined over several layers
+     */
+    private int layers = 1;
+
     /**
      * The minimum enclosing X-Y box round the polygon
      */
@@ -116,12 +122,21 @@ public class Polygon {
             add(new Point2D(p.point(i)));
         }
         closed = p.closed;
+        layers = p.layers;
     }
 
     public String getMaterial() {
         return material;
     }
 
+    public int getLayers() {
+        return layers;
+    }
+
+    public void setLayers(final int layers) {
+        this.layers = layers;
+    }
+
     /**
      * Set the polygon not closed
      */
@@ -232,6 +247,7 @@ public class Polygon {
      */
     Polygon negate() {
         final Polygon result = new Polygon(material, closed);
+        result.layers = layers;
         for (int i = size() - 1; i >= 0; i--) {
             result.add(point(i));
         }
@@ -250,6 +266,7 @@ public class Polygon {
             throw new ArrayIndexOutOfBoundsException("polygon size " + size() + ", invalid index: " + i);
         }
         final Polygon result = new Polygon(material, closed);
+        result.layers = layers;
         for (int j = 0; j < size(); j++) {
             result.add(point(i));
             i++;
@@ -312,6 +329,7 @@ public class Polygon {
             return new Polygon(this);
         }
         final Polygon result = new Polygon(material, closed);
+        result.layers = layers;
         final double d2 = d * d;
 
         final int v1 = findAngleStart(0, d2);
@@ -186,6 +186,10 @@ public class PolygonList {
         // Now go through the polygons pairwise
         for (int i = 0; i < size() - 1; i++) {
             for (int j = i + 1; j < size(); j++) {
+                // Extrusions of different heights stay apart
+                if (polygon(i).getLayers() != polygon(j).getLayers()) {
+                    continue;
+                }
                 // Swap the odd half of the asymmetric cases so they're all the same
                 if (polygon(i).isClosed() && !polygon(j).isClosed()) {
                     final Polygon left = polygon(i);
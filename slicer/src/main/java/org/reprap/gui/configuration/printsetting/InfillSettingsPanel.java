@@ -24,7 +24,9 @@ import java.util.List;
 import javax.swing.Icon;
 import javax.swing.JComponent;
 import javax.swing.JLabel;
+import javax.swing.JSpinner;
 import javax.swing.JTextField;
+import javax.swing.SpinnerNumberModel;
 
 import org.reprap.configuration.PrintSetting;
 import org.reprap.gui.configuration.common.SettingsBoxPanel;
@@ -34,6 +36,7 @@ public class InfillSettingsPanel extends AbstractPrintSettingPanel {
     private final JTextField fillDensity = new JTextField();
     private final FillPatternControl pattern = new FillPatternControl();
     private final JTextField infillOverlap = new JTextField();
+    private final SpinnerNumberModel infillEveryLayers = new SpinnerNumberModel(1, 1, 99, 1);
 
     public InfillSettingsPanel() {
         addComponents(createComponents(), true);
@@ -50,6 +53,7 @@ public class InfillSettingsPanel extends AbstractPrintSettingPanel {
         result.addRow(new JLabel("Fill density (%): "), fillDensity);
         result.addRow(new JLabel("Fill pattern: "), pattern);
         result.addRow(new JLabel("Overlapp (mm): "), infillOverlap);
+        result.addRow(new JLabel("Combine infill every n layers: "), new JSpinner(infillEveryLayers));
         return result;
     }
 
@@ -68,6 +72,7 @@ public class InfillSettingsPanel extends AbstractPrintSettingPanel {
         fillDensity.setText(Double.toString(printSetting.getFillDensity()));
         pattern.setValues(printSetting.getFillPattern());
         infillOverlap.setText(Double.toString(printSetting.getInfillOverlap()));
+        infillEveryLayers.setValue(Integer.valueOf(Math.max(1, printSetting.getInfillEveryLayers())));
     }
 
     @Override
@@ -75,5 +80,6 @@ public class InfillSettingsPanel extends AbstractPrintSettingPanel {
         printSetting.setFillDensity(fieldToDouble(fillDensity));
         printSetting.setFillPattern(pattern.getValue());
         printSetting.setInfillOverlap(fieldToDouble(infillOverlap));
+        printSetting.setInfillEveryLayers(((Integer) infillEveryLayers.getValue()).intValue());
     }
 }
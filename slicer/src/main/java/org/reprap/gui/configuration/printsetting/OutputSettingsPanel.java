@@ -22,8 +22,11 @@ import java.util.Collections;
 
 import javax.swing.Icon;
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JLabel;
 
+import org.reprap.configuration.BitmapStorage;
+import org.reprap.configuration.HatchMethod;
 import org.reprap.configuration.PrintSetting;
 import org.reprap.gui.configuration.common.SettingsBoxPanel;
 
@@ -31,11 +34,19 @@ public class OutputSettingsPanel extends AbstractPrintSettingPanel {
     private static final Icon ICON = createIcon("page_white_go.png");
     private final JCheckBox verboseGCode = new JCheckBox();
     private final JCheckBox pathOptimize = new JCheckBox();
+    private final JComboBox<BitmapStorage> bitmapStorage = new JComboBox<>(BitmapStorage.values());
+    private final JCheckBox subPixelContours = new JCheckBox();
+    private final JComboBox<HatchMethod> hatchMethod = new JComboBox<>(HatchMethod.values());
+    private final JCheckBox volumetricSkins = new JCheckBox();
 
     public OutputSettingsPanel() {
         final SettingsBoxPanel box = new SettingsBoxPanel("Output");
         box.addRow(new JLabel("Verbose G-code: "), verboseGCode);
         box.addRow(new JLabel("Optimize paths: "), pathOptimize);
+        box.addRow(new JLabel("Bitmap storage: "), bitmapStorage);
+        box.addRow(new JLabel("Sub-pixel contours: "), subPixelContours);
+        box.addRow(new JLabel("Hatching: "), hatchMethod);
+        box.addRow(new JLabel("Volumetric skins: "), volumetricSkins);
         addComponents(Collections.singletonList(box), true);
     }
 
@@ -53,11 +64,19 @@ public class OutputSettingsPanel extends AbstractPrintSettingPanel {
     void setValues(final PrintSetting printSetting) {
         verboseGCode.setSelected(printSetting.isVerboseGCode());
         pathOptimize.setSelected(printSetting.isPathOptimize());
+        bitmapStorage.setSelectedItem(printSetting.getBitmapStorage());
+        subPixelContours.setSelected(printSetting.isSubPixelContours());
+        hatchMethod.setSelectedItem(printSetting.getHatchMethod());
+        volumetricSkins.setSelected(printSetting.isVolumetricSkins());
     }
 
     @Override
     void getValues(final PrintSetting printSetting) {
         printSetting.setVerboseGCode(verboseGCode.isSelected());
         printSetting.setPathOptimize(pathOptimize.isSelected());
+        printSetting.setBitmapStorage((BitmapStorage) bitmapStorage.getSelectedItem());
+        printSetting.setSubPixelContours(subPixelContours.isSelected());
+        printSetting.setHatchMethod((HatchMethod) hatchMethod.getSelectedItem());
+        printSetting.setVolumetricSkins(volumetricSkins.isSelected());
     }
 }
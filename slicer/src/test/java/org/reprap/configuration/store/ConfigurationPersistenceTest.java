@@ -95,7 +95,7 @@ public class ConfigurationPersistenceTest {
                 @Override
                 public boolean matches(final Object actual) {
                     try {
-                        if (field.getType().getCanonicalName().startsWith("org.reprap")) {
+                        if (field.getType().getCanonicalName().startsWith("org.reprap") && !field.getType().isEnum()) {
                             try {
                                 compareFieldByField(field.get(actual), field.get(expected));
                             } catch (final AssertionError e) {
@@ -0,0 +1,83 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.reprap.configuration.BitmapStorage;
+import org.reprap.geometry.grids.BooleanGrid;
+import org.reprap.geometry.grids.BooleanGridList;
+import org.reprap.geometry.polygons.CSG2D;
+import org.reprap.geometry.polygons.Point2D;
+import org.reprap.geometry.polygons.Rectangle;
+
+public class IntersectionWindowTest {
+    private static final double SIZE = 10;
+
+    /**
+     * Off the heap, so a grid used after it was released shows.
+     */
+    private static BooleanGridList randomBox(final Random random) {
+        final double x = random.nextDouble() * SIZE / 3;
+        final double y = random.nextDouble() * SIZE / 3;
+        final BooleanGridList result = new BooleanGridList();
+        result.add(new BooleanGrid(0.1, "material", new Rectangle(new Point2D(0, 0), new Point2D(SIZE, SIZE)),
+                CSG2D.RrCSGFromBox(new Rectangle(new Point2D(x, y), new Point2D(x + 0.6 * SIZE, y + 0.6 * SIZE))),
+                BitmapStorage.OFF_HEAP));
+        return result;
+    }
+
+    private static void assertSameMembership(final BooleanGridList expected, final BooleanGridList actual) {
+        for (double x = 0.05; x < SIZE; x += 0.2) {
+            for (double y = 0.05; y < SIZE; y += 0.2) {
+                final Point2D p = new Point2D(x, y);
+                assertEquals(p.toString(), expected.membership(p), actual.membership(p));
+            }
+        }
+    }
+
+    @Test
+    public void testSlidingWindowIntersectsTheLatestLists() {
+        final Random random = new Random(4711);
+        final int width = 3;
+        final List<BooleanGridList> lists = new ArrayList<BooleanGridList>();
+        final IntersectionWindow window = new IntersectionWindow();
+        for (int i = 0; i < 12; i++) {
+            final BooleanGridList grids = randomBox(random);
+            lists.add(grids);
+            window.add(grids);
+            if (window.size() > width) {
+                window.remove();
+            }
+            BooleanGridList expected = lists.get(Math.max(0, i - width + 1));
+            for (int j = Math.max(0, i - width + 1) + 1; j <= i; j++) {
+                expected = BooleanGridList.intersections(expected, lists.get(j));
+            }
+            assertEquals(Math.min(i + 1, width), window.size());
+            assertSameMembership(expected, window.intersection());
+        }
+        window.clear();
+        assertEquals(0, window.intersection().size());
+    }
+}
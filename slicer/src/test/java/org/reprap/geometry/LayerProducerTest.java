@@ -0,0 +1,38 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.reprap.configuration.PrintSetting;
+
+public class LayerProducerTest {
+    @Test
+    public void testCombinedInfillKeepsToTheSingleLayerFlow() {
+        final PrintSetting printSetting = new PrintSetting();
+        printSetting.setInfillSpeed(0.8);
+        assertEquals(800, LayerProducer.infillFeedrate(printSetting, 1000, 1), 1e-9);
+        assertEquals(500, LayerProducer.infillFeedrate(printSetting, 1000, 2), 1e-9);
+        // slow infill has room for a thicker track
+        printSetting.setInfillSpeed(0.4);
+        assertEquals(400, LayerProducer.infillFeedrate(printSetting, 1000, 2), 1e-9);
+        assertEquals(250, LayerProducer.infillFeedrate(printSetting, 1000, 4), 1e-9);
+    }
+}
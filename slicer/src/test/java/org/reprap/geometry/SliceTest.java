@@ -0,0 +1,115 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.reprap.geometry.grids.BooleanGrid;
+import org.reprap.geometry.grids.BooleanGridList;
+import org.reprap.geometry.polygons.CSG2D;
+import org.reprap.geometry.polygons.Point2D;
+import org.reprap.geometry.polygons.PolygonList;
+import org.reprap.geometry.polygons.Rectangle;
+
+public class SliceTest {
+    /**
+     * Two squares joined by a neck too thin for the inner one of two shells
+     */
+    private static Slice makeDumbbell() {
+        final CSG2D shape = CSG2D.union(CSG2D.union(
+                CSG2D.RrCSGFromBox(new Rectangle(new Point2D(1, 1), new Point2D(5, 5))),
+                CSG2D.RrCSGFromBox(new Rectangle(new Point2D(9, 1), new Point2D(13, 5)))),
+                CSG2D.RrCSGFromBox(new Rectangle(new Point2D(4, 2.3), new Point2D(10, 3.7))));
+        final BooleanGridList bitmaps = new BooleanGridList();
+        bitmaps.add(new BooleanGrid(0.05, "material", new Rectangle(new Point2D(0, 0), new Point2D(14, 6)), shape));
+        return new Slice(bitmaps);
+    }
+
+    private static Slice makeBox() {
+        final CSG2D shape = CSG2D.RrCSGFromBox(new Rectangle(new Point2D(1, 1), new Point2D(9, 7)));
+        final BooleanGridList bitmaps = new BooleanGridList();
+        bitmaps.add(new BooleanGrid(0.05, "material", new Rectangle(new Point2D(0, 0), new Point2D(10, 8)), shape));
+        return new Slice(bitmaps);
+    }
+
+    /**
+     * Without necks the infill region is just the innermost shell grown by
+     * half the overlap and shrunk by the infill inset.
+     */
+    @Test
+    public void testInfillRegionIsAnOffsetOfTheInnermostShell() {
+        final double extrusionSize = 0.5;
+        final Slice slice = makeBox();
+        final PolygonList borders = slice.getOutlineGrids("material", 3, extrusionSize, false);
+        final BooleanGridList region = slice.subtractBorder("material", extrusionSize, 0.2, borders);
+        final BooleanGrid expected = makeBox().getBitmaps("material").get(0).createOffsetGrid(-2.5 * extrusionSize)
+                .createOffsetGrid(0.1 - 0.7 * extrusionSize);
+        int inside = 0;
+        for (double x = 0.02; x < 10; x += 0.05) {
+            for (double y = 0.02; y < 8; y += 0.05) {
+                final Point2D p = new Point2D(x, y);
+                assertEquals(p.toString(), expected.get(p), region.membership(p));
+                inside += region.membership(p) ? 1 : 0;
+            }
+        }
+        assertTrue("inside " + inside, inside > 5000);
+        slice.release();
+    }
+
+    /**
+     * In the neck where the inner shell breaks the infill region is what the
+     * drawn borders leave of the slice, grown by half the overlap. In the
+     * squares it is the inner shell offset.
+     */
+    @Test
+    public void testInfillRegionKeepsTheNeck() {
+        final double extrusionSize = 0.5;
+        final Slice slice = makeDumbbell();
+        final PolygonList borders = slice.getOutlineGrids("material", 2, extrusionSize, true);
+        final BooleanGridList region = slice.subtractBorder("material", extrusionSize, 0.2, borders);
+        final BooleanGridList baseline = new BooleanGridList();
+        for (final BooleanGrid grid : makeDumbbell().getBitmaps("material").subtractPolygons(borders,
+                extrusionSize * 0.7)) {
+            baseline.add(grid.createOffsetGrid(0.1));
+        }
+        final BooleanGrid shell = makeDumbbell().getBitmaps("material").get(0).createOffsetGrid(-1.5 * extrusionSize)
+                .createOffsetGrid(0.1 - 0.7 * extrusionSize);
+        int inside = 0;
+        int neck = 0;
+        for (double x = 0.02; x < 14; x += 0.05) {
+            for (double y = 0.02; y < 6; y += 0.05) {
+                final Point2D p = new Point2D(x, y);
+                if (x > 5.5 && x < 8.5) {
+                    assertEquals(p.toString(), baseline.membership(p), region.membership(p));
+                } else if (shell.get(p)) {
+                    assertTrue(p.toString(), region.membership(p));
+                }
+                if (region.membership(p)) {
+                    inside++;
+                    neck += x > 6 && x < 8 ? 1 : 0;
+                }
+            }
+        }
+        assertTrue("inside " + inside, inside > 1000);
+        assertTrue("neck " + neck, neck > 0);
+        slice.release();
+    }
+}
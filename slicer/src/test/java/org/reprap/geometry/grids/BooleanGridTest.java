@@ -18,11 +18,17 @@
  */
 package org.reprap.geometry.grids;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.List;
+
 import org.junit.Test;
+import org.reprap.configuration.BitmapStorage;
 import org.reprap.geometry.polygons.CSG2D;
 import org.reprap.geometry.polygons.Point2D;
+import org.reprap.geometry.polygons.Polygon;
+import org.reprap.geometry.polygons.PolygonList;
 import org.reprap.geometry.polygons.Rectangle;
 
 public class BooleanGridTest {
@@ -101,6 +107,242 @@ public class BooleanGridTest {
         }
     }
 
+    @Test
+    public void testBooleanOperationsOnOffsetRectangles() {
+        final BooleanGrid gridA = new BooleanGrid(PIXELSIZE, "test", new Rectangle(new Point2D(0, 0), new Point2D(2.5, 1)),
+                CSG2D.RrCSGFromBox(new Rectangle(new Point2D(0.31, 0.22), new Point2D(2.17, 0.83))));
+        final BooleanGrid gridB = new BooleanGrid(PIXELSIZE, "test", new Rectangle(new Point2D(1.1, 0.5), new Point2D(3, 4.3)),
+                CSG2D.RrCSGFromBox(new Rectangle(new Point2D(0.93, 0.41), new Point2D(2.52, 2.04))));
+        assertCombination(gridA, gridB, BooleanGridMath.union(gridA, gridB), true, true, true);
+        assertCombination(gridA, gridB, BooleanGridMath.intersection(gridA, gridB), false, true, false);
+        assertCombination(gridA, gridB, BooleanGridMath.difference(gridA, gridB), true, false, false);
+        assertCombination(gridB, gridA, BooleanGridMath.difference(gridB, gridA), true, false, false);
+        assertCombination(gridA, gridA, new BooleanGrid(gridA, gridB.getRectangle()), true, true, false);
+    }
+
+    @Test
+    public void testBooleanOperationsOnTiledGrids() {
+        final BooleanGrid gridA = makeGrid(new Rectangle(new Point2D(0, 0), new Point2D(6, 5)), new Rectangle(new Point2D(
+                0.31, 0.22), new Point2D(5.17, 3.83)), BitmapStorage.TILED);
+        final BooleanGrid gridB = makeGrid(new Rectangle(new Point2D(2.1, 1.5), new Point2D(9, 8.3)), new Rectangle(
+                new Point2D(2.93, 1.41), new Point2D(8.52, 7.04)), BitmapStorage.TILED);
+        final BooleanGrid denseA = makeGrid(new Rectangle(new Point2D(0, 0), new Point2D(6, 5)), new Rectangle(new Point2D(
+                0.31, 0.22), new Point2D(5.17, 3.83)), BitmapStorage.DENSE);
+        assertTrue(gridEquals(denseA, gridA));
+        assertCombination(gridA, gridB, BooleanGridMath.union(gridA, gridB), true, true, true);
+        assertCombination(gridA, gridB, BooleanGridMath.intersection(gridA, gridB), false, true, false);
+        assertCombination(gridA, gridB, BooleanGridMath.difference(gridA, gridB), true, false, false);
+        assertCombination(gridB, gridA, BooleanGridMath.difference(gridB, gridA), true, false, false);
+        assertTrue(BooleanGridMath.difference(gridA, denseA).isEmpty());
+        assertTrue(gridEquals(gridA, BooleanGridMath.union(gridA, BooleanGridMath.intersection(denseA, gridB))));
+    }
+
+    @Test
+    public void testOffsetGridKeepsExactDistances() {
+        final CSG2D shape = CSG2D.union(CSG2D.RrCSGFromBox(new Rectangle(new Point2D(0.2, 0.3), new Point2D(0.9, 0.7))),
+                CSG2D.RrCSGFromBox(new Rectangle(new Point2D(0.5, 0.1), new Point2D(0.7, 1.1))));
+        final BooleanGrid grid = new BooleanGrid(PIXELSIZE, "test", new Rectangle(new Point2D(0, 0), new Point2D(1.2, 1.2)),
+                shape);
+        for (final int r : new int[] { 1, 3, 7 }) {
+            assertOffset(grid, grid.createOffsetGrid(r * PIXELSIZE), r, true);
+            assertOffset(grid, grid.createOffsetGrid(-r * PIXELSIZE), r, false);
+        }
+    }
+
+    @Test
+    public void testOffsetGridsFromOneDistanceField() {
+        final BooleanGrid grid = new BooleanGrid(PIXELSIZE, "test", new Rectangle(new Point2D(0, 0), new Point2D(1.2, 1.2)),
+                CSG2D.RrCSGFromBox(new Rectangle(new Point2D(0.2, 0.3), new Point2D(0.9, 0.7))));
+        final int[] radii = { -1, -4, 2, 0, 5, -30 };
+        final double[] distances = new double[radii.length];
+        for (int i = 0; i < radii.length; i++) {
+            distances[i] = radii[i] * PIXELSIZE;
+        }
+        final List<BooleanGrid> offsets = grid.createOffsetGrids(distances);
+        assertEquals(radii.length, offsets.size());
+        for (int i = 0; i < radii.length; i++) {
+            assertOffset(grid, offsets.get(i), Math.abs(radii[i]), radii[i] >= 0);
+        }
+        assertTrue(offsets.get(5) == BooleanGrid.NOTHING_THERE);
+    }
+
+    @Test
+    public void testMomentsMatchPixelSums() {
+        final Polygon bar = new Polygon("test", true);
+        final Point2D along = new Point2D(Math.cos(Math.PI / 6), Math.sin(Math.PI / 6));
+        final Point2D across = new Point2D(-along.y(), along.x());
+        final Point2D centre = new Point2D(1.6, 1.4);
+        bar.add(Point2D.add(centre, Point2D.add(Point2D.mul(along, -1.2), Point2D.mul(across, -0.3))));
+        bar.add(Point2D.add(centre, Point2D.add(Point2D.mul(along, 1.2), Point2D.mul(across, -0.3))));
+        bar.add(Point2D.add(centre, Point2D.add(Point2D.mul(along, 1.2), Point2D.mul(across, 0.3))));
+        bar.add(Point2D.add(centre, Point2D.add(Point2D.mul(along, -1.2), Point2D.mul(across, 0.3))));
+        final PolygonList polygons = new PolygonList();
+        polygons.add(bar);
+        final BooleanGrid grid = new BooleanGrid(PIXELSIZE, "test", new Rectangle(new Point2D(0, 0), new Point2D(3.2, 2.9)),
+                polygons.toCSG(), BitmapStorage.TILED);
+        long count = 0;
+        double sumX = 0;
+        double sumY = 0;
+        int minX = Integer.MAX_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (int x = 0; x < grid.getRectangle().getSizeX(); x++) {
+            for (int y = 0; y < grid.getRectangle().getSizeY(); y++) {
+                if (grid.get(x, y)) {
+                    count++;
+                    sumX += x;
+                    sumY += y;
+                    minX = Math.min(minX, x);
+                    maxY = Math.max(maxY, y);
+                }
+            }
+        }
+        final GridMoments moments = grid.moments();
+        assertEquals(count, moments.getPixelCount());
+        assertEquals(count * PIXELSIZE * PIXELSIZE, moments.getArea(), 1e-9);
+        final Point2D centroid = grid.getRectangle().realPoint(sumX / count, sumY / count, PIXELSIZE);
+        assertEquals(0, Point2D.d(centroid, moments.getCentroid()), 1e-9);
+        assertTrue(Point2D.d(centre, moments.getCentroid()) < PIXELSIZE);
+        final Rectangle bounds = moments.getBounds();
+        assertEquals(grid.getRectangle().realPoint(minX, maxY, PIXELSIZE).x(), bounds.x().low(), 1e-9);
+        assertEquals(grid.getRectangle().realPoint(minX, maxY, PIXELSIZE).y(), bounds.y().high(), 1e-9);
+        assertEquals(1, Math.abs(Point2D.mul(along, moments.getPrincipalAxis())), 1e-3);
+        assertTrue(EMPTY.moments().getCentroid() == null);
+    }
+
+    @Test
+    public void testOverlapsSkipsAirBlocks() {
+        for (final BitmapStorage storage : BitmapStorage.values()) {
+            final Rectangle big = new Rectangle(new Point2D(0, 0), new Point2D(6, 6));
+            final BooleanGrid left = makeGrid(big, new Rectangle(new Point2D(0.3, 0.3), new Point2D(2.2, 5.1)), storage);
+            final BooleanGrid right = makeGrid(new Rectangle(new Point2D(2.5, 1), new Point2D(7, 7)), new Rectangle(
+                    new Point2D(2.8, 1.3), new Point2D(5.5, 4.4)), storage);
+            final BooleanGrid corner = makeGrid(big, new Rectangle(new Point2D(2.1, 5.0), new Point2D(2.9, 5.7)), storage);
+            assertTrue(!left.overlaps(right) && !right.overlaps(left));
+            assertTrue(left.overlaps(corner) && corner.overlaps(left));
+            assertTrue(!right.overlaps(corner));
+            assertTrue(BooleanGridMath.intersection(left, right) == BooleanGrid.NOTHING_THERE);
+            assertTrue(BooleanGridMath.difference(left, right) == left);
+            assertCombination(left, corner, BooleanGridMath.difference(left, corner), true, false, false);
+            assertCombination(left, corner, BooleanGridMath.intersection(left, corner), false, true, false);
+            final BooleanGrid emptied = BooleanGridMath.difference(left, BooleanGridMath.union(left, corner));
+            assertTrue(emptied.isEmpty());
+            final BooleanGrid cleared = new BooleanGrid(left);
+            cleared.intersectWith(right);
+            assertTrue(cleared.isEmpty());
+            assertTrue(!cleared.overlaps(left));
+        }
+    }
+
+    @Test
+    public void testCoveredByGridsWithOtherRectangles() {
+        for (final BitmapStorage storage : BitmapStorage.values()) {
+            final Rectangle big = new Rectangle(new Point2D(0, 0), new Point2D(6, 6));
+            final BooleanGrid inner = makeGrid(big, new Rectangle(new Point2D(1.3, 1.1), new Point2D(4.2, 5.1)), storage);
+            final BooleanGrid outer = makeGrid(new Rectangle(new Point2D(1, 0.5), new Point2D(4.5, 5.5)), new Rectangle(
+                    new Point2D(1.1, 0.9), new Point2D(4.4, 5.4)), storage);
+            final BooleanGrid corner = makeGrid(big, new Rectangle(new Point2D(4.1, 5.0), new Point2D(4.9, 5.7)), storage);
+            assertTrue(inner.isCoveredBy(outer));
+            assertTrue(!outer.isCoveredBy(inner));
+            assertTrue(!corner.isCoveredBy(outer));
+            assertTrue(BooleanGridMath.union(inner, corner).isCoveredBy(BooleanGridMath.union(outer, corner)));
+            assertTrue(!BooleanGridMath.union(inner, corner).isCoveredBy(outer));
+            assertTrue(BooleanGrid.NOTHING_THERE.isCoveredBy(inner));
+            assertTrue(!inner.isCoveredBy(BooleanGrid.NOTHING_THERE));
+        }
+    }
+
+    /**
+     * compact() clears the marks of all blocks that became air, not just
+     * those before the first occupied one.
+     */
+    @Test
+    public void testCompactClearsAllStaleMarks() {
+        for (final PixelStore store : new PixelStore[] { new DensePixelStore(640, 200),
+                new OffHeapPixelStore(640, 200) }) {
+            store.setWord(70, 1, 1L);
+            store.setWord(200, 2, 1L);
+            store.setWord(500, 3, 1L);
+            store.setWord(200, 2, 0L);
+            store.setWord(500, 3, 0L);
+            store.compact();
+            assertTrue(store.mayBeSet(70, 1));
+            assertTrue(!store.mayBeSet(200, 2));
+            assertTrue(!store.mayBeSet(500, 3));
+            store.release();
+        }
+    }
+
+    @Test
+    public void testOffHeapGridsLeaveTheHeapAndAreReleased() {
+        final Rectangle big = new Rectangle(new Point2D(0, 0), new Point2D(30, 30));
+        final Rectangle box = new Rectangle(new Point2D(3.3, 2.2), new Point2D(21.7, 17.9));
+        final BooleanGrid dense = makeGrid(big, box, BitmapStorage.DENSE);
+        final long bytes = 8L * dense.getRectangle().getSizeX() * dense.getStride();
+        final long before = AllocationMeter.offHeapBytes();
+        final BooleanGrid offHeap = makeGrid(big, box, BitmapStorage.OFF_HEAP);
+        final BooleanGrid grown = new BooleanGrid(offHeap);
+        grown.unionWith(offHeap.createOffsetGrid(0.4));
+        final long held = AllocationMeter.offHeapBytes();
+        assertTrue(held - before >= 2 * bytes);
+        assertCombination(dense, offHeap, offHeap, false, true, false);
+        assertCombination(dense.createOffsetGrid(0.4), grown, grown, false, true, false);
+        offHeap.release();
+        grown.release();
+        offHeap.release();
+        // other off heap grids of earlier tests may have been collected meanwhile
+        assertTrue(AllocationMeter.offHeapBytes() <= held - 2 * bytes);
+    }
+
+    /**
+     * Grown grids must hold exactly the pixels within r of a solid pixel,
+     * shrunk ones exactly the solid pixels further than r from air.
+     */
+    private static void assertOffset(final BooleanGrid grid, final BooleanGrid offset, final int r, final boolean grow) {
+        final Integer2DRectangle rectangle = offset.getRectangle();
+        final int dx = rectangle.getSwCorner().getX() - grid.getRectangle().getSwCorner().getX();
+        final int dy = rectangle.getSwCorner().getY() - grid.getRectangle().getSwCorner().getY();
+        for (int x = 0; x < rectangle.getSizeX(); x++) {
+            for (int y = 0; y < rectangle.getSizeY(); y++) {
+                final boolean nearFeature = isNear(grid, x + dx, y + dy, r, grow);
+                assertEquals("pixel " + x + ", " + y + " at r=" + r, grow ? nearFeature : !nearFeature, offset.get(x, y));
+            }
+        }
+    }
+
+    private static boolean isNear(final BooleanGrid grid, final int x, final int y, final int r, final boolean solid) {
+        for (int i = -r; i <= r; i++) {
+            for (int j = -r; j <= r; j++) {
+                if (i * i + j * j <= r * r && grid.get(x + i, y + j) == solid) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static BooleanGrid makeGrid(final Rectangle gridRectangle, final Rectangle box, final BitmapStorage storage) {
+        return new BooleanGrid(PIXELSIZE, "test", gridRectangle, CSG2D.RrCSGFromBox(box), storage);
+    }
+
+    /**
+     * Checks every pixel of result against the pixels of a and b at the same
+     * place. The flags give the expected value for pixels only in a, in both,
+     * and only in b.
+     */
+    private static void assertCombination(final BooleanGrid a, final BooleanGrid b, final BooleanGrid result,
+            final boolean onlyA, final boolean both, final boolean onlyB) {
+        final Integer2DRectangle rectangle = result.getRectangle();
+        for (int x = 0; x < rectangle.getSizeX(); x++) {
+            for (int y = 0; y < rectangle.getSizeY(); y++) {
+                final Point2D point = rectangle.realPoint(new Integer2DPoint(x, y), PIXELSIZE);
+                final boolean inA = a.get(point);
+                final boolean inB = b.get(point);
+                final boolean expected = inA && inB ? both : inA ? onlyA : inB && onlyB;
+                assertEquals("pixel " + x + ", " + y, expected, result.get(x, y));
+            }
+        }
+    }
+
     private static String printGrid(final BooleanGrid grid) {
         final StringBuilder output = new StringBuilder();
         for (int y = grid.getRectangle().getSizeY() - 1; y >= 0; y--) {
@@ -0,0 +1,104 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+import org.reprap.geometry.polygons.CSG2D;
+import org.reprap.geometry.polygons.Point2D;
+import org.reprap.geometry.polygons.Rectangle;
+
+public class ConnectedComponentsTest {
+    private static final double PIXELSIZE = 0.03;
+    private static final Rectangle GRID_RECTANGLE = new Rectangle(new Point2D(0, 0), new Point2D(3.2, 2.7));
+
+    private static BooleanGrid box(final double minX, final double minY, final double maxX, final double maxY) {
+        return new BooleanGrid(PIXELSIZE, null, GRID_RECTANGLE, CSG2D.RrCSGFromBox(new Rectangle(new Point2D(minX, minY),
+                new Point2D(maxX, maxY))));
+    }
+
+    /**
+     * A C open to the left, whose arms only join in the last columns, a ring
+     * and an island in the ring.
+     */
+    private static BooleanGrid makeShapes() {
+        BooleanGrid result = box(0.3, 2.1, 1.8, 2.4);
+        result = BooleanGridMath.union(result, box(0.3, 0.3, 1.8, 0.6));
+        result = BooleanGridMath.union(result, box(1.5, 0.3, 1.8, 2.4));
+        result = BooleanGridMath.union(result, BooleanGridMath.difference(box(2.1, 0.3, 2.9, 1.1), box(2.3, 0.5, 2.7, 0.9)));
+        return BooleanGridMath.union(result, box(2.45, 0.65, 2.55, 0.75));
+    }
+
+    @Test
+    public void testFindsAllComponents() {
+        final BooleanGrid shapes = makeShapes();
+        final ConnectedComponents components = new ConnectedComponents(shapes);
+        assertEquals(3, components.size());
+        assertEquals(0, components.componentAt(new Point2D(0.4, 2.2)));
+        assertEquals(0, components.componentAt(new Point2D(0.4, 0.4)));
+        assertEquals(-1, components.componentAt(new Point2D(1.0, 1.2)));
+        assertEquals(1, components.componentAt(new Point2D(2.8, 1.0)));
+        assertEquals(2, components.componentAt(new Point2D(2.5, 0.7)));
+
+        final Point2D island = components.getCentroid(2);
+        assertTrue(Point2D.d(island, new Point2D(2.5, 0.7)) < PIXELSIZE);
+
+        BooleanGrid all = BooleanGridTest.emptyGrid();
+        long pixels = 0;
+        for (int i = 0; i < components.size(); i++) {
+            final BooleanGrid component = components.getComponent(i);
+            assertEquals(1, new ConnectedComponents(component).size());
+            all = BooleanGridMath.union(all, component);
+            pixels += components.getPixelCount(i);
+        }
+        assertTrue(BooleanGridTest.gridEquals(shapes, BooleanGridMath.union(all, shapes.emptyCopy())));
+        assertEquals(countPixels(shapes), pixels);
+    }
+
+    @Test
+    public void testTouchingComponents() {
+        final ConnectedComponents shapes = new ConnectedComponents(makeShapes());
+        final ConnectedComponents bar = new ConnectedComponents(box(1.6, 1.0, 2.2, 1.2));
+        assertEquals(1, bar.size());
+        final BitSet touched = bar.touching(0, shapes);
+        assertEquals(2, touched.cardinality());
+        assertTrue(touched.get(0));
+        assertTrue(touched.get(1));
+        final Point2D both = shapes.getCentroid(touched);
+        assertNull(shapes.getCentroid(new BitSet()));
+        assertTrue(both.x() > shapes.getCentroid(0).x() && both.x() < shapes.getCentroid(1).x());
+    }
+
+    private static long countPixels(final BooleanGrid grid) {
+        long result = 0;
+        for (int x = 0; x < grid.getRectangle().getSizeX(); x++) {
+            for (int y = 0; y < grid.getRectangle().getSizeY(); y++) {
+                if (grid.get(x, y)) {
+                    result++;
+                }
+            }
+        }
+        return result;
+    }
+}
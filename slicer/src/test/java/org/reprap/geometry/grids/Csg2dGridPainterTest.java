@@ -0,0 +1,57 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.reprap.geometry.polygons.CSG2D;
+import org.reprap.geometry.polygons.Point2D;
+import org.reprap.geometry.polygons.Polygon;
+import org.reprap.geometry.polygons.PolygonList;
+import org.reprap.geometry.polygons.Rectangle;
+
+public class Csg2dGridPainterTest {
+    private static final double PIXELSIZE = 0.03;
+
+    @Test
+    public void testParallelPaintingMatchesPointEvaluation() {
+        final Polygon triangle = new Polygon("test", true);
+        triangle.add(new Point2D(1.013, 0.517));
+        triangle.add(new Point2D(28.971, 3.233));
+        triangle.add(new Point2D(13.379, 27.811));
+        final PolygonList polygons = new PolygonList();
+        polygons.add(triangle);
+        final CSG2D csg = polygons.toCSG();
+        final BooleanGrid grid = new BooleanGrid(PIXELSIZE, null, new Rectangle(new Point2D(0, 0), new Point2D(30, 30)), csg);
+        final Integer2DRectangle rectangle = grid.getRectangle();
+        int solid = 0;
+        for (int x = 0; x < rectangle.getSizeX(); x++) {
+            for (int y = 0; y < rectangle.getSizeY(); y++) {
+                final Integer2DPoint point = new Integer2DPoint(x, y);
+                final boolean expected = csg.value(rectangle.realPoint(point, PIXELSIZE)) <= 0;
+                assertEquals("pixel " + point, expected, grid.get(point));
+                if (expected) {
+                    solid++;
+                }
+            }
+        }
+        assertEquals(true, solid > 0);
+    }
+}
@@ -0,0 +1,202 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+import org.reprap.configuration.BitmapStorage;
+import org.reprap.geometry.polygons.CSG2D;
+import org.reprap.geometry.polygons.HalfPlane;
+import org.reprap.geometry.polygons.Point2D;
+import org.reprap.geometry.polygons.Polygon;
+import org.reprap.geometry.polygons.PolygonList;
+import org.reprap.geometry.polygons.Rectangle;
+
+public class GridBandsTest {
+    private static final double PIXELSIZE = 0.03;
+    private static final double SIZE = 6;
+
+    @After
+    public void restoreBands() {
+        GridBands.setMinimumBandPixels(0);
+    }
+
+    @Test
+    public void testSplitRespectsAlignment() {
+        GridBands.setMinimumBandPixels(1);
+        final int[] bounds = GridBands.split(1000, 10, 64);
+        assertTrue(bounds.length >= 3);
+        assertEquals(0, bounds[0]);
+        assertEquals(1000, bounds[bounds.length - 1]);
+        for (int b = 1; b < bounds.length - 1; b++) {
+            assertEquals(0, bounds[b] % 64);
+            assertTrue(bounds[b] > bounds[b - 1]);
+        }
+        GridBands.setMinimumBandPixels(0);
+        assertEquals(2, GridBands.split(1000, 10, 64).length);
+    }
+
+    @Test
+    public void testWalkingInBandsMatchesOneBand() {
+        for (final BitmapStorage storage : BitmapStorage.values()) {
+            final BooleanGrid shape = makeSpeckledShape(storage);
+            final BooleanGrid single = new BooleanGrid(shape);
+            final Integer2DPolygonList expected = new BooleanGridWalker(single).marchAll();
+            GridBands.setMinimumBandPixels(1);
+            final BooleanGrid banded = new BooleanGrid(shape);
+            final Integer2DPolygonList actual = new BooleanGridWalker(banded).marchAll();
+            GridBands.setMinimumBandPixels(0);
+            assertTrue(expected.size() > 100);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                final Integer2DPolygon e = expected.polygon(i);
+                final Integer2DPolygon a = actual.polygon(i);
+                assertEquals("size of polygon " + i, e.size(), a.size());
+                for (int j = 0; j < e.size(); j++) {
+                    assertEquals("x of point " + j + " of polygon " + i, e.getX(j), a.getX(j));
+                    assertEquals("y of point " + j + " of polygon " + i, e.getY(j), a.getY(j));
+                }
+            }
+            assertTrue("pixels deleted by the walk", BooleanGridTest.gridEquals(single, banded));
+            assertTrue("no pixels deleted by the walk", !BooleanGridTest.gridEquals(shape, single));
+        }
+    }
+
+    @Test
+    public void testOffsetsInBandsMatchOneBand() {
+        for (final BitmapStorage storage : BitmapStorage.values()) {
+            final BooleanGrid shape = makeSpeckledShape(storage);
+            final double[] distances = { 4 * PIXELSIZE, -3 * PIXELSIZE, 40 * PIXELSIZE, -30 * PIXELSIZE };
+            final List<BooleanGrid> expected = shape.createOffsetGrids(distances);
+            GridBands.setMinimumBandPixels(1);
+            final List<BooleanGrid> actual = shape.createOffsetGrids(distances);
+            for (int i = 0; i < distances.length; i++) {
+                assertTrue("offset by " + distances[i], BooleanGridTest.gridEquals(expected.get(i), actual.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void testBooleanOperationsInBandsMatchOneBand() {
+        for (final BitmapStorage storage : BitmapStorage.values()) {
+            final BooleanGrid shape = makeSpeckledShape(storage);
+            final BooleanGrid shifted = new BooleanGrid(PIXELSIZE, "test", new Rectangle(new Point2D(1.3, 0.7), new Point2D(
+                    SIZE + 2, SIZE + 1)), makeShape(SIZE + 1).csg, storage);
+            final BooleanGrid offset = shape.createOffsetGrid(-5 * PIXELSIZE);
+            final BooleanGrid[] expected = combinations(shape, shifted, offset);
+            GridBands.setMinimumBandPixels(1);
+            final BooleanGrid[] actual = combinations(shape, shifted, offset);
+            for (int i = 0; i < expected.length; i++) {
+                assertTrue("combination " + i, BooleanGridTest.gridEquals(expected[i], actual[i]));
+            }
+        }
+    }
+
+    @Test
+    public void testHatchingInBandsMatchesOneBand() {
+        final BooleanGrid shape = makeSpeckledShape(BitmapStorage.DENSE);
+        final HalfPlane hp = new HalfPlane(new Point2D(0, 0), new Point2D(1, 0.3));
+        final PolygonList expected = new Hatcher(shape).hatch(hp, 0.5, true);
+        GridBands.setMinimumBandPixels(1);
+        final PolygonList actual = new Hatcher(shape).hatch(hp, 0.5, true);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            final Polygon e = expected.polygon(i);
+            final Polygon a = actual.polygon(i);
+            assertEquals(e.size(), a.size());
+            for (int j = 0; j < e.size(); j++) {
+                assertEquals(e.point(j).x(), a.point(j).x(), 0);
+                assertEquals(e.point(j).y(), a.point(j).y(), 0);
+            }
+        }
+    }
+
+    private static BooleanGrid[] combinations(final BooleanGrid shape, final BooleanGrid shifted, final BooleanGrid offset) {
+        return new BooleanGrid[] { BooleanGridMath.union(shape, shifted), BooleanGridMath.intersection(shape, shifted),
+                BooleanGridMath.difference(shape, shifted), BooleanGridMath.union(shape, offset),
+                BooleanGridMath.difference(shape, offset), BooleanGridMath.intersection(shifted, offset) };
+    }
+
+    /**
+     * A shape with lots of single pixel specks and holes, so that contours
+     * cross the seams between bands, touch each other diagonally and make the
+     * walker delete pixels. Holes that would touch diagonally are left out:
+     * next to contours already walked they can make a walk start on the
+     * ambiguous square, which the walker reports as an error.
+     */
+    private static BooleanGrid makeSpeckledShape(final BitmapStorage storage) {
+        final Shape shape = makeShape(SIZE);
+        final BooleanGrid result = new BooleanGrid(PIXELSIZE, "test", shape.rectangle, shape.csg, storage);
+        final Random random = new Random(42);
+        final int sizeX = result.getRectangle().getSizeX();
+        final int sizeY = result.getRectangle().getSizeY();
+        for (int i = 0; i < sizeX * sizeY / 20; i++) {
+            final Integer2DPoint p = new Integer2DPoint(2 + random.nextInt(sizeX - 4), 2 + random.nextInt(sizeY - 4));
+            result.set(p, !result.get(p));
+            if (!result.get(p) && isSaddleCorner(result, p)) {
+                result.set(p, true);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Whether the pixel is a corner of a 2 x 2 square with only its diagonal
+     * set
+     */
+    private static boolean isSaddleCorner(final BooleanGrid grid, final Integer2DPoint p) {
+        for (int x = p.getX() - 1; x <= p.getX(); x++) {
+            for (int y = p.getY() - 1; y <= p.getY(); y++) {
+                final boolean a = grid.get(x, y);
+                if (a == grid.get(x + 1, y + 1) && a != grid.get(x + 1, y) && a != grid.get(x, y + 1)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static final class Shape {
+        private final Rectangle rectangle;
+        private final CSG2D csg;
+
+        Shape(final Rectangle rectangle, final CSG2D csg) {
+            this.rectangle = rectangle;
+            this.csg = csg;
+        }
+    }
+
+    private static Shape makeShape(final double size) {
+        final Polygon polygon = new Polygon("test", true);
+        polygon.add(new Point2D(0.1 * size, 0.1 * size));
+        polygon.add(new Point2D(0.9 * size, 0.2 * size));
+        polygon.add(new Point2D(0.5 * size, 0.5 * size));
+        polygon.add(new Point2D(0.7 * size, 0.9 * size));
+        polygon.add(new Point2D(0.2 * size, 0.6 * size));
+        final PolygonList polygons = new PolygonList();
+        polygons.add(polygon);
+        return new Shape(new Rectangle(new Point2D(0, 0), new Point2D(size, size)), polygons.toCSG());
+    }
+}
@@ -0,0 +1,110 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.reprap.geometry.polygons.HalfPlane;
+import org.reprap.geometry.polygons.Point2D;
+
+public class GridBufferArenaTest {
+    @Test
+    public void testBorrowedArraysAreReusedCleared() {
+        GridBufferArena.clear();
+        final GridBufferArena arena = GridBufferArena.get();
+        final long[] first = arena.borrowLongs(1000);
+        first[17] = 42;
+        arena.giveBack(first);
+        final long[] second = arena.borrowLongs(1000);
+        assertTrue(first == second);
+        assertEquals(0, second[17]);
+        final int[] lost = arena.borrowInts(500);
+        lost[3] = 7;
+        GridBufferArena.releaseLayer();
+        final int[] again = arena.borrowInts(500);
+        assertTrue(lost == again);
+        assertEquals(0, again[3]);
+        GridBufferArena.releaseLayer();
+    }
+
+    @Test
+    public void testFreeArraysOfSizesNotAskedForAreDroppedFirst() {
+        GridBufferArena.clear();
+        final GridBufferArena arena = GridBufferArena.get();
+        final long[] old = arena.borrowLongs(5 << 20);
+        arena.giveBack(old);
+        final long[] recent = arena.borrowLongs(4 << 20);
+        arena.giveBack(recent);
+        assertTrue(recent == arena.borrowLongs(4 << 20));
+        assertTrue(old != arena.borrowLongs(5 << 20));
+        GridBufferArena.releaseLayer();
+        GridBufferArena.clear();
+    }
+
+    /**
+     * The grid work of a layer: outlines, shells from morphology and the
+     * distance transform, and infill.
+     */
+    private static long layer(final BooleanGrid shape) {
+        long result = shape.allPerimiters().size();
+        final List<BooleanGrid> shells = shape.createOffsetGrids(-0.3, -0.9, -1.5);
+        for (final BooleanGrid shell : shells) {
+            result += shell.allPerimiters().size();
+        }
+        result += new Hatcher(shells.get(2)).hatch(new HalfPlane(new Point2D(0, 0), new Point2D(1, 1)), 0.5, true).size();
+        GridBufferArena.releaseLayer();
+        return result;
+    }
+
+    private static long allocatedByLayers(final BooleanGrid shape, final int layers, final boolean pooling) {
+        GridBufferArena.setPooling(pooling);
+        try {
+            layer(shape);
+            final long before = AllocationMeter.allocatedBytes();
+            final long start = System.currentTimeMillis();
+            for (int i = 0; i < layers; i++) {
+                layer(shape);
+            }
+            final long allocated = (AllocationMeter.allocatedBytes() - before) / layers;
+            System.out.println("A layer with" + (pooling ? "" : "out") + " the buffer arena took "
+                    + (System.currentTimeMillis() - start) / layers + " ms and allocated " + allocated / 1024 + " kB.");
+            return allocated;
+        } finally {
+            GridBufferArena.setPooling(true);
+        }
+    }
+
+    @Test
+    public void testArenaCutsHeapChurn() {
+        final BooleanGrid shape = MorphologyTest.makeShape(30);
+        GridBufferArena.setPooling(false);
+        final long unpooledResult = layer(shape);
+        GridBufferArena.setPooling(true);
+        assertEquals(unpooledResult, layer(shape));
+        final long without = allocatedByLayers(shape, 5, false);
+        final long with = allocatedByLayers(shape, 5, true);
+        if (AllocationMeter.allocatedBytes() >= 0) {
+            assertTrue(with < without);
+        }
+    }
+}
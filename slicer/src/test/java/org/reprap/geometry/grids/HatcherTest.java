@@ -0,0 +1,215 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.reprap.geometry.polygons.CSG2D;
+import org.reprap.geometry.polygons.HalfPlane;
+import org.reprap.geometry.polygons.Point2D;
+import org.reprap.geometry.polygons.PolygonList;
+import org.reprap.geometry.polygons.Rectangle;
+
+public class HatcherTest {
+    /**
+     * The shape of MorphologyTest with two holes.
+     */
+    private static BooleanGrid makeHoledShape(final double size) {
+        final BooleanGrid shape = MorphologyTest.makeShape(size);
+        final Rectangle rectangle = new Rectangle(new Point2D(0, 0), new Point2D(size, size));
+        final CSG2D holes = CSG2D.union(
+                CSG2D.RrCSGFromBox(new Rectangle(new Point2D(0.2 * size, 0.2 * size), new Point2D(0.27 * size, 0.5 * size))),
+                CSG2D.RrCSGFromBox(new Rectangle(new Point2D(0.4 * size, 0.2 * size), new Point2D(0.6 * size, 0.25 * size))));
+        return BooleanGridMath.difference(shape, new BooleanGrid(shape.getPixelSize(), "test", rectangle, holes));
+    }
+
+    private static List<HalfPlane> lines(final HalfPlane first, final double gap, final int count) {
+        final List<HalfPlane> result = new ArrayList<HalfPlane>();
+        HalfPlane line = first;
+        for (int i = 0; i < count; i++) {
+            result.add(line);
+            line = line.offset(gap);
+        }
+        return result;
+    }
+
+    /**
+     * The number of spans, after checking them against the traversal
+     */
+    private static int assertSameSpans(final BooleanGrid shape, final List<HalfPlane> lines) {
+        final Hatcher hatcher = new Hatcher(shape);
+        final Integer2DPolygon[] crossings = ContourCrossings.cross(shape, lines);
+        int result = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            final Integer2DPolygon traversed = hatcher.hatch(lines.get(i));
+            assertEquals("line " + i, traversed.size(), crossings[i].size());
+            for (int j = 0; j < traversed.size(); j++) {
+                assertEquals("line " + i, traversed.getX(j), crossings[i].getX(j));
+                assertEquals("line " + i, traversed.getY(j), crossings[i].getY(j));
+            }
+            result += traversed.size() / 2;
+        }
+        return result;
+    }
+
+    @Test
+    public void testContourCrossingsMatchTraversal() {
+        final BooleanGrid shape = makeHoledShape(5);
+        assertTrue(assertSameSpans(shape, lines(new HalfPlane(new Point2D(0, -5), new Point2D(1, -4.63)), 0.037, 300)) > 200);
+        assertTrue(assertSameSpans(shape, lines(new HalfPlane(new Point2D(6, 0), new Point2D(5.6, 1)), 0.05, 200)) > 100);
+    }
+
+    /**
+     * Whether every span of p longer than four pixels is also a span of q,
+     * give or take three pixels at either end: where a line runs along a
+     * staircase of the boundary rounding can move its ends along it.
+     */
+    private static boolean hasLongSpans(final Integer2DPolygon p, final Integer2DPolygon q) {
+        for (int i = 0; i + 1 < p.size(); i += 2) {
+            if (p.point(i).sub(p.point(i + 1)).magnitude2() <= 16) {
+                continue;
+            }
+            boolean found = false;
+            for (int j = 0; j + 1 < q.size(); j += 2) {
+                found |= q.point(j).sub(p.point(i)).magnitude2() <= 9 && q.point(j + 1).sub(p.point(i + 1)).magnitude2() <= 9;
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Test
+    public void testPatternMasksMatchTraversal() {
+        PatternMasks.clear();
+        final BooleanGrid shape = makeHoledShape(5);
+        final BooleanGrid moved = new BooleanGrid(shape, shape.getRectangle().offset(40));
+        final Hatcher hatcher = new Hatcher(shape);
+        final Hatcher movedHatcher = new Hatcher(moved);
+        for (final HalfPlane first : new HalfPlane[] { new HalfPlane(new Point2D(0, -5), new Point2D(1, -4.63)),
+                new HalfPlane(new Point2D(6, 0), new Point2D(5.6, 1)), new HalfPlane(new Point2D(-1, 0), new Point2D(0, -1)) }) {
+            final List<HalfPlane> lines = lines(first, 0.13, 100);
+            final Integer2DPolygon[] masked = PatternMasks.cross(shape, lines, 0.13);
+            final Integer2DPolygon[] movedMasked = PatternMasks.cross(moved, lines, 0.13);
+            int spans = 0;
+            for (int i = 0; i < lines.size(); i++) {
+                final Integer2DPolygon traversed = hatcher.hatch(lines.get(i));
+                assertTrue("line " + i, hasLongSpans(traversed, masked[i]));
+                assertTrue("line " + i, hasLongSpans(masked[i], traversed));
+                assertTrue("line " + i, hasLongSpans(movedHatcher.hatch(lines.get(i)), movedMasked[i]));
+                spans += masked[i].size() / 2;
+            }
+            assertTrue(spans > 50);
+        }
+        assertTrue(PatternMasks.cross(shape, lines(new HalfPlane(new Point2D(0, 0), new Point2D(1, 1)), 0.05, 10), 0.05) == null);
+        PatternMasks.clear();
+    }
+
+    @Test
+    public void testJoinedSnakes() {
+        final BooleanGrid shape = makeHoledShape(30);
+        final HalfPlane line = new HalfPlane(new Point2D(0, -30), new Point2D(1, -29.63));
+        final int snakes = new Hatcher(shape).hatch(line, 0.2, false).size();
+        long start = System.currentTimeMillis();
+        final int joined = new Hatcher(shape).hatch(line, 0.2, true).size();
+        System.out.println("Joining " + snakes + " snakes into " + joined + " took "
+                + (System.currentTimeMillis() - start) + " ms.");
+        assertTrue(joined > 0);
+        assertTrue(joined < snakes);
+    }
+
+    @Test
+    public void testRepeatedHatchesComeFromTheCache() {
+        HatchCache.clear();
+        final BooleanGrid shape = makeHoledShape(5);
+        final HalfPlane line = new HalfPlane(new Point2D(0, -5), new Point2D(1, -4.63));
+        final PolygonList first = new Hatcher(shape).hatch(line, 0.2, true);
+        final PolygonList again = new Hatcher(new BooleanGrid(shape, shape.getRectangle())).hatch(line, 0.2, true);
+        assertEquals(1, HatchCache.getHits());
+        assertEquals(1, HatchCache.getMisses());
+        assertTrue(first != again);
+        assertEquals(first.size(), again.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(first.polygon(i).size(), again.polygon(i).size());
+            for (int j = 0; j < first.polygon(i).size(); j++) {
+                assertEquals(0, Point2D.d(first.polygon(i).point(j), again.polygon(i).point(j)), 0);
+            }
+        }
+        new Hatcher(shape).hatch(line.offset(0.05), 0.2, true);
+        final BooleanGrid changed = new BooleanGrid(shape, shape.getRectangle());
+        changed.setColumn(3, 3, 3, !changed.get(3, 3));
+        new Hatcher(changed).hatch(line, 0.2, true);
+        assertEquals(1, HatchCache.getHits());
+        assertEquals(3, HatchCache.getMisses());
+        HatchCache.clear();
+    }
+
+    private static long traverse(final BooleanGrid shape, final List<HalfPlane> lines) {
+        final Hatcher hatcher = new Hatcher(shape);
+        long result = 0;
+        for (final HalfPlane line : lines) {
+            result += hatcher.hatch(line).size();
+        }
+        return result;
+    }
+
+    private static long cross(final BooleanGrid shape, final List<HalfPlane> lines) {
+        long result = 0;
+        for (final Integer2DPolygon crossings : ContourCrossings.cross(shape, lines)) {
+            result += crossings.size();
+        }
+        return result;
+    }
+
+    @Test
+    public void testCrossingPerformance() {
+        final BooleanGrid shape = makeHoledShape(30);
+        final int iterations = 10;
+        for (final double gap : new double[] { 0.5, 0.2, 0.1 }) {
+            final List<HalfPlane> lines = lines(new HalfPlane(new Point2D(0, -30), new Point2D(1, -29.63)), gap,
+                    (int) (45 / gap));
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < iterations; i++) {
+                traverse(shape, lines);
+            }
+            final long traversal = System.currentTimeMillis() - start;
+            start = System.currentTimeMillis();
+            for (int i = 0; i < iterations; i++) {
+                cross(shape, lines);
+            }
+            final long crossing = System.currentTimeMillis() - start;
+            PatternMasks.cross(shape, lines, gap);
+            start = System.currentTimeMillis();
+            for (int i = 0; i < iterations; i++) {
+                PatternMasks.cross(shape, lines, gap);
+            }
+            final long masked = System.currentTimeMillis() - start;
+            System.out.println("Hatching " + lines.size() + " lines " + iterations + " times took " + traversal
+                    + " ms by traversal, " + crossing + " ms from the contour cells, " + masked
+                    + " ms with pattern masks.");
+        }
+        PatternMasks.clear();
+    }
+}
@@ -0,0 +1,101 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.reprap.geometry.polygons.CSG2D;
+import org.reprap.geometry.polygons.Point2D;
+import org.reprap.geometry.polygons.Polygon;
+import org.reprap.geometry.polygons.PolygonList;
+import org.reprap.geometry.polygons.Rectangle;
+
+public class MorphologyTest {
+    private static final double PIXELSIZE = 0.03;
+
+    static BooleanGrid makeShape(final double size) {
+        final Polygon polygon = new Polygon("test", true);
+        polygon.add(new Point2D(0.1 * size, 0.1 * size));
+        polygon.add(new Point2D(0.9 * size, 0.2 * size));
+        polygon.add(new Point2D(0.5 * size, 0.5 * size));
+        polygon.add(new Point2D(0.7 * size, 0.9 * size));
+        polygon.add(new Point2D(0.2 * size, 0.6 * size));
+        final PolygonList polygons = new PolygonList();
+        polygons.add(polygon);
+        final CSG2D csg = CSG2D.union(polygons.toCSG(), CSG2D.RrCSGFromBox(new Rectangle(new Point2D(0.3 * size, 0.05 * size),
+                new Point2D(0.35 * size, 0.95 * size))));
+        return new BooleanGrid(PIXELSIZE, "test", new Rectangle(new Point2D(0, 0), new Point2D(size, size)), csg);
+    }
+
+    @Test
+    public void testKernelsMatchDistanceTransform() {
+        final BooleanGrid shape = makeShape(3);
+        for (int r = 1; r <= Morphology.MAX_RADIUS + 2; r++) {
+            assertTrue("dilation by " + r, BooleanGridTest.gridEquals(dilateByDistance(shape, r), dilateByKernel(shape, r)));
+            assertTrue("erosion by " + r, BooleanGridTest.gridEquals(erodeByDistance(shape, r), erodeByKernel(shape, r)));
+        }
+    }
+
+    @Test
+    public void testKernelPerformance() {
+        final BooleanGrid shape = makeShape(30);
+        final int iterations = 5;
+        for (final int r : new int[] { 2, 4, 8, 16, 24, 32 }) {
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < iterations; i++) {
+                dilateByKernel(shape, r);
+                erodeByKernel(shape, r);
+            }
+            final long kernel = System.currentTimeMillis() - start;
+            start = System.currentTimeMillis();
+            for (int i = 0; i < iterations; i++) {
+                dilateByDistance(shape, r);
+                erodeByDistance(shape, r);
+            }
+            final long distance = System.currentTimeMillis() - start;
+            System.out.println("Offsetting by " + r + " pixels " + iterations + " times took " + kernel + " ms with kernels, "
+                    + distance + " ms with distance transforms.");
+        }
+    }
+
+    private static BooleanGrid dilateByKernel(final BooleanGrid shape, final int r) {
+        final BooleanGrid result = new BooleanGrid(shape, shape.getRectangle().offset(r));
+        Morphology.dilate(result, r);
+        return result;
+    }
+
+    private static BooleanGrid erodeByKernel(final BooleanGrid shape, final int r) {
+        final BooleanGrid result = new BooleanGrid(shape);
+        Morphology.erode(result, r);
+        return result;
+    }
+
+    private static BooleanGrid dilateByDistance(final BooleanGrid shape, final int r) {
+        final BooleanGrid result = new BooleanGrid(shape.getPixelSize(), shape.getMaterial(), shape.getRectangle().offset(r));
+        DistanceTransform.toSolid(shape, r).mark(result, r * r, true);
+        return result;
+    }
+
+    private static BooleanGrid erodeByDistance(final BooleanGrid shape, final int r) {
+        final BooleanGrid result = new BooleanGrid(shape);
+        DistanceTransform.toAir(shape).mark(result, r * r, false);
+        return result;
+    }
+}
@@ -0,0 +1,153 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.reprap.configuration.BitmapStorage;
+
+public class SkinStackTest {
+    private static final int SIZE_X = 37;
+    private static final int SIZE_Y = 150;
+    private static final int LAYERS = 70;
+
+    /**
+     * Random boxes growing and shrinking through the layers, with air layers
+     * in between.
+     */
+    private static boolean[][][] makeSolid(final Random random) {
+        final boolean[][][] solid = new boolean[LAYERS][SIZE_X][SIZE_Y];
+        for (int box = 0; box < 12; box++) {
+            final int x0 = random.nextInt(SIZE_X);
+            final int y0 = random.nextInt(SIZE_Y);
+            final int x1 = Math.min(SIZE_X, x0 + 1 + random.nextInt(SIZE_X / 2));
+            final int y1 = Math.min(SIZE_Y, y0 + 1 + random.nextInt(SIZE_Y / 2));
+            final int z0 = random.nextInt(LAYERS);
+            final int z1 = Math.min(LAYERS, z0 + 1 + random.nextInt(LAYERS / 2));
+            for (int z = z0; z < z1; z++) {
+                for (int x = x0; x < x1; x++) {
+                    for (int y = y0; y < y1; y++) {
+                        solid[z][x][y] = true;
+                    }
+                }
+            }
+        }
+        solid[LAYERS / 2] = new boolean[SIZE_X][SIZE_Y];
+        return solid;
+    }
+
+    private static boolean solid(final boolean[][][] solid, final int z, final int x, final int y) {
+        return z >= 0 && z < LAYERS && solid[z][x][y];
+    }
+
+    private static boolean allSolid(final boolean[][][] solid, final int from, final int to, final int x, final int y) {
+        boolean result = true;
+        for (int z = from; z <= to; z++) {
+            result &= solid(solid, z, x, y);
+        }
+        return result;
+    }
+
+    private static BooleanGrid layer(final boolean[][] solid, final BitmapStorage storage) {
+        final BooleanGrid grid = new BooleanGrid(0.1, "test", new Integer2DRectangle(new Integer2DPoint(3, 4),
+                new Integer2DPoint(3 + SIZE_X - 1, 4 + SIZE_Y - 1)), storage);
+        for (int x = 0; x < SIZE_X; x++) {
+            for (int y = 0; y < SIZE_Y; y++) {
+                if (solid[x][y]) {
+                    grid.setColumn(x, y, y, true);
+                }
+            }
+        }
+        return grid;
+    }
+
+    @Test
+    public void testSkinsMatchNeighbourLayers() {
+        final Random random = new Random(42);
+        GridBands.setMinimumBandPixels(1);
+        try {
+            for (final int shells : new int[] { 1, 3, 4 }) {
+                final boolean[][][] solid = makeSolid(random);
+                final SkinStack stack = new SkinStack("test", LAYERS, shells, true);
+                for (int z = 0; z < LAYERS; z++) {
+                    stack.add(z, layer(solid[z], BitmapStorage.DENSE));
+                }
+                stack.classify();
+                int skins = 0;
+                for (int z = 0; z < LAYERS; z++) {
+                    final BooleanGrid skin = stack.skin(z);
+                    final BooleanGrid unsupported = stack.unsupported(z);
+                    for (int x = 0; x < SIZE_X; x++) {
+                        for (int y = 0; y < SIZE_Y; y++) {
+                            final boolean below = allSolid(solid, z - shells, z - 1, x, y);
+                            final boolean above = allSolid(solid, z + 1, z + shells, x, y);
+                            final String pixel = shells + " shells at " + x + ", " + y + ", " + z;
+                            assertEquals(pixel, solid[z][x][y] && !(below && above), skin.get(x, y));
+                            assertEquals(pixel, solid[z][x][y] && !below, unsupported.get(x, y));
+                            skins += skin.get(x, y) ? 1 : 0;
+                        }
+                    }
+                }
+                assertTrue(skins > 1000);
+            }
+        } finally {
+            GridBands.setMinimumBandPixels(0);
+        }
+    }
+
+    @Test
+    public void testSkinsKeepTheStorageOfTheLayers() {
+        final Random random = new Random(7);
+        final boolean[][][] solid = makeSolid(random);
+        final SkinStack stack = new SkinStack("test", LAYERS, 2, true);
+        for (int z = 0; z < LAYERS; z++) {
+            stack.add(z, layer(solid[z], BitmapStorage.OFF_HEAP));
+        }
+        stack.classify();
+        int grids = 0;
+        for (int z = 0; z < LAYERS; z++) {
+            for (final BooleanGrid grid : new BooleanGrid[] { stack.skin(z), stack.unsupported(z) }) {
+                if (grid != BooleanGrid.NOTHING_THERE) {
+                    assertEquals(BitmapStorage.OFF_HEAP, grid.getStorage());
+                    grid.release();
+                    grids++;
+                }
+            }
+        }
+        assertTrue(grids > 0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReleasedLayersAreGone() {
+        final boolean[][][] solid = makeSolid(new Random(3));
+        final SkinStack stack = new SkinStack("test", LAYERS, 2, true);
+        for (int z = 0; z < LAYERS; z++) {
+            stack.add(z, layer(solid[z], BitmapStorage.DENSE));
+        }
+        stack.classify();
+        stack.skin(5).release();
+        stack.release(5);
+        stack.skin(6).release();
+        stack.unsupported(5);
+    }
+}
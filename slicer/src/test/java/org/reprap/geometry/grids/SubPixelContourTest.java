@@ -0,0 +1,91 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.grids;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.reprap.configuration.BitmapStorage;
+import org.reprap.geometry.polygons.Point2D;
+import org.reprap.geometry.polygons.Polygon;
+import org.reprap.geometry.polygons.PolygonList;
+import org.reprap.geometry.polygons.Rectangle;
+
+public class SubPixelContourTest {
+    private static final double RADIUS = 5;
+    private static final Point2D CENTRE = new Point2D(6.1, 5.9);
+    private static final double OFFSET = 0.9;
+
+    private static BooleanGrid makeCircle(final double pixelSize, final boolean subPixel) {
+        final Polygon polygon = new Polygon("test", true);
+        for (int i = 0; i < 720; i++) {
+            final double angle = 2 * Math.PI * i / 720;
+            polygon.add(new Point2D(CENTRE.x() + RADIUS * Math.cos(angle), CENTRE.y() + RADIUS * Math.sin(angle)));
+        }
+        final PolygonList polygons = new PolygonList();
+        polygons.add(polygon);
+        return new BooleanGrid(pixelSize, "test", new Rectangle(new Point2D(0, 0), new Point2D(12, 12)), polygons.toCSG(),
+                BitmapStorage.DENSE, subPixel);
+    }
+
+    /**
+     * The largest distance of a corner of the outlines from the circle.
+     */
+    private static double maxError(final PolygonList outlines, final double radius) {
+        double result = 0;
+        for (int i = 0; i < outlines.size(); i++) {
+            final Polygon polygon = outlines.polygon(i);
+            for (int j = 0; j < polygon.size(); j++) {
+                final double distance = Point2D.d(polygon.point(j), CENTRE);
+                result = Math.max(result, Math.abs(distance - radius));
+            }
+        }
+        return result;
+    }
+
+    private static double[] measure(final double pixelSize, final boolean subPixel) {
+        final long start = System.nanoTime();
+        final BooleanGrid circle = makeCircle(pixelSize, subPixel);
+        final BooleanGrid grown = circle.createOffsetGrid(OFFSET);
+        final BooleanGrid shrunk = circle.createOffsetGrid(-OFFSET);
+        final double outline = maxError(circle.allPerimiters(), RADIUS);
+        final double offsets = Math.max(maxError(grown.allPerimiters(), RADIUS + OFFSET),
+                maxError(shrunk.allPerimiters(), RADIUS - OFFSET));
+        final long millis = (System.nanoTime() - start) / 1000000;
+        System.out.println("sub-pixel " + subPixel + ", pixel size " + pixelSize + " took " + millis
+                + " ms, max error of outline " + outline + ", of offsets " + offsets);
+        return new double[] { outline, offsets };
+    }
+
+    @Test
+    public void testSubPixelContoursAreMoreAccurate() {
+        final double[] sizes = { 0.03, 0.06, 0.12 };
+        final double[][] pixel = new double[sizes.length][];
+        final double[][] subPixel = new double[sizes.length][];
+        for (int i = 0; i < sizes.length; i++) {
+            pixel[i] = measure(sizes[i], false);
+            subPixel[i] = measure(sizes[i], true);
+        }
+        for (int i = 0; i < sizes.length; i++) {
+            assertTrue("outline at " + sizes[i], subPixel[i][0] < pixel[i][0]);
+            assertTrue("offsets at " + sizes[i], subPixel[i][1] < pixel[i][1]);
+        }
+        assertTrue("twice the pixel size", subPixel[1][0] <= pixel[0][0]);
+    }
+}
@@ -0,0 +1,49 @@
+/* RepRapProSlicer creates G-Code from geometry files.
+ *
+ *  Copyright (C) 2013  Holger Oehm
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.reprap.geometry.polygons;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class PolygonListTest {
+    private static Polygon line(final double x, final int layers) {
+        final Polygon result = new Polygon("test", false);
+        result.add(new Point2D(x, 0));
+        result.add(new Point2D(x, 10));
+        result.setLayers(layers);
+        return result;
+    }
+
+    @Test
+    public void testReOrderJoinsOnlyExtrusionsOfTheSameHeight() {
+        final PolygonList list = new PolygonList();
+        list.add(line(0, 1));
+        list.add(line(0.1, 3));
+        list.add(line(0.2, 1));
+        list.add(line(0.3, 3));
+        list.radicalReOrder(1);
+        assertEquals(2, list.size());
+        for (int i = 0; i < list.size(); i++) {
+            assertEquals(4, list.polygon(i).size());
+        }
+        assertEquals(4, list.polygon(0).getLayers() + list.polygon(1).getLayers());
+        assertEquals(3, list.polygon(0).negate().getLayers() * list.polygon(1).negate().getLayers());
+    }
+}